@@ -0,0 +1,66 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the rate limiting algorithms.
+ *
+ * <p>The {@code tryConsume} benchmarks measure the throughput of decisions on a single bucket.
+ * The {@code create} benchmark creates one limiter per operation, so {@code gc.alloc.rate.norm}
+ * reported by the gc profiler is the per-key memory of the algorithm.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimiterAlgorithmBenchmark {
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    @Param({"token-bucket", "lock-free-token-bucket", "gcra", "sliding-window-counter", "sliding-log"})
+    private String algorithm;
+
+    @Param({"100", "10000"})
+    private long permits;
+
+    private RateLimiter rateLimiter;
+
+    @Setup
+    public void setUp() {
+        rateLimiter = create();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryConsume1Thread() {
+        return rateLimiter.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryConsume4Threads() {
+        return rateLimiter.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RateLimiter create() {
+        return switch (algorithm) {
+            case "token-bucket" -> new TokenBucketRateLimiter(permits, PERIOD);
+            case "lock-free-token-bucket" -> new LockFreeTokenBucketRateLimiter(permits, PERIOD);
+            case "gcra" -> new GcraRateLimiter(permits, PERIOD);
+            case "sliding-window-counter" -> new SlidingWindowCounterRateLimiter(permits, PERIOD);
+            case "sliding-log" -> new SlidingLogRateLimiter(permits, PERIOD);
+            default -> throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        };
+    }
+}
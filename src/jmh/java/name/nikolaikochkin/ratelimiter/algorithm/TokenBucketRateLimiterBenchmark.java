@@ -0,0 +1,66 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link RateLimiter#tryConsume()} on a single shared bucket,
+ * single-threaded and under contention of 4, 16 and 64 threads.
+ *
+ * <p>The {@code permits} parameter switches between a bucket which practically never runs out of tokens
+ * and a bucket which rejects nearly every request, the two paths of a hot key.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenBucketRateLimiterBenchmark {
+    @Param({"synchronized", "lock-free"})
+    private String implementation;
+
+    @Param({"1000000000", "1000"})
+    private long permits;
+
+    private RateLimiter rateLimiter;
+
+    @Setup
+    public void setUp() {
+        Duration period = Duration.ofSeconds(1);
+        rateLimiter = "lock-free".equals(implementation)
+                ? new LockFreeTokenBucketRateLimiter(permits, period)
+                : new TokenBucketRateLimiter(permits, period);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryConsume1Thread() {
+        return rateLimiter.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryConsume4Threads() {
+        return rateLimiter.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryConsume16Threads() {
+        return rateLimiter.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean tryConsume64Threads() {
+        return rateLimiter.tryConsume();
+    }
+}
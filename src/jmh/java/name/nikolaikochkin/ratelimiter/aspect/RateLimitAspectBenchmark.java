@@ -0,0 +1,83 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.LimitedService;
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostService;
+import name.nikolaikochkin.ratelimiter.service.key.RateLimitKeyService;
+import name.nikolaikochkin.ratelimiter.service.key.provider.ClassMethodNameKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RemoteHostAddressKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a call to a {@link RateLimitAsync} annotated method through the whole
+ * {@link RateLimitAspect} and {@link name.nikolaikochkin.ratelimiter.service.key.RateLimitKeyService} path.
+ *
+ * <p>The aspect is woven into a {@link LimitedService} proxy the same way Spring AOP does it.
+ * The remote address key is resolved from a request put into the Reactor context,
+ * like {@code WebFilterConfig} does for real requests.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimitAspectBenchmark {
+    private LimitedService limitedService;
+    private ServerHttpRequest request;
+
+    @Setup
+    public void setUp() {
+        RateLimitPolicy policy = new RateLimitPolicy(RateLimitPolicy.DEFAULT, RateLimitAlgorithm.LOCK_FREE_TOKEN_BUCKET,
+                Bandwidth.of(1_000_000_000, Duration.ofSeconds(1)), 1);
+        RateLimitAspect rateLimitAspect = new RateLimitAspect(
+                new RateLimitPolicyService(new InMemoryRateLimitService(policy), policy, List.of()),
+                new RateLimitKeyService(List.of(new RemoteHostAddressKeyProvider(), new ClassMethodNameKeyProvider())),
+                new RateLimitCostService(List.of()));
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new LimitedService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(rateLimitAspect);
+        limitedService = proxyFactory.getProxy();
+        request = MockServerHttpRequest.get("/api/limit/service")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000))
+                .build();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object limitedMonoMethodWithRemoteAddress() {
+        return limitedService.limitedMonoMethod("benchmark")
+                .contextWrite(context -> context.put(ServerHttpRequest.class, request))
+                .block();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object limitedMonoMethodWithClassMethodName() {
+        return limitedService.limitedMonoMethod("benchmark").block();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object limitedFluxMethodWithRemoteAddress() {
+        return limitedService.limitedFluxMethod()
+                .contextWrite(context -> context.put(ServerHttpRequest.class, request))
+                .blockLast();
+    }
+}
@@ -0,0 +1,91 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link InMemoryRateLimitService#allowRequest(RateLimitKey)} with a few hot keys
+ * and with a million of cold keys.
+ *
+ * <p>Keys are created upfront, so the allocation rate reported by the gc profiler
+ * belongs to the service itself. The {@code shards} parameter compares a single map
+ * with one shard per available processor under multithreaded access. The {@code admissionWidth} parameter
+ * compares a bucket per key with the cold keys counted by the admission sketch only.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InMemoryRateLimitServiceBenchmark {
+    @Param({"16", "1000000"})
+    private int keys;
+
+    @Param({"1", "0"})
+    private int shards;
+
+    @Param({"0", "65536"})
+    private int admissionWidth;
+
+    private RateLimitService rateLimitService;
+    private RateLimitKey[] rateLimitKeys;
+
+    @Setup
+    public void setUp() {
+        rateLimitService = new InMemoryRateLimitService(
+                new TokenBucketRateLimiterFactory(1_000_000_000, Duration.ofSeconds(1), true),
+                Duration.ofMinutes(10),
+                keys * 2,
+                shards,
+                null,
+                RateLimitPolicy.DEFAULT,
+                Duration.ZERO,
+                admissionWidth);
+        rateLimitKeys = new RateLimitKey[keys];
+        for (int i = 0; i < keys; i++) {
+            rateLimitKeys[i] = new RemoteHostAddressRateLimitKey(
+                    "10." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        private RateLimitKey next(RateLimitKey[] rateLimitKeys) {
+            RateLimitKey key = rateLimitKeys[next];
+            next = next + 1 == rateLimitKeys.length ? 0 : next + 1;
+            return key;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Boolean allowRequest1Thread(Cursor cursor) {
+        return rateLimitService.allowRequest(cursor.next(rateLimitKeys)).block();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Boolean allowRequest16Threads(Cursor cursor) {
+        return rateLimitService.allowRequest(cursor.next(rateLimitKeys)).block();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Boolean allowRequest64Threads(Cursor cursor) {
+        return rateLimitService.allowRequest(cursor.next(rateLimitKeys)).block();
+    }
+}
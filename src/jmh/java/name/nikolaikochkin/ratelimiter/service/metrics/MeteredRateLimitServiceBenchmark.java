@@ -0,0 +1,81 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link MeteredRateLimitService} over {@link InMemoryRateLimitService#tryAcquire(RateLimitKey, int)}.
+ *
+ * <p>The {@code permits} parameter switches between a bucket which allows every request and one
+ * which rejects nearly all of them, so the rejected keys are tracked on the hot path too.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeteredRateLimitServiceBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({"false", "true"})
+    private boolean metered;
+
+    @Param({"1000000000", "1"})
+    private long permits;
+
+    private LocalRateLimitService rateLimitService;
+    private RateLimitKey[] rateLimitKeys;
+
+    @Setup
+    public void setUp() {
+        RateLimitPolicy policy = new RateLimitPolicy(RateLimitPolicy.DEFAULT, RateLimitAlgorithm.LOCK_FREE_TOKEN_BUCKET,
+                Bandwidth.of(permits, Duration.ofSeconds(1)), 1);
+        rateLimitService = new InMemoryRateLimitService(policy);
+        if (metered) {
+            rateLimitService = new RateLimitMetrics(new SimpleMeterRegistry(), 10).bind(policy, rateLimitService);
+        }
+        rateLimitKeys = new RateLimitKey[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            rateLimitKeys[i] = new RemoteHostAddressRateLimitKey("10.0." + (i >>> 8 & 0xFF) + "." + (i & 0xFF));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        private RateLimitKey next(RateLimitKey[] rateLimitKeys) {
+            RateLimitKey key = rateLimitKeys[next];
+            next = next + 1 == rateLimitKeys.length ? 0 : next + 1;
+            return key;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquire1Thread(Cursor cursor) {
+        return rateLimitService.tryAcquire(cursor.next(rateLimitKeys), 1);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryAcquire16Threads(Cursor cursor) {
+        return rateLimitService.tryAcquire(cursor.next(rateLimitKeys), 1);
+    }
+}
@@ -0,0 +1,79 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The {@code Bandwidth} record is the immutable configuration of a {@link RateLimiter}: how many permits
+ * can be consumed at once and how fast they are replenished.
+ *
+ * <p>A single instance is shared by all limiters of a policy, so every limiter holds only a reference
+ * to it next to its own mutable state. Permits are generated one per {@code nanosPerPermit}, and at most
+ * {@code capacity} of them can be accumulated. Sliding window algorithms, which have no refill rate,
+ * limit {@code capacity} permits per {@link #windowNanos() window}, which gives the same long-term rate.</p>
+ *
+ * @param capacity       the maximum number of permits which can be consumed at once, the burst
+ * @param nanosPerPermit the time in which one permit is replenished
+ * @see RateLimitAlgorithm
+ */
+public record Bandwidth(long capacity, long nanosPerPermit) {
+
+    /**
+     * Constructs a new {@code Bandwidth}.
+     *
+     * @throws IllegalArgumentException if either capacity or nanosPerPermit is negative or zero,
+     *                                  or the window of the capacity overflows.
+     */
+    public Bandwidth {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity value should be positive");
+        }
+        if (nanosPerPermit <= 0) {
+            throw new IllegalArgumentException("Nanos per permit value should be positive");
+        }
+        if (capacity > Long.MAX_VALUE / nanosPerPermit) {
+            throw new IllegalArgumentException("Window of the capacity should not overflow");
+        }
+    }
+
+    /**
+     * Returns the bandwidth of {@code permits} per {@code period} with the burst of {@code permits}.
+     *
+     * @param permits The number of permits replenished per period, also the capacity.
+     * @param period  The time during which {@code permits} permits are replenished.
+     * @throws IllegalArgumentException if either permits or period is negative or zero,
+     *                                  or the period is shorter than permits nanoseconds.
+     */
+    public static Bandwidth of(long permits, Duration period) {
+        return of(permits, period, permits);
+    }
+
+    /**
+     * Returns the bandwidth of {@code permits} per {@code period} with the specified burst.
+     *
+     * @param permits The number of permits replenished per period.
+     * @param period  The time during which {@code permits} permits are replenished.
+     * @param burst   The maximum number of permits which can be consumed at once.
+     * @throws IllegalArgumentException if either permits, period or burst is negative or zero,
+     *                                  or the period is shorter than permits nanoseconds.
+     */
+    public static Bandwidth of(long permits, Duration period, long burst) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        if (Objects.isNull(period) || period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Period value should be positive");
+        }
+        if (period.toNanos() < permits) {
+            throw new IllegalArgumentException("Period value should not be shorter than permits nanoseconds");
+        }
+        return new Bandwidth(burst, period.toNanos() / permits);
+    }
+
+    /**
+     * Returns the time during which the whole capacity is replenished.
+     */
+    public long windowNanos() {
+        return capacity * nanosPerPermit;
+    }
+}
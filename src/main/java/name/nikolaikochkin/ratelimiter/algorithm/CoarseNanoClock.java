@@ -0,0 +1,77 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@code CoarseNanoClock} class is a {@link NanoClock} whose time is cached in a volatile field,
+ * updated from {@link System#nanoTime()} by a background ticker thread once per resolution.
+ *
+ * <p>A decision then costs a plain volatile read instead of a timer read, and all decisions within a tick
+ * share one timestamp, which pays off at very high decision rates. The price is accuracy: the clock lags
+ * behind the system timer by up to the resolution plus the scheduling latency of the ticker, so permits are
+ * replenished up to that much later. The resolution should be far below the time per permit of the limiters.</p>
+ *
+ * <p>The ticker is a daemon thread parking between ticks, as a periodic task of a scheduler could not tick
+ * every few microseconds. It runs until the clock is {@link #close() closed}; a closed clock stops moving.</p>
+ */
+public final class CoarseNanoClock implements NanoClock, AutoCloseable {
+    private final long resolutionNanos;
+    private final Thread ticker;
+    private volatile long nanoTime;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new {@code CoarseNanoClock} and starts its ticker.
+     *
+     * @param resolution The time between two updates of the clock.
+     * @throws IllegalArgumentException if the resolution is null, negative or zero.
+     */
+    public CoarseNanoClock(Duration resolution) {
+        if (Objects.isNull(resolution) || resolution.toNanos() <= 0) {
+            throw new IllegalArgumentException("Resolution value should be positive");
+        }
+        this.resolutionNanos = resolution.toNanos();
+        this.nanoTime = System.nanoTime();
+        this.ticker = new Thread(this::tick, "coarse-nano-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Returns the time between two updates of the clock, in nanoseconds.
+     */
+    public long resolutionNanos() {
+        return resolutionNanos;
+    }
+
+    /**
+     * Stops the ticker.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+
+    private void tick() {
+        while (!closed) {
+            LockSupport.parkNanos(this, resolutionNanos);
+            nanoTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CoarseNanoClock{" +
+                "resolution=" + Duration.ofNanos(resolutionNanos) +
+                ", closed=" + closed +
+                '}';
+    }
+}
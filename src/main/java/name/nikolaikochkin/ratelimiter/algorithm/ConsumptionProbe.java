@@ -0,0 +1,117 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+
+/**
+ * The {@code ConsumptionProbe} class encodes the result of a consumption into a single {@code long},
+ * so that the decision path returns a primitive and allocates nothing.
+ *
+ * <p>A probe tells whether the permits have been consumed, how many permits remain and how long until the
+ * bucket refills: for an allowed probe the time until the next permit is replenished, for a rejected one the
+ * time until the requested permits are available. The bits of a probe, from the highest one:</p>
+ * <ul>
+ *     <li>{@code 1} bit - the permits have been rejected, so every allowed probe is non-negative;</li>
+ *     <li>{@code 1} bit - the state of the bucket is unknown, such as the one of a remote store;</li>
+ *     <li>{@code 30} bits - the remaining permits, saturated at {@value #MAX_REMAINING_PERMITS};</li>
+ *     <li>{@code 32} bits - the time until the refill in milliseconds rounded up, saturated at about 49 days.</li>
+ * </ul>
+ *
+ * @see RateLimiter#tryConsumeAndProbe(int)
+ */
+public final class ConsumptionProbe {
+    /**
+     * The largest number of remaining permits a probe holds.
+     */
+    public static final long MAX_REMAINING_PERMITS = (1L << 30) - 1;
+
+    /**
+     * The probe of allowed permits of a bucket whose state is unknown.
+     */
+    public static final long ALLOWED = 1L << 62;
+
+    /**
+     * The probe of rejected permits of a bucket whose state is unknown.
+     */
+    public static final long REJECTED = Long.MIN_VALUE | ALLOWED;
+
+    private static final long UNKNOWN = ALLOWED;
+    private static final long MAX_REFILL_MILLIS = 0xFFFF_FFFFL;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private ConsumptionProbe() {
+    }
+
+    /**
+     * Returns the probe of consumed permits.
+     *
+     * @param remainingPermits  the permits remaining after the consumption
+     * @param nanosToNextPermit the time until one more permit is replenished, {@code 0} if the bucket is full
+     */
+    public static long allowed(long remainingPermits, long nanosToNextPermit) {
+        return encode(remainingPermits, nanosToNextPermit);
+    }
+
+    /**
+     * Returns the probe of rejected permits.
+     *
+     * @param remainingPermits the permits available, fewer than the requested ones
+     * @param nanosToWait      the time until the requested permits are available,
+     *                         {@link Long#MAX_VALUE} if they never are
+     */
+    public static long rejected(long remainingPermits, long nanosToWait) {
+        return Long.MIN_VALUE | encode(remainingPermits, nanosToWait);
+    }
+
+    /**
+     * Returns the probe of a decision of a bucket whose state is unknown.
+     */
+    public static long of(boolean allowed) {
+        return allowed ? ALLOWED : REJECTED;
+    }
+
+    /**
+     * Indicates whether the permits of the probe have been consumed.
+     */
+    public static boolean isAllowed(long probe) {
+        return probe >= 0;
+    }
+
+    /**
+     * Indicates whether the probe holds the remaining permits and the time until the refill.
+     */
+    public static boolean isKnown(long probe) {
+        return (probe & UNKNOWN) == 0;
+    }
+
+    /**
+     * Returns the remaining permits of the probe.
+     */
+    public static long remainingPermits(long probe) {
+        return (probe >>> 32) & MAX_REMAINING_PERMITS;
+    }
+
+    /**
+     * Returns the time until the refill of the probe, rounded up to milliseconds.
+     */
+    public static long nanosToRefill(long probe) {
+        return (probe & MAX_REFILL_MILLIS) * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns a readable form of the probe, such as {@code allowed(remaining=2, refill=PT0.5S)}.
+     */
+    public static String toString(long probe) {
+        String decision = isAllowed(probe) ? "allowed" : "rejected";
+        if (!isKnown(probe)) {
+            return decision;
+        }
+        return decision + "(remaining=" + remainingPermits(probe) +
+                ", refill=" + Duration.ofNanos(nanosToRefill(probe)) + ')';
+    }
+
+    private static long encode(long remainingPermits, long nanosToRefill) {
+        long remaining = Math.min(Math.max(0, remainingPermits), MAX_REMAINING_PERMITS);
+        long millis = nanosToRefill <= 0 ? 0 : Math.min((nanosToRefill - 1) / NANOS_PER_MILLI + 1, MAX_REFILL_MILLIS);
+        return remaining << 32 | millis;
+    }
+}
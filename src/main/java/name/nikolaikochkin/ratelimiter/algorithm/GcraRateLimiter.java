@@ -0,0 +1,253 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The {@code GcraRateLimiter} class implements rate limiting using the generic cell rate algorithm (GCRA).
+ *
+ * <p>The whole state of the limiter is a single {@code long}, the theoretical arrival time (TAT):
+ * the moment at which the next request would arrive if all previous requests had been spaced exactly by
+ * the emission interval {@code period / permits}. A request of {@code n} permits conforms if it does not
+ * push the TAT more than {@code permits} emission intervals ahead of now. This gives the semantics of
+ * a token bucket with the capacity of {@code permits}: a burst of {@code permits} requests, then one
+ * request per emission interval.</p>
+ *
+ * <p>Every decision is a single compare-and-set of the TAT. Since the TAT tells exactly when the limiter
+ * accepts the next request, the limiter can also report the time to wait until a request conforms.</p>
+ *
+ * @see RateLimiter
+ * @see TokenBucketRateLimiter
+ */
+public class GcraRateLimiter implements RateLimiter {
+    private static final VarHandle THEORETICAL_ARRIVAL_NANOTIME;
+
+    static {
+        try {
+            THEORETICAL_ARRIVAL_NANOTIME = MethodHandles.lookup()
+                    .findVarHandle(GcraRateLimiter.class, "theoreticalArrivalNanotime", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
+    @SuppressWarnings("unused") // accessed through THEORETICAL_ARRIVAL_NANOTIME
+    private volatile long theoreticalArrivalNanotime;
+
+    /**
+     * Constructs a new {@code GcraRateLimiter} with the specified burst and rate.
+     *
+     * @param permits The maximum number of permits which can be consumed at once.
+     * @param period  The time during which {@code permits} permits are emitted.
+     * @throws IllegalArgumentException if either permits or period is negative or zero.
+     */
+    public GcraRateLimiter(long permits, Duration period) {
+        this(Bandwidth.of(permits, period));
+    }
+
+    /**
+     * Constructs a new {@code GcraRateLimiter} sharing the specified bandwidth: the emission interval
+     * is the time per permit and the burst tolerance is the window of the whole capacity.
+     *
+     * @param bandwidth The burst and the rate of the permits.
+     * @throws IllegalArgumentException if the bandwidth is null.
+     */
+    public GcraRateLimiter(Bandwidth bandwidth) {
+        this(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code GcraRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock.
+     *
+     * @param bandwidth The bandwidth of the rate limiter.
+     * @param clock     The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null.
+     */
+    public GcraRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        this(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new {@code GcraRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock and starts with the specified number of available permits,
+     * as if the others had just been consumed.
+     *
+     * @param bandwidth        The bandwidth of the rate limiter.
+     * @param clock            The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @param availablePermits The number of permits available right away, capped by the capacity of the bandwidth.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null, or availablePermits is negative.
+     */
+    public GcraRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        if (Objects.isNull(bandwidth)) {
+            throw new IllegalArgumentException("Bandwidth should not be null");
+        }
+        if (Objects.isNull(clock)) {
+            throw new IllegalArgumentException("Clock should not be null");
+        }
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
+        }
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+        long consumed = bandwidth.capacity() - Math.min(availablePermits, bandwidth.capacity());
+        this.theoreticalArrivalNanotime = clock.nanoTime() + consumed * bandwidth.nanosPerPermit();
+    }
+
+    /**
+     * Attempts to consume one permit.
+     *
+     * @return {@code true} if the request conforms and the permit was consumed, {@code false} otherwise.
+     */
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    /**
+     * Attempts to consume a specified number of permits.
+     *
+     * @param permits The number of permits to consume.
+     * @return {@code true} if the request conforms and the permits were consumed, {@code false} otherwise.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    public boolean tryConsume(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        do {
+            current = theoreticalArrivalNanotime;
+            long now = clock.nanoTime();
+            updated = Math.max(current, now) + permits * bandwidth.nanosPerPermit();
+            if (updated - now > bandwidth.windowNanos()) {
+                return false;
+            }
+        } while (!THEORETICAL_ARRIVAL_NANOTIME.compareAndSet(this, current, updated));
+        return true;
+    }
+
+    /**
+     * Reserves permits by moving the theoretical arrival time even if the request does not conform yet,
+     * as long as it conforms within the maximum wait.
+     *
+     * @param permits      The number of permits to reserve.
+     * @param maxWaitNanos The maximum time to wait until the request conforms.
+     * @return {@code 0} if the request conforms right now, the number of nanoseconds until it conforms,
+     * or {@link #NOT_RESERVED} if that takes longer than {@code maxWaitNanos}.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    public long tryReserve(int permits, long maxWaitNanos) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        long waitNanos;
+        do {
+            current = theoreticalArrivalNanotime;
+            long now = clock.nanoTime();
+            updated = Math.max(current, now) + permits * bandwidth.nanosPerPermit();
+            waitNanos = Math.max(0, updated - now - bandwidth.windowNanos());
+            if (waitNanos > maxWaitNanos) {
+                return NOT_RESERVED;
+            }
+        } while (!THEORETICAL_ARRIVAL_NANOTIME.compareAndSet(this, current, updated));
+        return waitNanos;
+    }
+
+    /**
+     * Returns the time to wait until a request of the specified number of permits conforms.
+     *
+     * @param permits The number of permits of the request.
+     * @return {@code 0} if the request conforms right now, the number of nanoseconds to wait otherwise,
+     * or {@link Long#MAX_VALUE} if the request exceeds the burst and never conforms.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    public long nanosUntilConforming(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long requestedNanos = permits * bandwidth.nanosPerPermit();
+        long burstToleranceNanos = bandwidth.windowNanos();
+        if (requestedNanos > burstToleranceNanos) {
+            return Long.MAX_VALUE;
+        }
+        long now = clock.nanoTime();
+        return Math.max(0, Math.max(theoreticalArrivalNanotime, now) + requestedNanos - now - burstToleranceNanos);
+    }
+
+    /**
+     * Moves the theoretical arrival time back by the emission intervals of the permits, but not into the past.
+     *
+     * @param permits the number of permits to return.
+     * @throws IllegalArgumentException if the number of returned permits is negative.
+     */
+    @Override
+    public void refund(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        do {
+            current = theoreticalArrivalNanotime;
+            long now = clock.nanoTime();
+            if (current - now <= 0) {
+                return;
+            }
+            updated = Math.max(now, current - permits * bandwidth.nanosPerPermit());
+        } while (!THEORETICAL_ARRIVAL_NANOTIME.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * Checks whether the theoretical arrival time is not ahead of now,
+     * so the whole burst is available.
+     *
+     * @return {@code true} if all permits are available, {@code false} otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return theoreticalArrivalNanotime - clock.nanoTime() <= 0;
+    }
+
+    @Override
+    public long availablePermits() {
+        long now = clock.nanoTime();
+        long slackNanos = bandwidth.windowNanos() - (Math.max(theoreticalArrivalNanotime, now) - now);
+        return Math.max(0, slackNanos / bandwidth.nanosPerPermit());
+    }
+
+    @Override
+    public long nanosToNextPermit() {
+        long now = clock.nanoTime();
+        long current = theoreticalArrivalNanotime;
+        if (current - now <= 0) {
+            return 0;
+        }
+        long emissionIntervalNanos = bandwidth.nanosPerPermit();
+        long slackNanos = bandwidth.windowNanos() - (current - now);
+        return (Math.floorDiv(slackNanos, emissionIntervalNanos) + 1) * emissionIntervalNanos - slackNanos;
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    @Override
+    public String toString() {
+        return "GcraRateLimiter{" +
+                "emissionIntervalNanos=" + bandwidth.nanosPerPermit() +
+                ", burstToleranceNanos=" + bandwidth.windowNanos() +
+                ", theoreticalArrivalNanotime=" + theoreticalArrivalNanotime +
+                '}';
+    }
+}
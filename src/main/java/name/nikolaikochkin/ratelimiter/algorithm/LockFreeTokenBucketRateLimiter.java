@@ -0,0 +1,286 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The {@code LockFreeTokenBucketRateLimiter} class implements the token bucket algorithm without locks.
+ *
+ * <p>The pair of available tokens and last refill time used by {@link TokenBucketRateLimiter} is packed
+ * into a single {@code long}: the moment at which the bucket was empty, aligned to the token generation
+ * interval. The number of available tokens at any time is derived from the distance between that moment
+ * and now, capped by the capacity of the bucket. Consuming tokens moves the moment forward, refilling
+ * moves it up to the capacity boundary, so every decision is a single compare-and-set of one field.</p>
+ *
+ * <p>The observable behaviour is the same as the one of {@link TokenBucketRateLimiter}: tokens are generated
+ * at the same fixed interval and on the same time grid, the burst is limited by the capacity of the bucket.
+ * Concurrent callers never block each other, losing a compare-and-set race simply re-evaluates the state.</p>
+ *
+ * @see RateLimiter
+ * @see TokenBucketRateLimiter
+ */
+public class LockFreeTokenBucketRateLimiter implements RateLimiter {
+    private static final VarHandle EMPTY_NANOTIME;
+
+    static {
+        try {
+            EMPTY_NANOTIME = MethodHandles.lookup()
+                    .findVarHandle(LockFreeTokenBucketRateLimiter.class, "emptyNanotime", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
+    @SuppressWarnings("unused") // accessed through EMPTY_NANOTIME
+    private volatile long emptyNanotime;
+
+    /**
+     * Constructs a new {@code LockFreeTokenBucketRateLimiter} with the specified capacity and refill rate.
+     *
+     * @param permits The maximum number of tokens that the bucket can hold.
+     * @param period  The time during which the whole capacity of the bucket is replenished.
+     * @throws IllegalArgumentException if either permits or period is negative or zero.
+     */
+    public LockFreeTokenBucketRateLimiter(long permits, Duration period) {
+        this(Bandwidth.of(permits, period));
+    }
+
+    /**
+     * Constructs a new full {@code LockFreeTokenBucketRateLimiter} sharing the specified bandwidth.
+     *
+     * @param bandwidth The capacity of the bucket and the interval of the token generation.
+     * @throws IllegalArgumentException if the bandwidth is null.
+     */
+    public LockFreeTokenBucketRateLimiter(Bandwidth bandwidth) {
+        this(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code LockFreeTokenBucketRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock.
+     *
+     * @param bandwidth The bandwidth of the rate limiter.
+     * @param clock     The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null.
+     */
+    public LockFreeTokenBucketRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        this(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new {@code LockFreeTokenBucketRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock and starts with the specified number of available tokens,
+     * as if the others had just been consumed.
+     *
+     * @param bandwidth        The bandwidth of the rate limiter.
+     * @param clock            The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @param availablePermits The number of tokens available right away, capped by the capacity of the bandwidth.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null, or availablePermits is negative.
+     */
+    public LockFreeTokenBucketRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        if (Objects.isNull(bandwidth)) {
+            throw new IllegalArgumentException("Bandwidth should not be null");
+        }
+        if (Objects.isNull(clock)) {
+            throw new IllegalArgumentException("Clock should not be null");
+        }
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
+        }
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+        long consumed = bandwidth.capacity() - Math.min(availablePermits, bandwidth.capacity());
+        this.emptyNanotime = clock.nanoTime() - bandwidth.windowNanos() + consumed * bandwidth.nanosPerPermit();
+    }
+
+    /**
+     * Attempts to consume one token from the bucket.
+     *
+     * @return {@code true} if the requested number of tokens were successfully consumed;
+     * {@code false} if insufficient tokens are available.
+     */
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    /**
+     * Attempts to consume a specified number of tokens from the bucket.
+     *
+     * @param permits The number of tokens to consume from the bucket.
+     * @return {@code true} if the requested number of tokens were successfully consumed;
+     * {@code false} if insufficient tokens are available.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    public boolean tryConsume(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        do {
+            current = emptyNanotime;
+            long now = clock.nanoTime();
+            long refilled = refill(current, now);
+            if (availableTokens(refilled, now) < permits) {
+                return false;
+            }
+            updated = refilled + permits * bandwidth.nanosPerPermit();
+        } while (!EMPTY_NANOTIME.compareAndSet(this, current, updated));
+        return true;
+    }
+
+    /**
+     * Attempts to consume tokens and reports the state of the bucket as of the decision.
+     *
+     * @param permits The number of tokens to consume from the bucket.
+     * @return the {@link ConsumptionProbe} of the consumption.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    public long tryConsumeAndProbe(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long nanosToGenerationToken = bandwidth.nanosPerPermit();
+        long current;
+        long updated;
+        long now;
+        do {
+            current = emptyNanotime;
+            now = clock.nanoTime();
+            long refilled = refill(current, now);
+            long available = availableTokens(refilled, now);
+            if (available < permits) {
+                long waitNanos = permits > bandwidth.capacity()
+                        ? Long.MAX_VALUE
+                        : refilled + permits * nanosToGenerationToken - now;
+                return ConsumptionProbe.rejected(available, waitNanos);
+            }
+            updated = refilled + permits * nanosToGenerationToken;
+        } while (!EMPTY_NANOTIME.compareAndSet(this, current, updated));
+        long remaining = availableTokens(updated, now);
+        long nanosToNextToken = remaining >= bandwidth.capacity()
+                ? 0
+                : updated + (Math.floorDiv(now - updated, nanosToGenerationToken) + 1) * nanosToGenerationToken - now;
+        return ConsumptionProbe.allowed(remaining, nanosToNextToken);
+    }
+
+    /**
+     * Reserves tokens which will be generated within the maximum wait, by moving the empty moment
+     * past now. The tokens generated until then belong to the reservation.
+     *
+     * @param permits      The number of tokens to reserve.
+     * @param maxWaitNanos The maximum time to wait for the tokens.
+     * @return {@code 0} if the tokens are available right now, the number of nanoseconds until they are
+     * generated, or {@link #NOT_RESERVED} if that takes longer than {@code maxWaitNanos}.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    public long tryReserve(int permits, long maxWaitNanos) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        long waitNanos;
+        do {
+            current = emptyNanotime;
+            long now = clock.nanoTime();
+            updated = refill(current, now) + permits * bandwidth.nanosPerPermit();
+            waitNanos = Math.max(0, updated - now);
+            if (waitNanos > maxWaitNanos) {
+                return NOT_RESERVED;
+            }
+        } while (!EMPTY_NANOTIME.compareAndSet(this, current, updated));
+        return waitNanos;
+    }
+
+    /**
+     * Returns tokens to the bucket, up to its capacity, by moving the empty moment back.
+     *
+     * @param permits The number of tokens to return to the bucket.
+     * @throws IllegalArgumentException if the number of returned permits is negative.
+     */
+    @Override
+    public void refund(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long current;
+        long updated;
+        do {
+            current = emptyNanotime;
+            long now = clock.nanoTime();
+            long refilled = refill(current, now);
+            long returned = Math.min(permits, bandwidth.capacity() - availableTokens(refilled, now));
+            if (returned <= 0) {
+                return;
+            }
+            updated = refilled - returned * bandwidth.nanosPerPermit();
+        } while (!EMPTY_NANOTIME.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * Checks whether the bucket has been refilled to its full capacity.
+     *
+     * @return {@code true} if the bucket holds {@code capacity} tokens, {@code false} otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return availableTokens(emptyNanotime, clock.nanoTime()) == bandwidth.capacity();
+    }
+
+    @Override
+    public long availablePermits() {
+        return Math.max(0, availableTokens(emptyNanotime, clock.nanoTime()));
+    }
+
+    @Override
+    public long nanosToNextPermit() {
+        long current = emptyNanotime;
+        long now = clock.nanoTime();
+        if (availableTokens(current, now) >= bandwidth.capacity()) {
+            return 0;
+        }
+        long nanosToGenerationToken = bandwidth.nanosPerPermit();
+        return current + (Math.floorDiv(now - current, nanosToGenerationToken) + 1) * nanosToGenerationToken - now;
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Moves the empty moment forward so that the bucket holds at most {@code capacity} tokens.
+     */
+    private long refill(long emptyNanotime, long now) {
+        long capacity = bandwidth.capacity();
+        long nanosToGenerationToken = bandwidth.nanosPerPermit();
+        long tokens = Math.floorDiv(now - emptyNanotime, nanosToGenerationToken);
+        if (tokens <= capacity) {
+            return emptyNanotime;
+        }
+        return emptyNanotime + (tokens - capacity) * nanosToGenerationToken;
+    }
+
+    private long availableTokens(long emptyNanotime, long now) {
+        return Math.min(bandwidth.capacity(), Math.floorDiv(now - emptyNanotime, bandwidth.nanosPerPermit()));
+    }
+
+    @Override
+    public String toString() {
+        return "LockFreeTokenBucketRateLimiter{" +
+                "capacity=" + bandwidth.capacity() +
+                ", availableTokens=" + availableTokens(emptyNanotime, clock.nanoTime()) +
+                ", nanosToGenerationToken=" + bandwidth.nanosPerPermit() +
+                ", emptyNanotime=" + emptyNanotime +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+/**
+ * The {@code NanoClock} interface is the source of the time of {@link RateLimiter} decisions,
+ * with the semantics of {@link System#nanoTime()}: only the difference of two readings is meaningful.
+ *
+ * <p>Rate limiters read the clock on every decision. {@link #SYSTEM} reads the system timer each time,
+ * a {@link CoarseNanoClock} shares one reading between all decisions of a tick, and a {@link VirtualNanoClock}
+ * only moves when it is advanced, which makes tests and simulations deterministic.</p>
+ *
+ * <p>Implementations must be thread-safe and must never go backwards.</p>
+ */
+@FunctionalInterface
+public interface NanoClock {
+    /**
+     * The clock of {@link System#nanoTime()}.
+     */
+    NanoClock SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current value of the clock, in nanoseconds.
+     */
+    long nanoTime();
+}
@@ -0,0 +1,81 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.util.Locale;
+
+/**
+ * The {@code RateLimitAlgorithm} enum lists the {@link RateLimiter} implementations
+ * which can be selected by configuration.
+ *
+ * <p>The constants are bound from the same names as {@code application.ratelimit.algorithm},
+ * for example {@code token-bucket} or {@code sliding-window-counter}.</p>
+ *
+ * @see Bandwidth
+ */
+public enum RateLimitAlgorithm {
+    TOKEN_BUCKET(TokenBucketRateLimiter::new),
+    LOCK_FREE_TOKEN_BUCKET(LockFreeTokenBucketRateLimiter::new),
+    SLIDING_WINDOW_COUNTER(SlidingWindowCounterRateLimiter::new),
+    SLIDING_LOG(SlidingLogRateLimiter::new),
+    GCRA(GcraRateLimiter::new);
+
+    private final Constructor constructor;
+
+    RateLimitAlgorithm(Constructor constructor) {
+        this.constructor = constructor;
+    }
+
+    /**
+     * Creates a new {@link RateLimiter} of the algorithm, sharing the specified bandwidth.
+     *
+     * @param bandwidth the immutable configuration of the limiter
+     * @return a new {@link RateLimiter} with all permits available
+     */
+    public RateLimiter createRateLimiter(Bandwidth bandwidth) {
+        return createRateLimiter(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Creates a new {@link RateLimiter} of the algorithm, sharing the specified bandwidth and clock.
+     *
+     * @param bandwidth the immutable configuration of the limiter
+     * @param clock     the source of the time of the decisions
+     * @return a new {@link RateLimiter} with all permits available
+     */
+    public RateLimiter createRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        return constructor.create(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new {@link RateLimiter} of the algorithm, sharing the specified bandwidth and clock,
+     * with only the specified number of permits available, as if the others had just been consumed.
+     *
+     * @param bandwidth        the immutable configuration of the limiter
+     * @param clock            the source of the time of the decisions
+     * @param availablePermits the permits available right away, capped by the capacity of the bandwidth
+     * @return a new {@link RateLimiter} with the available permits
+     * @throws IllegalArgumentException if availablePermits is negative
+     */
+    public RateLimiter createRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        return constructor.create(bandwidth, clock, availablePermits);
+    }
+
+    /**
+     * Returns the algorithm of the property value, such as {@code token-bucket}.
+     *
+     * @param name     the property value of the algorithm
+     * @param lockFree whether the lock-free variant of the token bucket should be selected
+     * @throws IllegalArgumentException if there is no algorithm of the name
+     */
+    public static RateLimitAlgorithm of(String name, boolean lockFree) {
+        RateLimitAlgorithm algorithm = valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        return lockFree && algorithm == TOKEN_BUCKET ? LOCK_FREE_TOKEN_BUCKET : algorithm;
+    }
+
+    /**
+     * The constructor of the limiters of an algorithm with the available permits.
+     */
+    @FunctionalInterface
+    private interface Constructor {
+        RateLimiter create(Bandwidth bandwidth, NanoClock clock, long availablePermits);
+    }
+}
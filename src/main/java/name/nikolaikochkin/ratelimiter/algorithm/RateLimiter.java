@@ -6,6 +6,10 @@ package name.nikolaikochkin.ratelimiter.algorithm;
  * <p>Implementations of this interface are expected to be thread-safe and performant under high-load conditions.</p>
  */
 public interface RateLimiter {
+    /**
+     * The result of {@link #tryReserve(int, long)} when the permits have not been reserved.
+     */
+    long NOT_RESERVED = -1;
 
     /**
      * Attempts to consume one permit from the rate limiter.
@@ -22,4 +26,84 @@ public interface RateLimiter {
      * @throws IllegalArgumentException if the number of permits is negative.
      */
     boolean tryConsume(int permits);
+
+    /**
+     * Attempts to consume a specified number of permits and reports the state of the rate limiter,
+     * encoded into a {@link ConsumptionProbe} to keep the decision free of allocations.
+     * <p>The default implementation reads the state after {@link #tryConsume(int)}, so a concurrent
+     * consumption may be reflected in the probe. Implementations may report the state of the decision itself.</p>
+     *
+     * @param permits the number of permits to consume.
+     * @return the {@link ConsumptionProbe} of the consumption: whether the permits were consumed, the remaining
+     * permits and the time until the next permit, or until the requested permits are available if rejected.
+     * @throws IllegalArgumentException if the number of permits is negative.
+     */
+    default long tryConsumeAndProbe(int permits) {
+        if (tryConsume(permits)) {
+            return ConsumptionProbe.allowed(availablePermits(), nanosToNextPermit());
+        }
+        long available = availablePermits();
+        Bandwidth bandwidth = bandwidth();
+        if (permits > bandwidth.capacity()) {
+            return ConsumptionProbe.rejected(available, Long.MAX_VALUE);
+        }
+        long missing = Math.max(0, permits - available - 1);
+        return ConsumptionProbe.rejected(available, nanosToNextPermit() + missing * bandwidth.nanosPerPermit());
+    }
+
+    /**
+     * Attempts to reserve a specified number of permits, which become usable after the returned time.
+     * <p>Unlike {@link #tryConsume(int)}, a reservation may consume permits which have not been replenished
+     * yet, as long as they are replenished within {@code maxWaitNanos}. The reserved permits are consumed
+     * right away, so later requests wait behind the reservation instead of overtaking it.</p>
+     * <p>The default implementation does not reserve future permits: it only consumes available ones.</p>
+     *
+     * @param permits      the number of permits to reserve.
+     * @param maxWaitNanos the maximum time the caller is ready to wait for the permits.
+     * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before
+     * using them, or {@link #NOT_RESERVED} if they would not be available within {@code maxWaitNanos}.
+     * @throws IllegalArgumentException if the number of permits is negative.
+     */
+    default long tryReserve(int permits, long maxWaitNanos) {
+        return tryConsume(permits) ? 0 : NOT_RESERVED;
+    }
+
+    /**
+     * Returns permits consumed by a successful {@link #tryConsume(int)} call which has been rolled back,
+     * for example because another limit of the same request has been exceeded.
+     * <p>The rate limiter never exceeds its capacity after a refund. Permits which have already been
+     * replenished meanwhile are not returned twice.</p>
+     *
+     * @param permits the number of permits to return.
+     * @throws IllegalArgumentException if the number of permits is negative.
+     */
+    void refund(int permits);
+
+    /**
+     * Checks whether the rate limiter has recovered its whole capacity.
+     * <p>A full rate limiter is indistinguishable from a newly created one,
+     * so it can be safely discarded and recreated later.</p>
+     *
+     * @return {@code true} if all permits are available, {@code false} otherwise.
+     */
+    boolean isFull();
+
+    /**
+     * Returns the immutable configuration of the rate limiter.
+     */
+    Bandwidth bandwidth();
+
+    /**
+     * Returns the number of permits which can be consumed right now, without consuming them.
+     *
+     * @return the available permits, from {@code 0} up to the capacity of the bandwidth.
+     */
+    long availablePermits();
+
+    /**
+     * Returns the time until one more permit becomes available.
+     *
+     * @return the number of nanoseconds until the next permit is replenished, or {@code 0} if the rate limiter is full.
+     */
+    long nanosToNextPermit();
 }
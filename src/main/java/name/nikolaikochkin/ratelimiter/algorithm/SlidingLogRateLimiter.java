@@ -0,0 +1,220 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The {@code SlidingLogRateLimiter} class implements rate limiting using the sliding log algorithm.
+ *
+ * <p>The limiter remembers the time of every consumed permit in a ring buffer of primitive timestamps.
+ * A permit is granted only if fewer than {@code permits} permits were consumed during the last period,
+ * which makes the limit exact at any moment, with no bursts at window edges.</p>
+ *
+ * <p>The price of the exactness is memory: the ring buffer holds one {@code long} per permit consumed
+ * during the last period. The buffer starts small and doubles on demand up to the limit, so quiet keys
+ * stay cheap, but a busy key holds up to {@code 8 * permits} bytes, so the limiter is meant for moderate limits.</p>
+ *
+ * @see RateLimiter
+ */
+public class SlidingLogRateLimiter implements RateLimiter {
+    private static final int MAX_PERMITS = Integer.MAX_VALUE - 8;
+    private static final int INITIAL_LOG_LENGTH = 8;
+
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
+    private final int limit;
+    private long[] log;
+    private int head;
+    private int size;
+
+    /**
+     * Constructs a new {@code SlidingLogRateLimiter} with the specified limit and window.
+     *
+     * @param permits The maximum number of permits consumed during any period.
+     * @param period  The length of the sliding window.
+     * @throws IllegalArgumentException if either permits or period is negative or zero,
+     *                                  or permits does not fit into an array.
+     */
+    public SlidingLogRateLimiter(long permits, Duration period) {
+        this(Bandwidth.of(permits, period));
+    }
+
+    /**
+     * Constructs a new {@code SlidingLogRateLimiter} sharing the specified bandwidth:
+     * the limit is the capacity and the window is the time of its replenishment.
+     *
+     * @param bandwidth The limit and the rate of the permits.
+     * @throws IllegalArgumentException if the bandwidth is null or its capacity does not fit into an array.
+     */
+    public SlidingLogRateLimiter(Bandwidth bandwidth) {
+        this(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code SlidingLogRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock.
+     *
+     * @param bandwidth The bandwidth of the rate limiter.
+     * @param clock     The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null.
+     */
+    public SlidingLogRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        this(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new {@code SlidingLogRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock and starts with the specified number of available permits,
+     * as if the others had just been consumed.
+     *
+     * @param bandwidth        The bandwidth of the rate limiter.
+     * @param clock            The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @param availablePermits The number of permits available right away, capped by the capacity of the bandwidth.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null, or availablePermits is negative.
+     */
+    public SlidingLogRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        if (Objects.isNull(bandwidth)) {
+            throw new IllegalArgumentException("Bandwidth should not be null");
+        }
+        if (Objects.isNull(clock)) {
+            throw new IllegalArgumentException("Clock should not be null");
+        }
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
+        }
+        if (bandwidth.capacity() > MAX_PERMITS) {
+            throw new IllegalArgumentException("Permits value should be positive and fit into an array");
+        }
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+        this.limit = (int) bandwidth.capacity();
+        int consumed = (int) (limit - Math.min(availablePermits, limit));
+        this.log = new long[Math.max(consumed, Math.min(limit, INITIAL_LOG_LENGTH))];
+        Arrays.fill(log, 0, consumed, clock.nanoTime());
+        this.size = consumed;
+    }
+
+    /**
+     * Attempts to consume one permit.
+     *
+     * @return {@code true} if the permit was successfully consumed;
+     * {@code false} if the limit of the sliding window is reached.
+     */
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    /**
+     * Attempts to consume a specified number of permits.
+     *
+     * @param permits The number of permits to consume.
+     * @return {@code true} if the requested number of permits were successfully consumed;
+     * {@code false} if the limit of the sliding window would be exceeded.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    synchronized public boolean tryConsume(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long now = clock.nanoTime();
+        evict(now);
+        if (permits > limit - size) {
+            return false;
+        }
+        if (permits > log.length - size) {
+            grow(size + permits);
+        }
+        for (int i = 0; i < permits; i++) {
+            log[(head + size) % log.length] = now;
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the most recent timestamps from the log.
+     *
+     * @param permits the number of permits to return.
+     * @throws IllegalArgumentException if the number of returned permits is negative.
+     */
+    @Override
+    synchronized public void refund(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        evict(clock.nanoTime());
+        size -= Math.min(size, permits);
+    }
+
+    /**
+     * Checks whether no permits have been consumed during the last period.
+     *
+     * @return {@code true} if the log is empty, {@code false} otherwise.
+     */
+    @Override
+    synchronized public boolean isFull() {
+        evict(clock.nanoTime());
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of permits which can be consumed right now: the limit less the permits
+     * consumed during the last period.
+     *
+     * @return the number of available permits, between zero and the limit.
+     */
+    @Override
+    synchronized public long availablePermits() {
+        evict(clock.nanoTime());
+        return limit - size;
+    }
+
+    @Override
+    synchronized public long nanosToNextPermit() {
+        long now = clock.nanoTime();
+        evict(now);
+        return size == 0 ? 0 : Math.max(0, log[head] + bandwidth.windowNanos() - now);
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Removes the timestamps which have left the sliding window.
+     */
+    private void evict(long now) {
+        long periodNanos = bandwidth.windowNanos();
+        while (size > 0 && now - log[head] >= periodNanos) {
+            head = head + 1 == log.length ? 0 : head + 1;
+            size--;
+        }
+    }
+
+    /**
+     * Replaces the ring buffer with a larger one, at least doubled and at most the limit,
+     * holding the timestamps in order from its start.
+     */
+    private void grow(int minLength) {
+        int length = (int) Math.min(limit, Math.max(minLength, 2L * log.length));
+        long[] grown = new long[length];
+        int tail = Math.min(size, log.length - head);
+        System.arraycopy(log, head, grown, 0, tail);
+        System.arraycopy(log, 0, grown, tail, size - tail);
+        log = grown;
+        head = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingLogRateLimiter{" +
+                "limit=" + limit +
+                ", periodNanos=" + bandwidth.windowNanos() +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,209 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The {@code SlidingWindowCounterRateLimiter} class implements rate limiting using the sliding window counter algorithm.
+ *
+ * <p>Time is divided into fixed windows of the configured period. The limiter keeps only the number of permits
+ * consumed in the current and in the previous window. The number of permits consumed during the last period
+ * is estimated by weighting the previous window count by the part of it still covered by the sliding window.
+ * Unlike the token bucket, the limiter does not allow a whole new burst right at a window edge.</p>
+ *
+ * <p>The estimation assumes that the permits of the previous window were consumed evenly,
+ * so the limit is approximate, but the state of the limiter is just a few numbers.</p>
+ *
+ * @see RateLimiter
+ */
+public class SlidingWindowCounterRateLimiter implements RateLimiter {
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
+    private long windowStartNanotime;
+    private long currentCount;
+    private long previousCount;
+
+    /**
+     * Constructs a new {@code SlidingWindowCounterRateLimiter} with the specified limit and window.
+     *
+     * @param permits The maximum number of permits consumed during any period.
+     * @param period  The length of the sliding window.
+     * @throws IllegalArgumentException if either permits or period is negative or zero.
+     */
+    public SlidingWindowCounterRateLimiter(long permits, Duration period) {
+        this(Bandwidth.of(permits, period));
+    }
+
+    /**
+     * Constructs a new {@code SlidingWindowCounterRateLimiter} sharing the specified bandwidth:
+     * the limit is the capacity and the window is the time of its replenishment.
+     *
+     * @param bandwidth The limit and the rate of the permits.
+     * @throws IllegalArgumentException if the bandwidth is null.
+     */
+    public SlidingWindowCounterRateLimiter(Bandwidth bandwidth) {
+        this(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code SlidingWindowCounterRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock.
+     *
+     * @param bandwidth The bandwidth of the rate limiter.
+     * @param clock     The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null.
+     */
+    public SlidingWindowCounterRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        this(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new {@code SlidingWindowCounterRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock and starts with the specified number of available permits,
+     * as if the others had just been consumed.
+     *
+     * @param bandwidth        The bandwidth of the rate limiter.
+     * @param clock            The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @param availablePermits The number of permits available right away, capped by the capacity of the bandwidth.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null, or availablePermits is negative.
+     */
+    public SlidingWindowCounterRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        if (Objects.isNull(bandwidth)) {
+            throw new IllegalArgumentException("Bandwidth should not be null");
+        }
+        if (Objects.isNull(clock)) {
+            throw new IllegalArgumentException("Clock should not be null");
+        }
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
+        }
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+        this.windowStartNanotime = clock.nanoTime();
+        this.currentCount = bandwidth.capacity() - Math.min(availablePermits, bandwidth.capacity());
+    }
+
+    /**
+     * Attempts to consume one permit.
+     *
+     * @return {@code true} if the permit was successfully consumed;
+     * {@code false} if the limit of the sliding window is reached.
+     */
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    /**
+     * Attempts to consume a specified number of permits.
+     *
+     * @param permits The number of permits to consume.
+     * @return {@code true} if the requested number of permits were successfully consumed;
+     * {@code false} if the limit of the sliding window would be exceeded.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    synchronized public boolean tryConsume(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        long now = clock.nanoTime();
+        slide(now);
+        if (estimatedCount(now) + permits > bandwidth.capacity()) {
+            return false;
+        }
+        currentCount += permits;
+        return true;
+    }
+
+    /**
+     * Removes the permits from the counters, from the current window first.
+     *
+     * @param permits the number of permits to return.
+     * @throws IllegalArgumentException if the number of returned permits is negative.
+     */
+    @Override
+    synchronized public void refund(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        slide(clock.nanoTime());
+        long fromCurrent = Math.min(currentCount, permits);
+        currentCount -= fromCurrent;
+        previousCount = Math.max(0, previousCount - (permits - fromCurrent));
+    }
+
+    /**
+     * Checks whether no permits have been consumed in the current and in the previous windows.
+     *
+     * @return {@code true} if the limiter is in its initial state, {@code false} otherwise.
+     */
+    @Override
+    synchronized public boolean isFull() {
+        slide(clock.nanoTime());
+        return currentCount == 0 && previousCount == 0;
+    }
+
+    @Override
+    synchronized public long availablePermits() {
+        long now = clock.nanoTime();
+        slide(now);
+        return Math.max(0, (long) Math.floor(bandwidth.capacity() - estimatedCount(now)));
+    }
+
+    /**
+     * Estimates the time until the weighted count of the previous window drops by one more permit.
+     * If the current window alone exceeds that count, returns the time until the end of the window.
+     */
+    @Override
+    synchronized public long nanosToNextPermit() {
+        long now = clock.nanoTime();
+        slide(now);
+        if (currentCount == 0 && previousCount == 0) {
+            return 0;
+        }
+        long windowNanos = bandwidth.windowNanos();
+        long windowEndNanos = windowStartNanotime + windowNanos - now;
+        double available = Math.max(0, Math.floor(bandwidth.capacity() - estimatedCount(now)));
+        double targetCount = bandwidth.capacity() - available - 1;
+        if (previousCount == 0 || targetCount < currentCount) {
+            return Math.max(0, windowEndNanos);
+        }
+        double previousWeight = (targetCount - currentCount) / previousCount;
+        long targetNanos = windowStartNanotime + (long) Math.ceil(windowNanos * (1 - previousWeight)) - now;
+        return Math.max(0, Math.min(targetNanos, windowEndNanos));
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    private void slide(long now) {
+        long windowNanos = bandwidth.windowNanos();
+        long windowsSinceStart = (now - windowStartNanotime) / windowNanos;
+        if (windowsSinceStart <= 0) {
+            return;
+        }
+        previousCount = windowsSinceStart == 1 ? currentCount : 0;
+        currentCount = 0;
+        windowStartNanotime += windowsSinceStart * windowNanos;
+    }
+
+    private double estimatedCount(long now) {
+        long windowNanos = bandwidth.windowNanos();
+        double previousWeight = (double) (windowNanos - (now - windowStartNanotime)) / windowNanos;
+        return previousCount * previousWeight + currentCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindowCounterRateLimiter{" +
+                "limit=" + bandwidth.capacity() +
+                ", windowNanos=" + bandwidth.windowNanos() +
+                ", windowStartNanotime=" + windowStartNanotime +
+                ", currentCount=" + currentCount +
+                ", previousCount=" + previousCount +
+                '}';
+    }
+}
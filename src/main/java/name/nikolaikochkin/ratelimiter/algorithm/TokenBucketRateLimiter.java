@@ -17,9 +17,9 @@ import java.util.Objects;
  * @see RateLimiter
  */
 public class TokenBucketRateLimiter implements RateLimiter {
-    private final long capacity;
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
     private long availableTokens;
-    private final long nanosToGenerationToken;
     private long lastRefillNanotime;
 
     /**
@@ -30,16 +30,55 @@ public class TokenBucketRateLimiter implements RateLimiter {
      * @throws IllegalArgumentException if either permits or period is negative or zero.
      */
     public TokenBucketRateLimiter(long permits, Duration period) {
-        if (permits <= 0) {
-            throw new IllegalArgumentException("Permits value should be positive");
+        this(Bandwidth.of(permits, period));
+    }
+
+    /**
+     * Constructs a new full {@code TokenBucketRateLimiter} sharing the specified bandwidth.
+     *
+     * @param bandwidth The capacity of the bucket and the interval of the token generation.
+     * @throws IllegalArgumentException if the bandwidth is null.
+     */
+    public TokenBucketRateLimiter(Bandwidth bandwidth) {
+        this(bandwidth, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code TokenBucketRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock.
+     *
+     * @param bandwidth The bandwidth of the rate limiter.
+     * @param clock     The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null.
+     */
+    public TokenBucketRateLimiter(Bandwidth bandwidth, NanoClock clock) {
+        this(bandwidth, clock, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new {@code TokenBucketRateLimiter} sharing the specified bandwidth, which reads the time
+     * of its decisions from the specified clock and starts with the specified number of available tokens,
+     * as if the others had just been consumed.
+     *
+     * @param bandwidth        The bandwidth of the rate limiter.
+     * @param clock            The source of the time, such as a {@link CoarseNanoClock} or a {@link VirtualNanoClock}.
+     * @param availablePermits The number of tokens available right away, capped by the capacity of the bandwidth.
+     * @throws IllegalArgumentException if the bandwidth or the clock is null, or availablePermits is negative.
+     */
+    public TokenBucketRateLimiter(Bandwidth bandwidth, NanoClock clock, long availablePermits) {
+        if (Objects.isNull(bandwidth)) {
+            throw new IllegalArgumentException("Bandwidth should not be null");
+        }
+        if (Objects.isNull(clock)) {
+            throw new IllegalArgumentException("Clock should not be null");
         }
-        if (Objects.isNull(period) || period.isZero() || period.isNegative()) {
-            throw new IllegalArgumentException("Period value should be positive");
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
         }
-        this.nanosToGenerationToken = period.toNanos() / permits;
-        this.lastRefillNanotime = System.nanoTime();
-        this.capacity = permits;
-        this.availableTokens = permits;
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+        this.lastRefillNanotime = clock.nanoTime();
+        this.availableTokens = Math.min(availablePermits, bandwidth.capacity());
     }
 
     /**
@@ -75,23 +114,98 @@ public class TokenBucketRateLimiter implements RateLimiter {
         }
     }
 
+    /**
+     * Reserves tokens which will be generated within the maximum wait. The available tokens of the bucket
+     * go below zero by the reserved amount, so the next tokens are generated for the reservation first.
+     *
+     * @param permits      The number of tokens to reserve.
+     * @param maxWaitNanos The maximum time to wait for the tokens.
+     * @return {@code 0} if the tokens are available right now, the number of nanoseconds until they are
+     * generated, or {@link #NOT_RESERVED} if that takes longer than {@code maxWaitNanos}.
+     * @throws IllegalArgumentException if the number of requested permits is negative.
+     */
+    @Override
+    synchronized public long tryReserve(int permits, long maxWaitNanos) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        refill();
+        if (availableTokens >= permits) {
+            availableTokens -= permits;
+            return 0;
+        }
+        long waitNanos = lastRefillNanotime + (permits - availableTokens) * bandwidth.nanosPerPermit() - clock.nanoTime();
+        if (waitNanos > maxWaitNanos) {
+            return NOT_RESERVED;
+        }
+        availableTokens -= permits;
+        return Math.max(1, waitNanos);
+    }
+
+    /**
+     * Returns tokens to the bucket, up to its capacity.
+     *
+     * @param permits The number of tokens to return to the bucket.
+     * @throws IllegalArgumentException if the number of returned permits is negative.
+     */
+    @Override
+    synchronized public void refund(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should be positive");
+        }
+        refill();
+        availableTokens = Math.min(bandwidth.capacity(), availableTokens + permits);
+    }
+
+    /**
+     * Checks whether the bucket has been refilled to its full capacity.
+     *
+     * @return {@code true} if the bucket holds {@code capacity} tokens, {@code false} otherwise.
+     */
+    @Override
+    synchronized public boolean isFull() {
+        refill();
+        return availableTokens == bandwidth.capacity();
+    }
+
+    @Override
+    synchronized public long availablePermits() {
+        refill();
+        return Math.max(0, availableTokens);
+    }
+
+    @Override
+    synchronized public long nanosToNextPermit() {
+        refill();
+        if (availableTokens >= bandwidth.capacity()) {
+            return 0;
+        }
+        return Math.max(0, lastRefillNanotime + bandwidth.nanosPerPermit() - clock.nanoTime());
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
     private void refill() {
-        long now = System.nanoTime();
+        long nanosToGenerationToken = bandwidth.nanosPerPermit();
+        long now = clock.nanoTime();
         long nanosSinceLastRefill = now - lastRefillNanotime;
         if (nanosSinceLastRefill <= nanosToGenerationToken) {
             return;
         }
         long tokensSinceLastRefill = nanosSinceLastRefill / nanosToGenerationToken;
-        availableTokens = Math.min(capacity, availableTokens + tokensSinceLastRefill);
+        availableTokens = Math.min(bandwidth.capacity(), availableTokens + tokensSinceLastRefill);
         lastRefillNanotime += tokensSinceLastRefill * nanosToGenerationToken;
     }
 
     @Override
     public String toString() {
         return "TokenBucketRateLimiter{" +
-                "capacity=" + capacity +
+                "capacity=" + bandwidth.capacity() +
                 ", availableTokens=" + availableTokens +
-                ", nanosToGenerationToken=" + nanosToGenerationToken +
+                ", nanosToGenerationToken=" + bandwidth.nanosPerPermit() +
                 ", lastRefillNanotime=" + lastRefillNanotime +
                 '}';
     }
@@ -0,0 +1,72 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code VirtualNanoClock} class is a {@link NanoClock} which only moves when it is advanced.
+ *
+ * <p>Rate limiters sharing a virtual clock can be tested and simulated without sleeping: the replenishment
+ * of any period takes a single {@link #advance(Duration)} call, and the outcome does not depend on the speed
+ * of the machine.</p>
+ */
+public final class VirtualNanoClock implements NanoClock {
+    private final AtomicLong nanoTime;
+
+    /**
+     * Constructs a new {@code VirtualNanoClock} starting at zero.
+     */
+    public VirtualNanoClock() {
+        this(0);
+    }
+
+    /**
+     * Constructs a new {@code VirtualNanoClock} starting at the specified time.
+     *
+     * @param nanoTime The initial value of the clock.
+     */
+    public VirtualNanoClock(long nanoTime) {
+        this.nanoTime = new AtomicLong(nanoTime);
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime.get();
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param duration The time to add to the clock.
+     * @return the new value of the clock.
+     * @throws IllegalArgumentException if the duration is null or negative.
+     */
+    public long advance(Duration duration) {
+        if (Objects.isNull(duration)) {
+            throw new IllegalArgumentException("Duration should not be null");
+        }
+        return advance(duration.toNanos());
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param nanos The number of nanoseconds to add to the clock.
+     * @return the new value of the clock.
+     * @throws IllegalArgumentException if nanos is negative.
+     */
+    public long advance(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Nanos value should not be negative");
+        }
+        return nanoTime.addAndGet(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualNanoClock{" +
+                "nanoTime=" + nanoTime.get() +
+                '}';
+    }
+}
@@ -0,0 +1,91 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostProvider;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.util.Assert;
+import reactor.util.context.ContextView;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The {@code CallCost} interface is the compiled cost of a {@link RateLimitAsync} method, held by its
+ * {@link RateLimitPlan}.
+ *
+ * <p>All lookups, such as the index and the type of the cost argument, are done once when the plan
+ * is compiled, a call only reads its argument.</p>
+ */
+@FunctionalInterface
+interface CallCost {
+    /**
+     * Returns the number of permits consumed by the call.
+     */
+    int of(ProceedingJoinPoint joinPoint, ContextView contextView);
+
+    /**
+     * Returns the cost of every call.
+     */
+    static CallCost constant(int cost) {
+        return (joinPoint, contextView) -> cost;
+    }
+
+    /**
+     * Returns the cost computed by the provider.
+     */
+    static CallCost of(RateLimitCostProvider provider) {
+        return provider::getCost;
+    }
+
+    /**
+     * Returns the cost proportional to the size of the argument: the size of a collection or a map,
+     * the length of an array or the value of a number. A call costs at least one unit, even with
+     * an empty or missing argument.
+     *
+     * @param method   the rate limited method
+     * @param name     the name of the argument
+     * @param unitCost the number of permits per unit of the argument
+     * @throws IllegalStateException if the method has no argument of the name or the argument has no size
+     */
+    static CallCost ofArgument(Method method, String name, int unitCost) {
+        Parameter[] parameters = method.getParameters();
+        int index = -1;
+        for (int i = 0; i < parameters.length; i++) {
+            Assert.state(parameters[i].isNamePresent(), () -> "Parameter names of method " + method + " are not available");
+            if (parameters[i].getName().equals(name)) {
+                index = i;
+            }
+        }
+        Assert.state(index >= 0, () -> "Method " + method + " has no cost argument " + name);
+        ToLongFunction<Object> size = sizeOf(parameters[index].getType());
+        Assert.state(size != null, () -> "Cost argument " + name + " of method " + method + " has no size");
+        int argument = index;
+        return (joinPoint, contextView) -> {
+            Object value = joinPoint.getArgs()[argument];
+            long units = value == null ? 1 : Math.min(Integer.MAX_VALUE, Math.max(1, size.applyAsLong(value)));
+            return (int) Math.min(Integer.MAX_VALUE, units * unitCost);
+        };
+    }
+
+    private static ToLongFunction<Object> sizeOf(Class<?> type) {
+        if (Collection.class.isAssignableFrom(type)) {
+            return value -> ((Collection<?>) value).size();
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return value -> ((Map<?, ?>) value).size();
+        }
+        if (Object[].class.isAssignableFrom(type)) {
+            return value -> ((Object[]) value).length;
+        }
+        if (type.isArray()) {
+            return Array::getLength;
+        }
+        if (Number.class.isAssignableFrom(type) || type == int.class || type == long.class || type == short.class) {
+            return value -> ((Number) value).longValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+
+/**
+ * The {@code KeyMode} enum defines which of the keys provided for a {@link RateLimitAsync} method are limited.
+ */
+public enum KeyMode {
+    /**
+     * Only the first key resolved by the providers, in the order of the annotation, is limited.
+     */
+    FIRST,
+
+    /**
+     * All resolved keys are limited together: the request is allowed only if every key has a permit,
+     * and then a permit is left consumed from every key, see {@link RateLimitService#allowAll(RateLimitKey[], int)}.
+     */
+    ALL
+}
@@ -0,0 +1,24 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.exception.RateLimitExceededException;
+
+/**
+ * The {@code OnExceed} enum defines what happens to a call of a {@link RateLimitAsync} method
+ * whose key has no permits available.
+ */
+public enum OnExceed {
+    /**
+     * The call fails right away with {@link RateLimitExceededException}.
+     */
+    REJECT,
+
+    /**
+     * The permits are reserved, see {@link RateLimiter#tryReserve(int, long)}, and the subscription to the method
+     * result is delayed with a timer until they are available. The call fails only if the permits would not be
+     * available within {@link RateLimitAsync#maxDelay()} or the key already has
+     * {@link RateLimitAsync#maxPending()} delayed calls. Supported by {@link name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService local}
+     * rate limit services with {@link KeyMode#FIRST} only.
+     */
+    DELAY
+}
@@ -2,19 +2,35 @@ package name.nikolaikochkin.ratelimiter.aspect;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
 import name.nikolaikochkin.ratelimiter.exception.RateLimitExceededException;
 import name.nikolaikochkin.ratelimiter.exception.RateLimitKeyException;
+import name.nikolaikochkin.ratelimiter.operator.RateLimitOperators;
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostProvider;
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostService;
 import name.nikolaikochkin.ratelimiter.service.key.RateLimitKeyService;
 import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
 import name.nikolaikochkin.ratelimiter.service.key.provider.RateLimitKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
 import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyService;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * The {@code RateLimitAspect} class implements an aspect for rate limiting in a Spring Boot application.
  *
@@ -24,6 +40,25 @@ import reactor.core.publisher.Mono;
  * <p>This aspect should be used in conjunction with appropriate rate limiting services and configurations
  * to effectively manage application traffic.</p>
  *
+ * <p>The annotation of every method is compiled once into a {@link RateLimitPlan} with the resolved key
+ * providers. When all providers of the method can resolve the key synchronously, a call costs a single
+ * deferred {@code Mono} around the key resolution and the limit check, without building a {@code Flux}
+ * over the providers. {@link LocalRateLimitService} backends are called through
+ * {@link LocalRateLimitService#tryAcquireAndProbe(RateLimitKey, int)}, without a reactive pipeline either, and a rejection
+ * carries the state of the bucket, so the response tells the client when to retry.</p>
+ *
+ * <p>The plan also holds the policy of the method and the {@link RateLimitService} of that policy, both looked
+ * up once through {@link RateLimitPolicyService}. Every call consumes the {@link CallCost} compiled from
+ * {@link RateLimitAsync#cost()}, {@link RateLimitAsync#costArgument()} or {@link RateLimitAsync#costProvider()},
+ * the cost of the policy by default.</p>
+ *
+ * <p>Methods in the {@link OnExceed#DELAY} mode are not rejected while their permits can be reserved within
+ * the maximum delay: the subscription to the method result is postponed by a non-blocking timer instead.</p>
+ *
+ * <p>The elements of a {@code Flux} method with a {@link RateLimitAsync#elementCost() element cost} are paced
+ * by {@link RateLimitOperators#throttle(RateLimitOperators.PermitSource, java.util.function.ToIntFunction, Duration)}
+ * on the bucket of the same key, after the call itself has been admitted.</p>
+ *
  * @see RateLimitAsync
  */
 @Slf4j
@@ -31,8 +66,10 @@ import reactor.core.publisher.Mono;
 @Component
 @RequiredArgsConstructor
 public class RateLimitAspect {
-    private final RateLimitService rateLimitService;
+    private final RateLimitPolicyService rateLimitPolicyService;
     private final RateLimitKeyService rateLimitKeyService;
+    private final RateLimitCostService rateLimitCostService;
+    private final ConcurrentMap<Method, RateLimitPlan> plans = new ConcurrentHashMap<>();
 
     /**
      * The around advice that implements the rate-limiting logic.
@@ -46,7 +83,7 @@ public class RateLimitAspect {
     @Around("@annotation(rateLimitAsync) && execution(reactor.core.publisher.Mono *(..))")
     public Mono<?> applyAsyncRateLimitingMono(ProceedingJoinPoint joinPoint, RateLimitAsync rateLimitAsync) throws Throwable {
         log.debug("Apply async rate limiting Mono");
-        return checkLimits(joinPoint, rateLimitAsync).switchIfEmpty((Mono<?>) joinPoint.proceed());
+        return checkLimits(joinPoint, planOf(joinPoint, rateLimitAsync)).switchIfEmpty((Mono<?>) joinPoint.proceed());
     }
 
     /**
@@ -61,27 +98,217 @@ public class RateLimitAspect {
     @Around("@annotation(rateLimitAsync) && execution(reactor.core.publisher.Flux *(..))")
     public Flux<?> applyAsyncRateLimitingFlux(ProceedingJoinPoint joinPoint, RateLimitAsync rateLimitAsync) throws Throwable {
         log.debug("Apply async rate limiting Flux");
-        return checkLimits(joinPoint, rateLimitAsync).flux().switchIfEmpty((Flux<?>) joinPoint.proceed());
+        RateLimitPlan plan = planOf(joinPoint, rateLimitAsync);
+        if (plan.elementCost() > 0) {
+            return throttleElements(joinPoint, plan);
+        }
+        return checkLimits(joinPoint, plan).flux().switchIfEmpty((Flux<?>) joinPoint.proceed());
+    }
+
+    /**
+     * Checks the limit of the call and paces the elements of the method result by the bucket of the same key.
+     */
+    @SuppressWarnings("unchecked")
+    private Flux<?> throttleElements(ProceedingJoinPoint joinPoint, RateLimitPlan plan) throws Throwable {
+        Flux<Object> elements = (Flux<Object>) joinPoint.proceed();
+        LocalRateLimitService rateLimitService = (LocalRateLimitService) plan.rateLimitService();
+        return Flux.deferContextual(contextView -> resolveRateLimitKey(joinPoint, plan)
+                .flatMapMany(rateLimitKey -> checkLimit(plan, rateLimitKey, plan.cost(joinPoint, contextView))
+                        .thenMany(elements.transform(RateLimitOperators.throttle(
+                                new KeyPermitSource(rateLimitService, rateLimitKey, rateLimitPolicyService, plan.policy().name()),
+                                element -> plan.elementCost(),
+                                plan.maxDelay())))));
     }
 
     /**
-     * The method creates instances of all {@link RateLimitKeyProvider} classes
-     * passed through the {@link RateLimitAsync} annotation.
+     * The method resolves the {@link RateLimitKeyProvider} instances of all classes
+     * passed through the {@link RateLimitAsync} annotation, once per method.
      * Each provider creates the {@link RateLimitKey} key.
-     * The first non-null key will be checked by {@link RateLimitService}.
+     * In the {@link KeyMode#FIRST} mode the first non-null key will be checked by {@link RateLimitService},
+     * in the {@link KeyMode#ALL} mode all distinct keys will be checked together.
      *
      * @return {@code Mono.empty()} if request allowed
      * {@code Mono.error()} if rate limit key couldn't be provided or the rate limit is exceeded.
      */
-    private Mono<Object> checkLimits(ProceedingJoinPoint joinPoint, RateLimitAsync rateLimitAsync) {
-        return rateLimitKeyService.getRateLimitKeys(rateLimitAsync.value(), joinPoint)
+    private Mono<Object> checkLimits(ProceedingJoinPoint joinPoint, RateLimitPlan plan) {
+        if (plan.synchronous()) {
+            return Mono.deferContextual(contextView -> {
+                int cost = plan.cost(joinPoint, contextView);
+                if (plan.keyMode() == KeyMode.ALL) {
+                    return checkAllLimits(plan, plan.resolveRateLimitKeys(joinPoint, contextView), cost);
+                }
+                RateLimitKey rateLimitKey = plan.resolveRateLimitKey(joinPoint, contextView);
+                return rateLimitKey == null
+                        ? Mono.error(new RateLimitKeyException("Key not found"))
+                        : checkLimit(plan, rateLimitKey, cost);
+            });
+        }
+        Flux<RateLimitKey> rateLimitKeys = rateLimitKeyService.getRateLimitKeys(plan.providers(), joinPoint);
+        return Mono.deferContextual(contextView -> {
+            int cost = plan.cost(joinPoint, contextView);
+            if (plan.keyMode() == KeyMode.ALL) {
+                return rateLimitKeys.distinct()
+                        .collectList()
+                        .flatMap(keys -> checkAllLimits(plan, keys.toArray(RateLimitKey[]::new), cost));
+            }
+            return rateLimitKeys.next()
+                    .switchIfEmpty(Mono.error(() -> new RateLimitKeyException("Key not found")))
+                    .flatMap(rateLimitKey -> checkLimit(plan, rateLimitKey, cost));
+        });
+    }
+
+    private Mono<RateLimitKey> resolveRateLimitKey(ProceedingJoinPoint joinPoint, RateLimitPlan plan) {
+        if (plan.synchronous()) {
+            return Mono.deferContextual(contextView -> {
+                RateLimitKey rateLimitKey = plan.resolveRateLimitKey(joinPoint, contextView);
+                return rateLimitKey == null
+                        ? Mono.error(new RateLimitKeyException("Key not found"))
+                        : Mono.just(rateLimitKey);
+            });
+        }
+        return rateLimitKeyService.getRateLimitKeys(plan.providers(), joinPoint)
                 .next()
-                .switchIfEmpty(Mono.error(() -> new RateLimitKeyException("Key not found")))
-                .flatMap(rateLimitKey ->
-                        rateLimitService.allowRequest(rateLimitKey)
-                                .flatMap(allowed -> allowed
-                                        ? Mono.empty()
-                                        : Mono.error(() -> new RateLimitExceededException(rateLimitKey + " has exceeded his limit.")))
-                );
+                .switchIfEmpty(Mono.error(() -> new RateLimitKeyException("Key not found")));
+    }
+
+    private Mono<Object> checkLimit(RateLimitPlan plan, RateLimitKey rateLimitKey, int cost) {
+        RateLimitService rateLimitService = plan.rateLimitService();
+        if (plan.reservations() != null) {
+            return delayLimit(plan, rateLimitKey, cost);
+        }
+        if (rateLimitService instanceof LocalRateLimitService localRateLimitService) {
+            long probe = localRateLimitService.tryAcquireAndProbe(rateLimitKey, cost);
+            return ConsumptionProbe.isAllowed(probe)
+                    ? Mono.empty()
+                    : Mono.error(new RateLimitExceededException(rateLimitKey + " has exceeded his limit.", probe));
+        }
+        return rateLimitService.allowRequest(rateLimitKey, cost)
+                .flatMap(allowed -> allowed
+                        ? Mono.empty()
+                        : Mono.error(() -> new RateLimitExceededException(rateLimitKey + " has exceeded his limit.")));
+    }
+
+    /**
+     * Admits the call right away if the key has permits, otherwise reserves them and delays the call
+     * until they are available. The reserved permits are refunded if the call is cancelled meanwhile.
+     * A call heavier than the current burst of the policy, lowered since the plan was compiled, is rejected.
+     */
+    private Mono<Object> delayLimit(RateLimitPlan plan, RateLimitKey rateLimitKey, int cost) {
+        LocalRateLimitService rateLimitService = (LocalRateLimitService) plan.rateLimitService();
+        if (rateLimitService.tryAcquire(rateLimitKey, cost)) {
+            return Mono.empty();
+        }
+        if (cost > rateLimitPolicyService.getPolicy(plan.policy().name()).bandwidth().capacity()) {
+            return Mono.error(new RateLimitExceededException(
+                    rateLimitKey + " has exceeded the burst of policy " + plan.policy().name()));
+        }
+        Reservations reservations = plan.reservations();
+        if (!reservations.tryEnter(rateLimitKey)) {
+            return Mono.error(new RateLimitExceededException(rateLimitKey + " has too many delayed calls."));
+        }
+        long waitNanos = rateLimitService.tryReserve(rateLimitKey, cost, reservations.maxDelayNanos());
+        if (waitNanos <= 0) {
+            reservations.leave(rateLimitKey);
+            return waitNanos == 0
+                    ? Mono.empty()
+                    : Mono.error(new RateLimitExceededException(rateLimitKey + " has exceeded his limit."));
+        }
+        log.debug("Key: {}, delayed by {} ns", rateLimitKey, waitNanos);
+        return Mono.delay(Duration.ofNanos(waitNanos))
+                .doOnCancel(() -> rateLimitService.refund(rateLimitKey, cost))
+                .doFinally(signal -> reservations.leave(rateLimitKey))
+                .then(Mono.empty());
+    }
+
+    private Mono<Object> checkAllLimits(RateLimitPlan plan, RateLimitKey[] rateLimitKeys, int cost) {
+        if (rateLimitKeys.length == 0) {
+            return Mono.error(new RateLimitKeyException("Key not found"));
+        }
+        RateLimitService rateLimitService = plan.rateLimitService();
+        if (rateLimitService instanceof LocalRateLimitService localRateLimitService) {
+            return localRateLimitService.tryAcquireAll(rateLimitKeys, cost)
+                    ? Mono.empty()
+                    : Mono.error(new RateLimitExceededException(Arrays.toString(rateLimitKeys) + " has exceeded his limit."));
+        }
+        return rateLimitService.allowAll(rateLimitKeys, cost)
+                .flatMap(allowed -> allowed
+                        ? Mono.empty()
+                        : Mono.error(() -> new RateLimitExceededException(Arrays.toString(rateLimitKeys) + " has exceeded his limit.")));
+    }
+
+    private RateLimitPlan planOf(ProceedingJoinPoint joinPoint, RateLimitAsync rateLimitAsync) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        RateLimitPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, key -> compile(method, rateLimitAsync));
+            log.debug("Compiled rate limit plan of method {}, policy: {}, synchronous: {}",
+                    method, plan.policy().name(), plan.synchronous());
+        }
+        return plan;
+    }
+
+    private RateLimitPlan compile(Method method, RateLimitAsync rateLimitAsync) {
+        RateLimitService rateLimitService = rateLimitPolicyService.getRateLimitService(rateLimitAsync.policy());
+        RateLimitPolicy policy = rateLimitPolicyService.getPolicy(rateLimitAsync.policy());
+        Duration maxDelay = DurationStyle.detectAndParse(rateLimitAsync.maxDelay());
+        Reservations reservations = null;
+        if (rateLimitAsync.onExceed() == OnExceed.DELAY) {
+            Assert.state(rateLimitService instanceof LocalRateLimitService, "Delayed calls require a local rate limit service");
+            Assert.state(rateLimitAsync.mode() == KeyMode.FIRST, "Delayed calls support the first key mode only");
+            reservations = new Reservations(maxDelay.toNanos(), rateLimitAsync.maxPending());
+        }
+        int elementCost = rateLimitAsync.elementCost();
+        if (elementCost != 0) {
+            Assert.state(rateLimitService instanceof LocalRateLimitService, "Paced elements require a local rate limit service");
+            Assert.state(rateLimitAsync.mode() == KeyMode.FIRST, "Paced elements support the first key mode only");
+            Assert.state(elementCost > 0 && elementCost <= policy.bandwidth().capacity(),
+                    "Element cost must be positive and not exceed the burst of policy " + policy.name());
+        }
+        return RateLimitPlan.of(
+                rateLimitKeyService.getRateLimitKeyProviders(rateLimitAsync.value()),
+                rateLimitAsync.mode(),
+                policy,
+                rateLimitService,
+                compileCost(method, rateLimitAsync, policy),
+                reservations,
+                elementCost,
+                maxDelay);
+    }
+
+    private CallCost compileCost(Method method, RateLimitAsync rateLimitAsync, RateLimitPolicy policy) {
+        if (rateLimitAsync.costProvider() != RateLimitCostProvider.class) {
+            Assert.state(rateLimitAsync.cost() == 0 && rateLimitAsync.costArgument().isEmpty(),
+                    () -> "Cost provider of method " + method + " excludes the cost and the cost argument");
+            return CallCost.of(rateLimitCostService.getRateLimitCostProvider(rateLimitAsync.costProvider()));
+        }
+        int cost = rateLimitAsync.cost() == 0 ? policy.cost() : rateLimitAsync.cost();
+        Assert.state(cost > 0 && cost <= policy.bandwidth().capacity(),
+                () -> "Cost of method " + method + " must be positive and not exceed the burst of policy " + policy.name());
+        return rateLimitAsync.costArgument().isEmpty()
+                ? CallCost.constant(cost)
+                : CallCost.ofArgument(method, rateLimitAsync.costArgument(), cost);
+    }
+
+    /**
+     * The permits of the bucket of a key, which pace the elements of a {@code Flux} method. The capacity is
+     * the burst of the current policy, which may have been updated since the plan was compiled.
+     */
+    private record KeyPermitSource(LocalRateLimitService rateLimitService, RateLimitKey rateLimitKey,
+                                   RateLimitPolicyService rateLimitPolicyService, String policyName)
+            implements RateLimitOperators.PermitSource {
+        @Override
+        public long tryReserve(int permits, long maxWaitNanos) {
+            return rateLimitService.tryReserve(rateLimitKey, permits, maxWaitNanos);
+        }
+
+        @Override
+        public void refund(int permits) {
+            rateLimitService.refund(rateLimitKey, permits);
+        }
+
+        @Override
+        public long capacity() {
+            return rateLimitPolicyService.getPolicy(policyName).bandwidth().capacity();
+        }
     }
 }
@@ -1,5 +1,6 @@
 package name.nikolaikochkin.ratelimiter.aspect;
 
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostProvider;
 import name.nikolaikochkin.ratelimiter.service.key.provider.RateLimitKeyProvider;
 
 import java.lang.annotation.ElementType;
@@ -13,6 +14,9 @@ import java.lang.annotation.Target;
  *
  * <p>Annotated methods should return {@code Mono} or {@code Flux}</p>
  *
+ * <p>The limits are taken from the {@link #policy() policy} configured by
+ * {@code application.ratelimit.policies.<name>.*}, or from the default policy.</p>
+ *
  * @see RateLimitAspect
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -22,4 +26,54 @@ public @interface RateLimitAsync {
      * Array of key providers
      */
     Class<? extends RateLimitKeyProvider>[] value();
+
+    /**
+     * Which of the provided keys are limited, only the first one by default
+     */
+    KeyMode mode() default KeyMode.FIRST;
+
+    /**
+     * The name of the rate limit policy, the default policy if empty
+     */
+    String policy() default "";
+
+    /**
+     * What happens to a call when the limit is exceeded, rejected by default
+     */
+    OnExceed onExceed() default OnExceed.REJECT;
+
+    /**
+     * The maximum delay of a call in the {@link OnExceed#DELAY} mode, or of an element paced by
+     * {@link #elementCost()}, such as {@code 500ms} or {@code PT1S}
+     */
+    String maxDelay() default "1s";
+
+    /**
+     * The maximum number of delayed calls per key in the {@link OnExceed#DELAY} mode
+     */
+    int maxPending() default 16;
+
+    /**
+     * The number of permits consumed by every element of a {@code Flux} method, which paces the elements
+     * by the same bucket as the call, or {@code 0} if only the call is limited
+     */
+    int elementCost() default 0;
+
+    /**
+     * The number of permits consumed by a call, or by a unit of the {@link #costArgument()},
+     * the cost of the policy if {@code 0}
+     */
+    int cost() default 0;
+
+    /**
+     * The name of the argument whose size multiplies the {@link #cost()}: the size of a collection or a map,
+     * the length of an array or the value of a number, such as the items of a batch call
+     */
+    String costArgument() default "";
+
+    /**
+     * The provider of the cost of a call, which replaces {@link #cost()} and {@link #costArgument()}
+     * unless it is the {@link RateLimitCostProvider} interface itself
+     */
+    Class<? extends RateLimitCostProvider> costProvider() default RateLimitCostProvider.class;
 }
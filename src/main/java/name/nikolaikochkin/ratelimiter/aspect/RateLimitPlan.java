@@ -0,0 +1,114 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RateLimitKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.key.provider.SynchronousRateLimitKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.aspectj.lang.ProceedingJoinPoint;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The {@code RateLimitPlan} record is the compiled form of a {@link RateLimitAsync} annotated method,
+ * built once per method by {@link RateLimitAspect}.
+ *
+ * @param providers            the resolved key providers, in the order of the annotation
+ * @param synchronousProviders the same providers if every one of them is a {@link SynchronousRateLimitKeyProvider},
+ *                             {@code null} otherwise
+ * @param keyMode              which of the resolved keys are limited
+ * @param policy               the rate limit policy resolved at startup, its current burst is looked up by name
+ * @param rateLimitService     the service which applies the policy
+ * @param callCost             the number of permits consumed by a call
+ * @param reservations         the delayed calls of an {@link OnExceed#DELAY} method, {@code null} for rejecting ones
+ * @param elementCost          the number of permits consumed by every element of a {@code Flux} method, {@code 0} if none
+ * @param maxDelay             the maximum delay of a call or an element
+ */
+record RateLimitPlan(RateLimitKeyProvider[] providers,
+                     SynchronousRateLimitKeyProvider[] synchronousProviders,
+                     KeyMode keyMode,
+                     RateLimitPolicy policy,
+                     RateLimitService rateLimitService,
+                     CallCost callCost,
+                     Reservations reservations,
+                     int elementCost,
+                     Duration maxDelay) {
+    private static final RateLimitKey[] NO_KEYS = new RateLimitKey[0];
+
+    static RateLimitPlan of(RateLimitKeyProvider[] providers,
+                            KeyMode keyMode,
+                            RateLimitPolicy policy,
+                            RateLimitService rateLimitService,
+                            CallCost callCost,
+                            Reservations reservations,
+                            int elementCost,
+                            Duration maxDelay) {
+        SynchronousRateLimitKeyProvider[] synchronousProviders = new SynchronousRateLimitKeyProvider[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            if (!(providers[i] instanceof SynchronousRateLimitKeyProvider synchronousProvider)) {
+                synchronousProviders = null;
+                break;
+            }
+            synchronousProviders[i] = synchronousProvider;
+        }
+        return new RateLimitPlan(providers, synchronousProviders, keyMode, policy, rateLimitService, callCost, reservations,
+                elementCost, maxDelay);
+    }
+
+    /**
+     * Indicates whether every provider resolves its key synchronously, so that the keys are resolved
+     * by {@link #resolveRateLimitKey(ProceedingJoinPoint, ContextView)} and
+     * {@link #resolveRateLimitKeys(ProceedingJoinPoint, ContextView)}.
+     */
+    boolean synchronous() {
+        return synchronousProviders != null;
+    }
+
+    /**
+     * Returns the number of permits consumed by the call.
+     */
+    int cost(ProceedingJoinPoint joinPoint, ContextView contextView) {
+        return callCost.of(joinPoint, contextView);
+    }
+
+    /**
+     * Returns the first key resolved by the providers, or {@code null} if none of them has a key.
+     * Called only for {@link #synchronous()} plans.
+     */
+    RateLimitKey resolveRateLimitKey(ProceedingJoinPoint joinPoint, ContextView contextView) {
+        for (SynchronousRateLimitKeyProvider provider : synchronousProviders) {
+            RateLimitKey rateLimitKey = provider.resolveRateLimitKey(joinPoint, contextView);
+            if (rateLimitKey != null) {
+                return rateLimitKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the distinct keys resolved by the providers, possibly none.
+     * Called only for {@link #synchronous()} plans.
+     */
+    RateLimitKey[] resolveRateLimitKeys(ProceedingJoinPoint joinPoint, ContextView contextView) {
+        RateLimitKey[] rateLimitKeys = new RateLimitKey[synchronousProviders.length];
+        int size = 0;
+        for (SynchronousRateLimitKeyProvider provider : synchronousProviders) {
+            RateLimitKey rateLimitKey = provider.resolveRateLimitKey(joinPoint, contextView);
+            if (rateLimitKey != null && !contains(rateLimitKeys, size, rateLimitKey)) {
+                rateLimitKeys[size++] = rateLimitKey;
+            }
+        }
+        return size == 0 ? NO_KEYS : size == rateLimitKeys.length ? rateLimitKeys : Arrays.copyOf(rateLimitKeys, size);
+    }
+
+    private static boolean contains(RateLimitKey[] rateLimitKeys, int size, RateLimitKey rateLimitKey) {
+        for (int i = 0; i < size; i++) {
+            if (rateLimitKeys[i].equals(rateLimitKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
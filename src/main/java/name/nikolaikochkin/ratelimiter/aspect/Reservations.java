@@ -0,0 +1,60 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@code Reservations} class bounds the delayed calls of a {@link OnExceed#DELAY} method per key.
+ *
+ * <p>Only keys with delayed calls in flight are tracked, the entry of a key is removed
+ * together with its last delayed call.</p>
+ */
+final class Reservations {
+    private final long maxDelayNanos;
+    private final int maxPending;
+    private final ConcurrentMap<RateLimitKey, Integer> pending = new ConcurrentHashMap<>();
+
+    Reservations(long maxDelayNanos, int maxPending) {
+        if (maxDelayNanos <= 0) {
+            throw new IllegalArgumentException("Max delay value should be positive");
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending value should be positive");
+        }
+        this.maxDelayNanos = maxDelayNanos;
+        this.maxPending = maxPending;
+    }
+
+    long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    /**
+     * Registers a delayed call of the key.
+     *
+     * @return {@code false} if the key already has the maximum number of delayed calls
+     */
+    boolean tryEnter(RateLimitKey rateLimitKey) {
+        if (pending.merge(rateLimitKey, 1, Integer::sum) <= maxPending) {
+            return true;
+        }
+        leave(rateLimitKey);
+        return false;
+    }
+
+    /**
+     * Unregisters a delayed call of the key.
+     */
+    void leave(RateLimitKey rateLimitKey) {
+        pending.computeIfPresent(rateLimitKey, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Returns the number of delayed calls of the key.
+     */
+    int pending(RateLimitKey rateLimitKey) {
+        return pending.getOrDefault(rateLimitKey, 0);
+    }
+}
@@ -0,0 +1,25 @@
+package name.nikolaikochkin.ratelimiter.config;
+
+import name.nikolaikochkin.ratelimiter.algorithm.CoarseNanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for the clock of the rate limiters.
+ */
+@Configuration
+public class ClockConfig {
+    /**
+     * Method to configure the {@link NanoClock} injected into the rate limiter factories: the system timer by default,
+     * or a {@link CoarseNanoClock} ticking every {@code application.ratelimit.clock.resolution}, such as {@code 100us}.
+     * The coarse clock is closed with the context.
+     */
+    @Bean
+    public NanoClock nanoClock(@Value("${application.ratelimit.clock.resolution:0}") Duration resolution) {
+        return resolution.isZero() ? NanoClock.SYSTEM : new CoarseNanoClock(resolution);
+    }
+}
@@ -0,0 +1,34 @@
+package name.nikolaikochkin.ratelimiter.config;
+
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.service.limiter.LeasableRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.LeasingRateLimitService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for local permit leasing in front of a shared rate limit store.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.ratelimit.leasing.enabled", havingValue = "true")
+public class LeasingConfig {
+    /**
+     * Method to configure the {@link LeasingRateLimitService} which serves permits leased from
+     * the {@link LeasableRateLimitService} store. The Redis store is the only leasable one, so the bean
+     * is selected by the same {@code application.ratelimit.store} property as the store itself.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "application.ratelimit.store", havingValue = "redis")
+    public LeasingRateLimitService leasingRateLimitService(LeasableRateLimitService remote,
+                                                           @Value("${application.ratelimit.leasing.lease-duration:PT1S}") Duration leaseDuration,
+                                                           @Value("${application.ratelimit.leasing.max-batch:64}") long maxBatch,
+                                                           NanoClock clock) {
+        return new LeasingRateLimitService(remote, leaseDuration, maxBatch, clock);
+    }
+}
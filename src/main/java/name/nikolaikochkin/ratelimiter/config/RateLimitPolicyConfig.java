@@ -0,0 +1,13 @@
+package name.nikolaikochkin.ratelimiter.config;
+
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class which binds the named rate limit policies.
+ */
+@Configuration
+@EnableConfigurationProperties(RateLimitPolicyProperties.class)
+public class RateLimitPolicyConfig {
+}
@@ -1,11 +1,20 @@
 package name.nikolaikochkin.ratelimiter.config;
 
+import name.nikolaikochkin.ratelimiter.filter.RateLimitWebFilter;
+import name.nikolaikochkin.ratelimiter.filter.RequestPathMatcher;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RemoteHostAddressKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.server.WebFilter;
 
+import java.util.List;
+
 /**
  * Configuration class for WebFlux filters.
  */
@@ -14,10 +23,31 @@ import org.springframework.web.server.WebFilter;
 public class WebFilterConfig {
     /**
      * Method to configure the WebFlux filter to enrich the context with a {@link ServerHttpRequest} object.
+     * Only requests matching {@code application.ratelimit.context-paths} are enriched.
+     */
+    @Bean
+    public WebFilter serverHttpRequestWebFilter(@Value("${application.ratelimit.context-paths:/**}") List<String> contextPaths) {
+        RequestPathMatcher pathMatcher = new RequestPathMatcher(contextPaths);
+        return (exchange, chain) -> pathMatcher.matches(exchange.getRequest())
+                ? chain.filter(exchange).contextWrite(context -> context.put(ServerHttpRequest.class, exchange.getRequest()))
+                : chain.filter(exchange);
+    }
+
+    /**
+     * Method to configure the WebFlux filter which limits requests matching
+     * {@code application.ratelimit.web-filter.paths} by the remote address of the client,
+     * with the metered service of the default policy. The filter runs at {@code application.ratelimit.web-filter.order},
+     * before any other filter by default. The rejections of a remote store are answered with the {@code Retry-After}
+     * of one permit of the current default policy.
      */
     @Bean
-    public WebFilter serverHttpRequestWebFilter() {
-        return (exchange, chain) -> chain.filter(exchange)
-                .contextWrite(context -> context.put(ServerHttpRequest.class, exchange.getRequest()));
+    @ConditionalOnProperty(name = "application.ratelimit.web-filter.paths")
+    public RateLimitWebFilter rateLimitWebFilter(RateLimitPolicyService rateLimitPolicyService,
+                                                 RemoteHostAddressKeyProvider keyProvider,
+                                                 @Value("${application.ratelimit.web-filter.paths}") List<String> paths,
+                                                 @Value("${application.ratelimit.web-filter.order:#{T(org.springframework.core.Ordered).HIGHEST_PRECEDENCE}}") int order) {
+        return new RateLimitWebFilter(rateLimitPolicyService.getRateLimitService(RateLimitPolicy.DEFAULT),
+                keyProvider, new RequestPathMatcher(paths), order,
+                () -> rateLimitPolicyService.getPolicy(RateLimitPolicy.DEFAULT).bandwidth().nanosPerPermit());
     }
 }
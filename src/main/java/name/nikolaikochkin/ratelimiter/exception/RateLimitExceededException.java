@@ -1,12 +1,31 @@
 package name.nikolaikochkin.ratelimiter.exception;
 
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+
 /**
  * The {@code RateLimitExceededException} class represents a custom exception
  * thrown when a request exceeds the predefined rate limit in the rate-limiting
  * functionality of the application.
+ *
+ * <p>The exception carries the {@link ConsumptionProbe} of the rejection, if the state of the bucket is known,
+ * so that the response can tell the client how long to wait.</p>
  */
 public class RateLimitExceededException extends RuntimeException {
+    private final long probe;
+
     public RateLimitExceededException(String message) {
+        this(message, ConsumptionProbe.REJECTED);
+    }
+
+    public RateLimitExceededException(String message, long probe) {
         super(message);
+        this.probe = probe;
+    }
+
+    /**
+     * Returns the {@link ConsumptionProbe} of the rejection.
+     */
+    public long getProbe() {
+        return probe;
     }
 }
@@ -1,6 +1,7 @@
 package name.nikolaikochkin.ratelimiter.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.filter.RateLimitHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -18,11 +19,16 @@ public class RateLimitExceptionHandler extends ResponseEntityExceptionHandler {
                 .build();
     }
 
+    /**
+     * Answers {@code 429 Too Many Requests} with the {@link RateLimitHeaders} of the rejection,
+     * so that clients wait before retrying instead of retrying blindly.
+     */
     @ExceptionHandler(RateLimitExceededException.class)
     ResponseEntity<String> handleRateLimitExceededException(RateLimitExceededException e) {
-        log.error("Something went wrong: {}", e.getMessage());
+        log.debug("Rate limit exceeded: {}", e.getMessage());
         return ResponseEntity
-                .status(HttpStatus.BAD_GATEWAY)
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .headers(headers -> RateLimitHeaders.write(headers, e.getProbe()))
                 .build();
     }
 }
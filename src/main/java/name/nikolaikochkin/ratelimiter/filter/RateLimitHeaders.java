@@ -0,0 +1,62 @@
+package name.nikolaikochkin.ratelimiter.filter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code RateLimitHeaders} class writes the state of a bucket, decoded from a {@link ConsumptionProbe},
+ * into the headers of a response, so that well-behaved clients back off for exactly as long as needed:
+ * <ul>
+ *     <li>{@code RateLimit-Remaining} - the permits left after the request;</li>
+ *     <li>{@code RateLimit-Reset} - the seconds until the next permit, or until the permits of a rejected
+ *     request are available;</li>
+ *     <li>{@code Retry-After} - the same seconds, only on a rejection.</li>
+ * </ul>
+ * A probe without the state of the bucket, such as the one of a remote store, writes no headers;
+ * the rejections of such a store may still be answered with an estimated {@code Retry-After}.
+ */
+public final class RateLimitHeaders {
+    public static final String REMAINING = "RateLimit-Remaining";
+    public static final String RESET = "RateLimit-Reset";
+
+    private RateLimitHeaders() {
+    }
+
+    /**
+     * Writes the headers of the probe.
+     *
+     * @param headers the headers of the response
+     * @param probe   the {@link ConsumptionProbe} of the request
+     */
+    public static void write(HttpHeaders headers, long probe) {
+        if (!ConsumptionProbe.isKnown(probe)) {
+            return;
+        }
+        String reset = Long.toString(seconds(ConsumptionProbe.nanosToRefill(probe)));
+        headers.set(REMAINING, Long.toString(ConsumptionProbe.remainingPermits(probe)));
+        headers.set(RESET, reset);
+        if (!ConsumptionProbe.isAllowed(probe)) {
+            headers.set(HttpHeaders.RETRY_AFTER, reset);
+        }
+    }
+
+    /**
+     * Writes the {@code Retry-After} header of a rejection whose bucket state is unknown.
+     *
+     * @param headers the headers of the response
+     * @param nanos   the estimated time until the request may be retried
+     */
+    public static void writeRetryAfter(HttpHeaders headers, long nanos) {
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, seconds(nanos))));
+    }
+
+    /**
+     * Rounds up, so that a client never retries before the permits are available.
+     */
+    private static long seconds(long nanos) {
+        long nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+        return (nanos + nanosPerSecond - 1) / nanosPerSecond;
+    }
+}
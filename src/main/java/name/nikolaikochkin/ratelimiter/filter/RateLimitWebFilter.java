@@ -0,0 +1,151 @@
+package name.nikolaikochkin.ratelimiter.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.exception.RateLimitKeyException;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RemoteHostAddressKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code RateLimitWebFilter} class limits requests by the remote address of the client
+ * at the front of the WebFlux filter chain, before the handler is resolved.
+ *
+ * <p>Only requests whose path matches one of the configured patterns are limited. A rejected request
+ * is answered with {@code 429 Too Many Requests} written directly to the exchange, without raising
+ * an exception, so shedding a flood of requests costs a bucket lookup and an empty response. Local services
+ * report the state of the bucket, which is written into the {@link RateLimitHeaders} of every limited response,
+ * including {@code Retry-After} on a rejection. Remote services only report the decision, so their rejections
+ * carry a {@code Retry-After} estimated from the policy, if the filter is given one, such as the time
+ * of one permit.</p>
+ *
+ * <p>The filter uses the same {@link RateLimitService} and the same remote address keys as the
+ * {@link RemoteHostAddressKeyProvider}, so a client shares one bucket between the filter and annotated
+ * methods limited by its address. Routes should be limited either by the filter or by the annotation.</p>
+ *
+ * <p>A request whose remote address is unknown cannot be attributed to a client, so it is answered with
+ * {@code 400 Bad Request} instead of being let through unlimited.</p>
+ *
+ * <p>The filter runs before any other one by default. The order is configurable, for example to run
+ * after a filter which restores the client address from a proxy header.</p>
+ *
+ * @see RequestPathMatcher
+ */
+@Slf4j
+public class RateLimitWebFilter implements WebFilter, Ordered {
+    private final RateLimitService rateLimitService;
+    private final RemoteHostAddressKeyProvider keyProvider;
+    private final RequestPathMatcher pathMatcher;
+    private final int order;
+    private final LongSupplier retryAfterNanos;
+
+    /**
+     * Constructs a new {@code RateLimitWebFilter} which runs before any other filter.
+     *
+     * @param rateLimitService the service which decides on the requests
+     * @param keyProvider      the provider of the remote address keys
+     * @param pathMatcher      the patterns of the limited paths
+     */
+    public RateLimitWebFilter(RateLimitService rateLimitService,
+                              RemoteHostAddressKeyProvider keyProvider,
+                              RequestPathMatcher pathMatcher) {
+        this(rateLimitService, keyProvider, pathMatcher, Ordered.HIGHEST_PRECEDENCE);
+    }
+
+    /**
+     * Constructs a new {@code RateLimitWebFilter}.
+     *
+     * @param rateLimitService the service which decides on the requests
+     * @param keyProvider      the provider of the remote address keys
+     * @param pathMatcher      the patterns of the limited paths
+     * @param order            the order of the filter in the chain
+     */
+    public RateLimitWebFilter(RateLimitService rateLimitService,
+                              RemoteHostAddressKeyProvider keyProvider,
+                              RequestPathMatcher pathMatcher,
+                              int order) {
+        this(rateLimitService, keyProvider, pathMatcher, order, null);
+    }
+
+    /**
+     * Constructs a new {@code RateLimitWebFilter} which estimates the {@code Retry-After} of the rejections
+     * of a remote service.
+     *
+     * @param rateLimitService the service which decides on the requests
+     * @param keyProvider      the provider of the remote address keys
+     * @param pathMatcher      the patterns of the limited paths
+     * @param order            the order of the filter in the chain
+     * @param retryAfterNanos  the estimated time until a rejected request may be retried, read on every rejection
+     *                         of a remote service, or {@code null} to answer them without {@code Retry-After}
+     */
+    public RateLimitWebFilter(RateLimitService rateLimitService,
+                              RemoteHostAddressKeyProvider keyProvider,
+                              RequestPathMatcher pathMatcher,
+                              int order,
+                              LongSupplier retryAfterNanos) {
+        this.rateLimitService = rateLimitService;
+        this.keyProvider = keyProvider;
+        this.pathMatcher = pathMatcher;
+        this.order = order;
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!pathMatcher.matches(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        RateLimitKey rateLimitKey;
+        try {
+            rateLimitKey = keyProvider.resolveRateLimitKey(exchange.getRequest());
+        } catch (RateLimitKeyException e) {
+            return rejectUnknownClient(exchange, e);
+        }
+        if (rateLimitService instanceof LocalRateLimitService localRateLimitService) {
+            long probe = localRateLimitService.tryAcquireAndProbe(rateLimitKey, 1);
+            RateLimitHeaders.write(exchange.getResponse().getHeaders(), probe);
+            return ConsumptionProbe.isAllowed(probe) ? chain.filter(exchange) : reject(exchange, rateLimitKey);
+        }
+        return rateLimitService.allowRequest(rateLimitKey)
+                .flatMap(allowed -> allowed ? chain.filter(exchange) : rejectRemote(exchange, rateLimitKey));
+    }
+
+    private Mono<Void> rejectRemote(ServerWebExchange exchange, RateLimitKey rateLimitKey) {
+        if (retryAfterNanos != null) {
+            RateLimitHeaders.writeRetryAfter(exchange.getResponse().getHeaders(), retryAfterNanos.getAsLong());
+        }
+        return reject(exchange, rateLimitKey);
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, RateLimitKey rateLimitKey) {
+        log.debug("Reject request {} of key: {}", exchange.getRequest().getPath(), rateLimitKey);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        return response.setComplete();
+    }
+
+    private Mono<Void> rejectUnknownClient(ServerWebExchange exchange, RateLimitKeyException e) {
+        log.debug("Reject request {} of unknown client: {}", exchange.getRequest().getPath(), e.getMessage());
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.BAD_REQUEST);
+        return response.setComplete();
+    }
+
+    /**
+     * Returns the configured order of the filter, {@link Ordered#HIGHEST_PRECEDENCE} by default.
+     */
+    @Override
+    public int getOrder() {
+        return order;
+    }
+}
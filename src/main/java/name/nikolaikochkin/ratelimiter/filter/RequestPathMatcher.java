@@ -0,0 +1,51 @@
+package name.nikolaikochkin.ratelimiter.filter;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.List;
+
+/**
+ * The {@code RequestPathMatcher} class matches the path of a request against a list of path patterns,
+ * such as {@code /api/limit/**}. The patterns are parsed once.
+ *
+ * @see PathPattern
+ */
+public final class RequestPathMatcher {
+    private final PathPattern[] patterns;
+
+    /**
+     * Constructs a new {@code RequestPathMatcher}.
+     *
+     * @param patterns the path patterns
+     * @throws org.springframework.web.util.pattern.PatternParseException if a pattern is invalid
+     */
+    public RequestPathMatcher(List<String> patterns) {
+        this.patterns = patterns.stream()
+                .filter(pattern -> !pattern.isBlank())
+                .map(pattern -> PathPatternParser.defaultInstance.parse(pattern.strip()))
+                .toArray(PathPattern[]::new);
+    }
+
+    /**
+     * Checks whether the path of the request within the application matches any of the patterns.
+     */
+    public boolean matches(ServerHttpRequest request) {
+        PathContainer path = request.getPath().pathWithinApplication();
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestPathMatcher{" +
+                "patterns=" + List.of(patterns) +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+package name.nikolaikochkin.ratelimiter.operator;
+
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The {@code RateLimitOperators} class provides Reactor operators which meter the elements of a {@code Flux}
+ * with a {@link RateLimiter}, to be applied by {@link Flux#transform(Function)}.
+ *
+ * <p>Every element consumes its weight in permits before it is emitted downstream. An element is requested
+ * from the upstream only after the previous one has been emitted and the downstream has demand, and it is
+ * held back by a non-blocking timer until its permits are available, so a large stream is paced at the rate
+ * of the limiter instead of being buffered in memory.</p>
+ *
+ * <p>Permits are reserved through {@link RateLimiter#tryReserve(int, long)}, so an element waits exactly
+ * until its permits are replenished. Limiters which cannot reserve future permits, such as the sliding
+ * window ones, are polled again after {@code maxWait}. Permits reserved for an element are refunded when
+ * the subscription is cancelled while the element waits for them, and an element heavier than the capacity
+ * of the limiter fails the stream instead of waiting forever.</p>
+ *
+ * <pre>{@code
+ * flux.transform(RateLimitOperators.throttle(rateLimiter, chunk -> chunk.length / 1024, Duration.ofSeconds(1)))
+ * }</pre>
+ */
+public final class RateLimitOperators {
+    /**
+     * The source of permits metered by the operators, a {@link RateLimiter} or the bucket of a key.
+     */
+    public interface PermitSource {
+        /**
+         * Attempts to reserve the permits, see {@link RateLimiter#tryReserve(int, long)}.
+         *
+         * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before
+         * using them, or {@link RateLimiter#NOT_RESERVED} if they would not be available within {@code maxWaitNanos}.
+         */
+        long tryReserve(int permits, long maxWaitNanos);
+
+        /**
+         * Returns reserved permits which have not been used, see {@link RateLimiter#refund(int)}.
+         */
+        void refund(int permits);
+
+        /**
+         * Returns the largest number of permits which can ever be reserved at once.
+         */
+        long capacity();
+
+        /**
+         * Returns the permit source of the rate limiter.
+         *
+         * @param rateLimiter the rate limiter of the permits
+         */
+        static PermitSource of(RateLimiter rateLimiter) {
+            return new PermitSource() {
+                @Override
+                public long tryReserve(int permits, long maxWaitNanos) {
+                    return rateLimiter.tryReserve(permits, maxWaitNanos);
+                }
+
+                @Override
+                public void refund(int permits) {
+                    rateLimiter.refund(permits);
+                }
+
+                @Override
+                public long capacity() {
+                    return rateLimiter.bandwidth().capacity();
+                }
+            };
+        }
+    }
+
+    private RateLimitOperators() {
+    }
+
+    /**
+     * Returns an operator which consumes a single permit of the rate limiter per element.
+     *
+     * @param rateLimiter the rate limiter of the stream
+     * @param maxWait     the longest single wait for permits
+     * @throws IllegalArgumentException if the maximum wait is not positive
+     */
+    public static <T> Function<Flux<T>, Flux<T>> throttle(RateLimiter rateLimiter, Duration maxWait) {
+        return throttle(PermitSource.of(rateLimiter), element -> 1, maxWait);
+    }
+
+    /**
+     * Returns an operator which consumes the weight of every element in permits of the rate limiter.
+     *
+     * @param rateLimiter the rate limiter of the stream
+     * @param weigher     the number of permits consumed by an element
+     * @param maxWait     the longest single wait for permits
+     * @throws IllegalArgumentException if the maximum wait is not positive
+     */
+    public static <T> Function<Flux<T>, Flux<T>> throttle(RateLimiter rateLimiter,
+                                                          ToIntFunction<? super T> weigher,
+                                                          Duration maxWait) {
+        return throttle(PermitSource.of(rateLimiter), weigher, maxWait);
+    }
+
+    /**
+     * Returns an operator which consumes the weight of every element in permits of the source.
+     *
+     * <p>Elements of zero weight pass through without consuming permits. Permits reserved for an element
+     * are refunded when the subscription is cancelled while the element waits for them. An element heavier
+     * than the capacity of the source fails the stream with an {@link IllegalArgumentException}.</p>
+     *
+     * @param permitSource the permits of the stream
+     * @param weigher      the number of permits consumed by an element
+     * @param maxWait      the longest single wait for permits
+     * @throws IllegalArgumentException if the maximum wait is not positive
+     */
+    public static <T> Function<Flux<T>, Flux<T>> throttle(PermitSource permitSource,
+                                                          ToIntFunction<? super T> weigher,
+                                                          Duration maxWait) {
+        long maxWaitNanos = maxWait.toNanos();
+        if (maxWaitNanos <= 0) {
+            throw new IllegalArgumentException("Max wait value should be positive");
+        }
+        return flux -> flux.concatMap(element -> {
+            int permits = weigher.applyAsInt(element);
+            if (permits > permitSource.capacity()) {
+                return Mono.error(new IllegalArgumentException(
+                        "Element weight " + permits + " should not exceed the capacity " + permitSource.capacity()));
+            }
+            if (permits == 0 || permitSource.tryReserve(permits, 0) == 0) {
+                return Mono.just(element);
+            }
+            return acquire(permitSource, permits, maxWaitNanos).thenReturn(element);
+        }, 0);
+    }
+
+    private static Mono<Long> acquire(PermitSource permitSource, int permits, long maxWaitNanos) {
+        return Mono.defer(() -> {
+            long waitNanos = permitSource.tryReserve(permits, maxWaitNanos);
+            if (waitNanos == 0) {
+                return Mono.just(0L);
+            }
+            if (waitNanos > 0) {
+                return Mono.delay(Duration.ofNanos(waitNanos))
+                        .doOnCancel(() -> permitSource.refund(permits));
+            }
+            return Mono.delay(Duration.ofNanos(maxWaitNanos))
+                    .then(acquire(permitSource, permits, maxWaitNanos));
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package name.nikolaikochkin.ratelimiter.service;
 
 import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.aspect.KeyMode;
 import name.nikolaikochkin.ratelimiter.aspect.RateLimitAsync;
 import name.nikolaikochkin.ratelimiter.service.key.provider.ClassMethodNameKeyProvider;
 import name.nikolaikochkin.ratelimiter.service.key.provider.RemoteHostAddressKeyProvider;
@@ -19,24 +20,27 @@ import reactor.core.publisher.Mono;
  * exceeding the defined rate limits are handled appropriately, either by queuing, rejecting,
  * or other custom behaviors defined in the rate limiting logic.</p>
  *
+ * <p>Both the address of the client and the method itself are limited: a call is allowed only
+ * if neither of the limits is exceeded.</p>
+ *
  * @see RateLimitAsync
  */
 @Slf4j
 @Service
 public class LimitedService {
-    @RateLimitAsync({
+    @RateLimitAsync(value = {
             RemoteHostAddressKeyProvider.class,
             ClassMethodNameKeyProvider.class
-    })
+    }, mode = KeyMode.ALL)
     public Mono<Void> limitedMonoMethod(String test) {
         log.debug("Limited service Mono method. Argument: {}", test);
         return Mono.empty();
     }
 
-    @RateLimitAsync({
+    @RateLimitAsync(value = {
             RemoteHostAddressKeyProvider.class,
             ClassMethodNameKeyProvider.class
-    })
+    }, mode = KeyMode.ALL)
     public Flux<Void> limitedFluxMethod() {
         log.debug("Limited service Flux method");
         return Flux.empty();
@@ -0,0 +1,22 @@
+package name.nikolaikochkin.ratelimiter.service.cost;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import reactor.util.context.ContextView;
+
+/**
+ * The {@code RateLimitCostProvider} interface computes the number of permits consumed by a call
+ * of a {@code RateLimitAsync} method, for example from the size of its request.
+ *
+ * <p>Implementations are Spring beans referenced by {@code RateLimitAsync#costProvider()}.
+ * The provider is called on every call, so it should neither block nor allocate.</p>
+ */
+public interface RateLimitCostProvider {
+    /**
+     * Returns the number of permits consumed by the call.
+     *
+     * @param joinPoint   the intercepted call
+     * @param contextView the subscriber context, which holds the {@code ServerHttpRequest} of web requests
+     * @return the cost of the call, a positive number
+     */
+    int getCost(ProceedingJoinPoint joinPoint, ContextView contextView);
+}
@@ -0,0 +1,40 @@
+package name.nikolaikochkin.ratelimiter.service.cost;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code RateLimitCostService} class resolves the {@link RateLimitCostProvider} beans by their classes.
+ */
+@Service
+public class RateLimitCostService {
+    private final Map<Class<? extends RateLimitCostProvider>, RateLimitCostProvider> costProviderMap;
+
+    public RateLimitCostService(List<RateLimitCostProvider> providers) {
+        costProviderMap = new HashMap<>();
+        providers.forEach(rateLimitCostProvider -> costProviderMap.put(rateLimitCostProvider.getClass(), rateLimitCostProvider));
+    }
+
+    @Autowired
+    public RateLimitCostService(ObjectProvider<RateLimitCostProvider> providers) {
+        this(providers.orderedStream().toList());
+    }
+
+    /**
+     * Resolves the provider instance of the class.
+     *
+     * @throws IllegalStateException if there is no provider bean of the class
+     */
+    public RateLimitCostProvider getRateLimitCostProvider(Class<? extends RateLimitCostProvider> providerClass) {
+        RateLimitCostProvider provider = costProviderMap.get(providerClass);
+        if (provider == null) {
+            throw new IllegalStateException("Rate limit cost provider not found: " + providerClass.getName());
+        }
+        return provider;
+    }
+}
@@ -0,0 +1,117 @@
+package name.nikolaikochkin.ratelimiter.service.factory;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * The {@code AlgorithmRateLimiterFactory} class is an implementation of the {@link RateLimiterFactory}
+ * interface that creates the {@link RateLimiter} instances of the specified {@link RateLimitAlgorithm},
+ * all of them sharing the same {@link Bandwidth} and clock.
+ *
+ * <p>The factory is enabled with {@code application.ratelimit.algorithm} set to any algorithm other than
+ * {@code token-bucket}, such as {@code sliding-window-counter}, {@code sliding-log} or {@code gcra}.</p>
+ *
+ * @see RateLimiterFactory
+ * @see RateLimitAlgorithm
+ */
+@Service
+@ConditionalOnExpression("!'${application.ratelimit.algorithm:token-bucket}'.trim().equalsIgnoreCase('token-bucket')")
+public class AlgorithmRateLimiterFactory implements RateLimiterFactory {
+    private final RateLimitAlgorithm algorithm;
+    private final Bandwidth bandwidth;
+    private final NanoClock clock;
+
+    /**
+     * Constructs a new {@code AlgorithmRateLimiterFactory} of the algorithm, sharing the specified
+     * bandwidth and clock.
+     *
+     * @param algorithm the algorithm of the created limiters
+     * @param bandwidth the bandwidth of the created limiters
+     * @param clock     the clock of the created limiters
+     * @throws IllegalArgumentException if any of the values is null
+     */
+    public AlgorithmRateLimiterFactory(RateLimitAlgorithm algorithm, Bandwidth bandwidth, NanoClock clock) {
+        Assert.notNull(algorithm, "Algorithm must not be null");
+        Assert.notNull(bandwidth, "Bandwidth must not be null");
+        Assert.notNull(clock, "Clock must not be null");
+        this.algorithm = algorithm;
+        this.bandwidth = bandwidth;
+        this.clock = clock;
+    }
+
+    /**
+     * Constructs a new {@code AlgorithmRateLimiterFactory} of the algorithm with the specified number
+     * of permits and period, whose limiters read the time from the specified clock.
+     *
+     * @param algorithm the property value of the algorithm, such as {@code sliding-log}
+     * @param permits   the number of permits (requests) allowed per period. This value must be positive.
+     * @param period    the duration of the time during which all permits are refilled. This value must be positive.
+     * @param clock     the clock of the created limiters
+     * @throws IllegalArgumentException if there is no algorithm of the name
+     * @throws IllegalStateException    if either permits is non-positive or period is null or non-positive
+     */
+    @Autowired
+    public AlgorithmRateLimiterFactory(@Value("${application.ratelimit.algorithm}") String algorithm,
+                                       @Value("${application.ratelimit.permits}") long permits,
+                                       @Value("${application.ratelimit.period}") Duration period,
+                                       NanoClock clock) {
+        this(RateLimitAlgorithm.of(algorithm, false), bandwidth(permits, period), clock);
+    }
+
+    /**
+     * Creates and returns a new instance of the algorithm {@link RateLimiter} with all permits available.
+     *
+     * @return a new instance of {@link RateLimiter}
+     */
+    @Override
+    public RateLimiter createRateLimiter() {
+        return algorithm.createRateLimiter(bandwidth, clock);
+    }
+
+    @Override
+    public RateLimiter createRateLimiter(long availablePermits) {
+        return algorithm.createRateLimiter(bandwidth, clock, availablePermits);
+    }
+
+    /**
+     * Returns the algorithm of the created {@link RateLimiter} instances.
+     */
+    public RateLimitAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    @Override
+    public NanoClock clock() {
+        return clock;
+    }
+
+    private static Bandwidth bandwidth(long permits, Duration period) {
+        Assert.state(permits > 0, "Permits value must be positive");
+        Assert.notNull(period, "Period must not be null");
+        Assert.state(period.toNanos() > 0, "Period must be positive");
+        return Bandwidth.of(permits, period);
+    }
+
+    @Override
+    public String toString() {
+        return "AlgorithmRateLimiterFactory{" +
+                "algorithm=" + algorithm +
+                ", bandwidth=" + bandwidth +
+                ", clock=" + clock +
+                '}';
+    }
+}
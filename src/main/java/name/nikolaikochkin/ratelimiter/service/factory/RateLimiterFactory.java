@@ -1,5 +1,8 @@
 package name.nikolaikochkin.ratelimiter.service.factory;
 
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
 import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
 
 /**
@@ -13,4 +16,61 @@ public interface RateLimiterFactory {
      * @return a new instance of {@link RateLimiter}, configured and ready for use
      */
     RateLimiter createRateLimiter();
+
+    /**
+     * Creates and returns a new instance of a {@link RateLimiter} with only the specified number of permits
+     * available, as if the others had just been consumed. It is used to restore and to carry over buckets.
+     *
+     * <p>The default implementation consumes the other permits from a new limiter, the factories
+     * of a {@link RateLimitAlgorithm} create the limiter in that state directly.</p>
+     *
+     * @param availablePermits the permits available right away, capped by the capacity of the bandwidth
+     * @return a new instance of {@link RateLimiter} with the available permits
+     * @throws IllegalArgumentException if availablePermits is negative
+     */
+    default RateLimiter createRateLimiter(long availablePermits) {
+        if (availablePermits < 0) {
+            throw new IllegalArgumentException("Available permits value should not be negative");
+        }
+        RateLimiter rateLimiter = createRateLimiter();
+        long consumed = rateLimiter.bandwidth().capacity() - Math.min(availablePermits, rateLimiter.bandwidth().capacity());
+        while (consumed > 0) {
+            int permits = (int) Math.min(consumed, Integer.MAX_VALUE);
+            rateLimiter.tryConsume(permits);
+            consumed -= permits;
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the bandwidth of the created {@link RateLimiter} instances.
+     *
+     * <p>The default implementation creates a limiter to read its bandwidth,
+     * factories holding a shared bandwidth return it directly.</p>
+     */
+    default Bandwidth bandwidth() {
+        return createRateLimiter().bandwidth();
+    }
+
+    /**
+     * Returns the clock of the created {@link RateLimiter} instances, also used by the limiters of the policies
+     * created from this factory.
+     *
+     * <p>The default implementation returns the system clock.</p>
+     */
+    default NanoClock clock() {
+        return NanoClock.SYSTEM;
+    }
+
+    /**
+     * Returns a factory of the algorithm, sharing the specified bandwidth and clock.
+     *
+     * @param algorithm the algorithm of the limiters
+     * @param bandwidth the bandwidth of the limiters
+     * @param clock     the clock of the limiters
+     * @return a new {@link AlgorithmRateLimiterFactory}
+     */
+    static RateLimiterFactory of(RateLimitAlgorithm algorithm, Bandwidth bandwidth, NanoClock clock) {
+        return new AlgorithmRateLimiterFactory(algorithm, bandwidth, clock);
+    }
 }
@@ -1,8 +1,13 @@
 package name.nikolaikochkin.ratelimiter.service.factory;
 
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.LockFreeTokenBucketRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
 import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
 import name.nikolaikochkin.ratelimiter.algorithm.TokenBucketRateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
@@ -14,39 +19,98 @@ import java.time.Duration;
  * This factory is configured with a specific number of permits and a time period, which are used
  * to configure the {@link TokenBucketRateLimiter} instances it creates.
  *
+ * <p>When the {@code lockFree} flag is set, the factory creates {@link LockFreeTokenBucketRateLimiter}
+ * instances instead, which implement the same algorithm with a compare-and-set loop.</p>
+ *
+ * <p>The factory is enabled with {@code application.ratelimit.algorithm=token-bucket}, which is the default.</p>
+ *
  * @see RateLimiterFactory
  * @see TokenBucketRateLimiter
+ * @see LockFreeTokenBucketRateLimiter
  */
 @Service
+@ConditionalOnProperty(name = "application.ratelimit.algorithm", havingValue = "token-bucket", matchIfMissing = true)
 public class TokenBucketRateLimiterFactory implements RateLimiterFactory {
-    private final long permits;
-    private final Duration period;
+    private final Bandwidth bandwidth;
+    private final boolean lockFree;
+    private final NanoClock clock;
 
     /**
      * Constructs a new {@code TokenBucketRateLimiterFactory} with the specified number of permits
-     * and refill period.
+     * and refill period, creating synchronized {@link TokenBucketRateLimiter} instances.
      *
      * @param permits the number of permits (requests) allowed per period. This value must be positive.
      * @param period  the duration of the time during which all permits will be refilled. This value must be positive.
      * @throws IllegalArgumentException if either permits is non-positive or period is null or non-positive
      */
+    public TokenBucketRateLimiterFactory(long permits, Duration period) {
+        this(permits, period, false);
+    }
+
+    /**
+     * Constructs a new {@code TokenBucketRateLimiterFactory} with the specified number of permits
+     * and refill period.
+     *
+     * @param permits  the number of permits (requests) allowed per period. This value must be positive.
+     * @param period   the duration of the time during which all permits will be refilled. This value must be positive.
+     * @param lockFree whether {@link LockFreeTokenBucketRateLimiter} instances should be created
+     * @throws IllegalArgumentException if either permits is non-positive or period is null or non-positive
+     */
+    public TokenBucketRateLimiterFactory(long permits, Duration period, boolean lockFree) {
+        this(permits, period, lockFree, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code TokenBucketRateLimiterFactory} with the specified number of permits
+     * and refill period, whose limiters read the time from the specified clock.
+     *
+     * @param permits  the number of permits (requests) allowed per period. This value must be positive.
+     * @param period   the duration of the time during which all permits will be refilled. This value must be positive.
+     * @param lockFree whether {@link LockFreeTokenBucketRateLimiter} instances should be created
+     * @param clock    the clock of the created limiters
+     * @throws IllegalArgumentException if either permits is non-positive or period is null or non-positive
+     */
+    @Autowired
     public TokenBucketRateLimiterFactory(@Value("${application.ratelimit.permits}") long permits,
-                                         @Value("${application.ratelimit.period}") Duration period) {
+                                         @Value("${application.ratelimit.period}") Duration period,
+                                         @Value("${application.ratelimit.lock-free:false}") boolean lockFree,
+                                         NanoClock clock) {
         Assert.state(permits > 0, "Permits value must be positive");
         Assert.notNull(period, "Period must not be null");
         Assert.state(period.toNanos() > 0, "Period must be positive");
-        this.permits = permits;
-        this.period = period;
+        Assert.notNull(clock, "Clock must not be null");
+        this.bandwidth = Bandwidth.of(permits, period);
+        this.lockFree = lockFree;
+        this.clock = clock;
     }
 
     /**
      * Creates and returns a new instance of {@link TokenBucketRateLimiter}, configured with
      * the specified permits and period.
      *
-     * @return a new instance of {@link TokenBucketRateLimiter}
+     * @return a new instance of {@link TokenBucketRateLimiter} or {@link LockFreeTokenBucketRateLimiter}
      */
     @Override
     public RateLimiter createRateLimiter() {
-        return new TokenBucketRateLimiter(permits, period);
+        return lockFree
+                ? new LockFreeTokenBucketRateLimiter(bandwidth, clock)
+                : new TokenBucketRateLimiter(bandwidth, clock);
+    }
+
+    @Override
+    public RateLimiter createRateLimiter(long availablePermits) {
+        return lockFree
+                ? new LockFreeTokenBucketRateLimiter(bandwidth, clock, availablePermits)
+                : new TokenBucketRateLimiter(bandwidth, clock, availablePermits);
+    }
+
+    @Override
+    public Bandwidth bandwidth() {
+        return bandwidth;
+    }
+
+    @Override
+    public NanoClock clock() {
+        return clock;
     }
 }
@@ -21,9 +21,28 @@ public class RateLimitKeyService {
     }
 
     public Flux<RateLimitKey> getRateLimitKeys(Class<? extends RateLimitKeyProvider>[] classes, ProceedingJoinPoint proceedingJoinPoint) {
-        return Flux.fromArray(classes)
-                .map(keyProviderMap::get)
+        return getRateLimitKeys(getRateLimitKeyProviders(classes), proceedingJoinPoint);
+    }
+
+    public Flux<RateLimitKey> getRateLimitKeys(RateLimitKeyProvider[] providers, ProceedingJoinPoint proceedingJoinPoint) {
+        return Flux.fromArray(providers)
                 .flatMap(rateLimitKeyProvider -> rateLimitKeyProvider.getRateLimitKey(proceedingJoinPoint))
                 .filter(Objects::nonNull);
     }
+
+    /**
+     * Resolves the provider instances of the classes, in the same order.
+     *
+     * @throws IllegalStateException if there is no provider bean of a class
+     */
+    public RateLimitKeyProvider[] getRateLimitKeyProviders(Class<? extends RateLimitKeyProvider>[] classes) {
+        RateLimitKeyProvider[] providers = new RateLimitKeyProvider[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            providers[i] = keyProviderMap.get(classes[i]);
+            if (providers[i] == null) {
+                throw new IllegalStateException("Rate limit key provider not found: " + classes[i].getName());
+            }
+        }
+        return providers;
+    }
 }
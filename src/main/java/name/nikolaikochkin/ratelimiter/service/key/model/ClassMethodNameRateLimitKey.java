@@ -1,4 +1,55 @@
 package name.nikolaikochkin.ratelimiter.service.key.model;
 
-public record ClassMethodNameRateLimitKey(String className, String methodName) implements RateLimitKey {
+import java.util.Objects;
+
+/**
+ * The key of a limit shared by all calls of a method, made of the names of its class and the method.
+ *
+ * <p>Instances are immutable and carry their precomputed {@link #hash64()}, so a provider can create one
+ * per method and return it on every call.</p>
+ */
+public final class ClassMethodNameRateLimitKey implements RateLimitKey {
+    private final String className;
+    private final String methodName;
+    private final long hash64;
+
+    public ClassMethodNameRateLimitKey(String className, String methodName) {
+        this.className = Objects.requireNonNull(className);
+        this.methodName = Objects.requireNonNull(methodName);
+        this.hash64 = KeyHashing.hash(className, methodName);
+    }
+
+    public String className() {
+        return className;
+    }
+
+    public String methodName() {
+        return methodName;
+    }
+
+    @Override
+    public long hash64() {
+        return hash64;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof ClassMethodNameRateLimitKey that
+                && hash64 == that.hash64
+                && className.equals(that.className)
+                && methodName.equals(that.methodName);
+    }
+
+    @Override
+    public int hashCode() {
+        return KeyHashing.fold(hash64);
+    }
+
+    @Override
+    public String toString() {
+        return "ClassMethodNameRateLimitKey[className=" + className + ", methodName=" + methodName + "]";
+    }
 }
@@ -0,0 +1,62 @@
+package name.nikolaikochkin.ratelimiter.service.key.model;
+
+/**
+ * The {@code KeyHashing} class provides the 64-bit hashing primitives of {@link RateLimitKey#hash64()}.
+ */
+public final class KeyHashing {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    private KeyHashing() {
+    }
+
+    /**
+     * Spreads the bits of the value, the finalizer of MurmurHash3. The function is a bijection
+     * and maps only zero to zero.
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Hashes a pair of values, such as the halves of a 128-bit number.
+     * For {@code high == 0} distinct values of {@code low} never collide.
+     */
+    public static long hash(long high, long low) {
+        return nonZero(mix(high * GOLDEN_RATIO ^ low));
+    }
+
+    /**
+     * Hashes the strings char by char with 64-bit FNV-1a, without allocation.
+     */
+    public static long hash(String... values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String value : values) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+            hash = (hash ^ value.length()) * FNV_PRIME;
+        }
+        return nonZero(mix(hash));
+    }
+
+    /**
+     * Replaces zero, so that the hash can mark an empty slot.
+     */
+    public static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Folds the 64-bit hash to an {@code int} suitable for {@link Object#hashCode()}.
+     */
+    public static int fold(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -1,4 +1,13 @@
 package name.nikolaikochkin.ratelimiter.service.key.model;
 
 public interface RateLimitKey {
+    /**
+     * Returns the 64-bit hash of the key, which is never zero.
+     * Stores use it instead of {@link Object#hashCode()} to identify keys without retaining them,
+     * so the hash must be well distributed. The built-in keys compute it once, on construction.
+     * The default implementation hashes the class name and {@link Object#hashCode()}.
+     */
+    default long hash64() {
+        return KeyHashing.hash(getClass().getName().hashCode(), hashCode());
+    }
 }
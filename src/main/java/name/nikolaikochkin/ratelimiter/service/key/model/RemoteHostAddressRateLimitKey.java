@@ -1,4 +1,152 @@
 package name.nikolaikochkin.ratelimiter.service.key.model;
 
-public record RemoteHostAddressRateLimitKey(String hostAddress) implements RateLimitKey {
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * The key of a limit per client, made of the IP address of the remote host.
+ *
+ * <p>The address is stored as a 128-bit number in two {@code long}s. IPv4 addresses are stored in
+ * the IPv4-mapped IPv6 form {@code ::ffff:a.b.c.d}, so both notations of the same address give equal keys.
+ * The {@link #hash64()} is computed on construction, and no strings are created unless
+ * {@link #hostAddress()} or {@link #toString()} is called. IPv6 scope ids are not part of the key.</p>
+ */
+public final class RemoteHostAddressRateLimitKey implements RateLimitKey {
+    private static final long IPV4_MAPPED_PREFIX = 0xffffL << 32;
+
+    private final long high;
+    private final long low;
+    private final long hash64;
+
+    private RemoteHostAddressRateLimitKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+        this.hash64 = KeyHashing.hash(high, low);
+    }
+
+    /**
+     * Constructs a new key from the literal of an IPv4 or IPv6 address.
+     *
+     * @param hostAddress the address literal, such as {@code 10.0.0.1} or {@code ::1}
+     * @throws IllegalArgumentException if the value is not an IP address literal
+     */
+    public RemoteHostAddressRateLimitKey(String hostAddress) {
+        this(parse(hostAddress));
+    }
+
+    private RemoteHostAddressRateLimitKey(long[] address) {
+        this(address[0], address[1]);
+    }
+
+    /**
+     * Returns the key of the address.
+     */
+    public static RemoteHostAddressRateLimitKey of(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return new RemoteHostAddressRateLimitKey(0, IPV4_MAPPED_PREFIX | (toLong(bytes, 0, 4) & 0xffffffffL));
+        }
+        return new RemoteHostAddressRateLimitKey(toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+    }
+
+    /**
+     * Returns the literal of the address, in the notation of {@link InetAddress#getHostAddress()}.
+     */
+    public String hostAddress() {
+        if (isIpv4()) {
+            return (low >>> 24 & 0xff) + "." + (low >>> 16 & 0xff) + "." + (low >>> 8 & 0xff) + "." + (low & 0xff);
+        }
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long hash64() {
+        return hash64;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof RemoteHostAddressRateLimitKey that && high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return KeyHashing.fold(hash64);
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteHostAddressRateLimitKey[hostAddress=" + hostAddress() + "]";
+    }
+
+    private boolean isIpv4() {
+        return high == 0 && (low & 0xffffffff00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    private static long[] parse(String hostAddress) {
+        long ipv4 = parseIpv4(hostAddress);
+        if (ipv4 >= 0) {
+            return new long[]{0, IPV4_MAPPED_PREFIX | ipv4};
+        }
+        if (hostAddress.indexOf(':') < 0) {
+            throw new IllegalArgumentException("Not an IP address literal: " + hostAddress);
+        }
+        try {
+            // a literal with a colon is parsed as an IPv6 address, without name resolution
+            RemoteHostAddressRateLimitKey key = of(InetAddress.getByName(hostAddress));
+            return new long[]{key.high, key.low};
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not an IP address literal: " + hostAddress, e);
+        }
+    }
+
+    /**
+     * Parses a dotted decimal IPv4 literal.
+     *
+     * @return the address as an unsigned 32-bit value, or {@code -1} if the value is not an IPv4 literal
+     */
+    private static long parseIpv4(String hostAddress) {
+        long address = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i <= hostAddress.length(); i++) {
+            char c = i < hostAddress.length() ? hostAddress.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    return -1;
+                }
+                address = address << 8 | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + c - '0';
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = value << 8 | (bytes[i] & 0xff);
+        }
+        return value;
+    }
 }
@@ -4,17 +4,48 @@ import lombok.extern.slf4j.Slf4j;
 import name.nikolaikochkin.ratelimiter.service.key.model.ClassMethodNameRateLimitKey;
 import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The provider of {@link ClassMethodNameRateLimitKey} keys. The key of a method never changes,
+ * so it is created once per method and shared by all calls.
+ */
 @Slf4j
 @Service
-public class ClassMethodNameKeyProvider implements RateLimitKeyProvider {
+public class ClassMethodNameKeyProvider implements SynchronousRateLimitKeyProvider {
+    private final ConcurrentMap<Method, ClassMethodNameRateLimitKey> keys = new ConcurrentHashMap<>();
+
     @Override
     public Mono<RateLimitKey> getRateLimitKey(ProceedingJoinPoint joinPoint) {
-        String className = joinPoint.getSignature().getDeclaringTypeName();
-        String methodName = joinPoint.getSignature().getName();
+        return Mono.fromCallable(() -> keyOf(joinPoint.getSignature()));
+    }
+
+    @Override
+    public RateLimitKey resolveRateLimitKey(ProceedingJoinPoint joinPoint, ContextView contextView) {
+        return keyOf(joinPoint.getSignature());
+    }
+
+    private ClassMethodNameRateLimitKey keyOf(Signature signature) {
+        if (!(signature instanceof MethodSignature methodSignature)) {
+            return newKey(signature);
+        }
+        Method method = methodSignature.getMethod();
+        ClassMethodNameRateLimitKey key = keys.get(method);
+        return key != null ? key : keys.computeIfAbsent(method, m -> newKey(signature));
+    }
+
+    private static ClassMethodNameRateLimitKey newKey(Signature signature) {
+        String className = signature.getDeclaringTypeName();
+        String methodName = signature.getName();
         log.debug("Providing key for class {} and method {}", className, methodName);
-        return Mono.fromCallable(() -> new ClassMethodNameRateLimitKey(className, methodName));
+        return new ClassMethodNameRateLimitKey(className, methodName);
     }
 }
@@ -8,14 +8,14 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
 
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Optional;
 
 @Slf4j
 @Service
-public class RemoteHostAddressKeyProvider implements RateLimitKeyProvider {
+public class RemoteHostAddressKeyProvider implements SynchronousRateLimitKeyProvider {
 
     @Override
     public Mono<RateLimitKey> getRateLimitKey(ProceedingJoinPoint joinPoint) {
@@ -26,12 +26,25 @@ public class RemoteHostAddressKeyProvider implements RateLimitKeyProvider {
                 .flatMap(this::rateLimitKeyFromHttpRequest);
     }
 
+    @Override
+    public RateLimitKey resolveRateLimitKey(ProceedingJoinPoint joinPoint, ContextView contextView) {
+        ServerHttpRequest request = contextView.getOrDefault(ServerHttpRequest.class, null);
+        return request == null ? null : resolveRateLimitKey(request);
+    }
+
+    public RemoteHostAddressRateLimitKey resolveRateLimitKey(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            throw new RateLimitKeyException("Remote host address not found");
+        }
+        return RemoteHostAddressRateLimitKey.of(remoteAddress.getAddress());
+    }
+
     public Mono<RemoteHostAddressRateLimitKey> rateLimitKeyFromHttpRequest(ServerHttpRequest request) {
         return Optional.ofNullable(request)
                 .map(ServerHttpRequest::getRemoteAddress)
                 .map(InetSocketAddress::getAddress)
-                .map(InetAddress::getHostAddress)
-                .map(RemoteHostAddressRateLimitKey::new)
+                .map(RemoteHostAddressRateLimitKey::of)
                 .map(Mono::just)
                 .orElseGet(() -> Mono.error(new RateLimitKeyException("Remote host address not found")));
     }
@@ -0,0 +1,22 @@
+package name.nikolaikochkin.ratelimiter.service.key.provider;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import org.aspectj.lang.ProceedingJoinPoint;
+import reactor.util.context.ContextView;
+
+/**
+ * The {@code SynchronousRateLimitKeyProvider} interface is a {@link RateLimitKeyProvider} which also
+ * resolves the key without subscribing to {@link #getRateLimitKey(ProceedingJoinPoint)}, such as a key
+ * derived from the method or from the request in the subscriber context.
+ *
+ * <p>A method whose providers are all synchronous is compiled by the aspect into a plan which resolves
+ * its keys in place, with no reactive chain.</p>
+ */
+public interface SynchronousRateLimitKeyProvider extends RateLimitKeyProvider {
+    /**
+     * Resolves the key synchronously from the join point and the subscriber context.
+     *
+     * @return the key, or {@code null} if the provider has no key for the call
+     */
+    RateLimitKey resolveRateLimitKey(ProceedingJoinPoint joinPoint, ContextView contextView);
+}
@@ -0,0 +1,136 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The {@code AdmissionSketch} class is a count-min sketch of the permits recently consumed by the keys
+ * which have no bucket yet.
+ *
+ * <p>The sketch is {@value #DEPTH} rows of counters, a key is hashed to one counter per row by its precomputed
+ * {@link name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey#hash64() hash64()}, and the estimate of
+ * a key is the minimum of its counters. Other keys sharing a counter only inflate the estimate, so it never
+ * falls below the permits actually added for the key. The counters are updated atomically, so concurrent
+ * additions are never lost.</p>
+ *
+ * <p>The counters are halved by {@link #decay()}, which turns the counts into approximate recent rates:
+ * a key which stays quiet is forgotten after a few decays. The permits of a rejected request are taken back
+ * by {@link #remove(long, int)}.</p>
+ *
+ * <p>The memory of the sketch is {@code 16 * width} bytes whatever the number of distinct keys. The estimate
+ * of a key is inflated by about {@code e / width} of all the permits added between two decays, so the width
+ * should be well above the number of cold requests per decay interval divided by the admission threshold.</p>
+ */
+final class AdmissionSketch {
+    private static final int DEPTH = 4;
+
+    private final AtomicIntegerArray counters;
+    private final int width;
+    private final int widthMask;
+
+    /**
+     * Constructs a new {@code AdmissionSketch}.
+     *
+     * @param width the number of counters per row, rounded up to a power of two
+     * @throws IllegalArgumentException if width is not positive or too large
+     */
+    AdmissionSketch(int width) {
+        if (width <= 0 || width > 1 << 28) {
+            throw new IllegalArgumentException("Admission width value should be positive and not above 2^28");
+        }
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.widthMask = this.width - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * this.width);
+    }
+
+    /**
+     * Adds the permits of the key and returns its new estimate, which includes these permits.
+     *
+     * @param hash    the hash of the key
+     * @param permits the permits consumed by the key, not negative
+     * @return the estimated permits of the key since the counters were last decayed
+     */
+    int add(long hash, int permits) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, saturatedAdd(index(hash, row), permits));
+        }
+        return estimate;
+    }
+
+    /**
+     * Takes back the permits of the key added by a request which has been rejected afterwards.
+     * A counter never goes below zero, even if it has been decayed since the permits were added.
+     *
+     * @param hash    the hash of the key
+     * @param permits the permits added for the key, not negative
+     */
+    void remove(long hash, int permits) {
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int count;
+            do {
+                count = counters.get(index);
+            } while (count != 0 && !counters.compareAndSet(index, count, Math.max(0, count - permits)));
+        }
+    }
+
+    /**
+     * Returns the estimated permits of the key since the counters were last decayed.
+     *
+     * @param hash the hash of the key
+     */
+    int estimate(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            int count = counters.get(i);
+            while (count != 0 && !counters.compareAndSet(i, count, count >>> 1)) {
+                count = counters.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of counters per row.
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Derives the counter of every row from the two halves of the hash, the high half made odd
+     * so that the rows never collapse onto the same counter.
+     */
+    private int index(long hash, int row) {
+        int low = (int) hash;
+        int high = (int) (hash >>> 32) | 1;
+        return row * width + ((low + row * high) & widthMask);
+    }
+
+    private int saturatedAdd(int index, int permits) {
+        while (true) {
+            int count = counters.get(index);
+            int updated = (int) Math.min((long) count + permits, Integer.MAX_VALUE);
+            if (counters.compareAndSet(index, count, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionSketch{" +
+                "depth=" + DEPTH +
+                ", width=" + width +
+                '}';
+    }
+}
@@ -0,0 +1,236 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@code BucketSnapshot} class is a memory-mapped snapshot of the available permits of the buckets
+ * of one {@link InMemoryRateLimitService}, written periodically and read back after a restart.
+ *
+ * <p>The file is an open addressing table with linear probing, like the slabs of {@link SlabRateLimitService}:
+ * a header of {@value #HEADER_BYTES} bytes is followed by slots of two {@code long}s, the
+ * {@link RateLimitKey#hash64()} of a key and its available permits. Only buckets which are not full are written,
+ * a key without a slot is restored as a full bucket.</p>
+ *
+ * <p>Opening a snapshot only maps the file, so the startup time does not depend on the number of keys. A bucket
+ * is looked up when its key is accessed for the first time, and the permits replenished while the node was down
+ * are added to it. Once the whole capacity has been replenished since the snapshot was written, every bucket
+ * would be full, and the snapshot is no longer needed.</p>
+ *
+ * <p>A new snapshot is written to a temporary file which then atomically replaces the previous one,
+ * so a crash in the middle of a write never corrupts the last complete snapshot.</p>
+ */
+@Slf4j
+final class BucketSnapshot {
+    static final int HEADER_BYTES = 24;
+    private static final int MAGIC = 0x524C534E; // "RLSN"
+    private static final int VERSION = 1;
+    private static final int SLOT_BYTES = 16;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SLOTS = 1 << 26;
+
+    private final ByteBuffer buffer;
+    private final long writtenAtMillis;
+    private final int mask;
+    private final int count;
+
+    private BucketSnapshot(ByteBuffer buffer, long writtenAtMillis, int slots, int count) {
+        this.buffer = buffer;
+        this.writtenAtMillis = writtenAtMillis;
+        this.mask = slots - 1;
+        this.count = count;
+    }
+
+    /**
+     * Maps the snapshot file.
+     *
+     * @param path the snapshot file
+     * @return the snapshot, or {@code null} if the file does not exist or is not a valid snapshot
+     * @throws IOException if the file cannot be read
+     */
+    static BucketSnapshot open(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                log.warn("Ignoring truncated bucket snapshot: {}", path);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int slots = buffer.getInt(8 + 8);
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION
+                    || slots < MIN_SLOTS || slots > MAX_SLOTS || Integer.bitCount(slots) != 1
+                    || size != HEADER_BYTES + (long) slots * SLOT_BYTES) {
+                log.warn("Ignoring invalid bucket snapshot: {}", path);
+                return null;
+            }
+            return new BucketSnapshot(buffer, buffer.getLong(8), slots, buffer.getInt(8 + 8 + 4));
+        }
+    }
+
+    /**
+     * Returns the permits of the key available now, including the permits replenished since the snapshot.
+     *
+     * @param fingerprint the {@link RateLimitKey#hash64()} of the key
+     * @param bandwidth   the current bandwidth of the key
+     * @param nowMillis   the current wall clock time
+     * @return the available permits, up to the capacity of the bandwidth, or {@code -1} if the key has no slot
+     */
+    long availablePermits(long fingerprint, Bandwidth bandwidth, long nowMillis) {
+        for (int index = (int) fingerprint & mask; ; index = (index + 1) & mask) {
+            int offset = HEADER_BYTES + index * SLOT_BYTES;
+            long slotFingerprint = buffer.getLong(offset);
+            if (slotFingerprint == 0) {
+                return -1;
+            }
+            if (slotFingerprint == fingerprint) {
+                return replenished(buffer.getLong(offset + 8), bandwidth, nowMillis);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the whole capacity of the bandwidth has been replenished since the snapshot was written,
+     * so that every bucket of the snapshot is full.
+     */
+    boolean isExhausted(Bandwidth bandwidth, long nowMillis) {
+        return elapsedNanos(nowMillis) >= bandwidth.windowNanos();
+    }
+
+    /**
+     * Returns the number of buckets in the snapshot.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Copies the buckets of the snapshot which are still not full into the writer,
+     * unless the writer already holds a newer state of the key.
+     */
+    void copyTo(Writer writer, Bandwidth bandwidth, long nowMillis) {
+        for (int index = 0; index <= mask; index++) {
+            int offset = HEADER_BYTES + index * SLOT_BYTES;
+            long fingerprint = buffer.getLong(offset);
+            if (fingerprint != 0) {
+                long availablePermits = replenished(buffer.getLong(offset + 8), bandwidth, nowMillis);
+                if (availablePermits < bandwidth.capacity()) {
+                    writer.putIfAbsent(fingerprint, availablePermits);
+                }
+            }
+        }
+    }
+
+    private long replenished(long availablePermits, Bandwidth bandwidth, long nowMillis) {
+        long permits = elapsedNanos(nowMillis) / bandwidth.nanosPerPermit();
+        return permits >= bandwidth.capacity() - availablePermits
+                ? bandwidth.capacity()
+                : Math.max(0, availablePermits + permits);
+    }
+
+    private long elapsedNanos(long nowMillis) {
+        long elapsedMillis = Math.max(0, nowMillis - writtenAtMillis);
+        return elapsedMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : elapsedMillis * 1_000_000;
+    }
+
+    /**
+     * The writer of a new snapshot into a memory-mapped temporary file.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path path;
+        private final Path temporaryPath;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int mask;
+        private final int maxCount;
+        private int count;
+
+        /**
+         * Creates the temporary file of a snapshot sized for the expected number of buckets.
+         * Buckets above the expected number are skipped.
+         *
+         * @param path          the snapshot file replaced by {@link #commit(long)}
+         * @param expectedCount the expected number of buckets
+         * @throws IOException if the temporary file cannot be created
+         */
+        Writer(Path path, long expectedCount) throws IOException {
+            int slots = MIN_SLOTS;
+            while (slots < MAX_SLOTS && slots < expectedCount * 2) {
+                slots <<= 1;
+            }
+            this.path = path;
+            this.temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * SLOT_BYTES);
+            this.mask = slots - 1;
+            this.maxCount = slots / 2;
+        }
+
+        /**
+         * Puts the available permits of the key, unless the key is already written.
+         *
+         * @return {@code false} if the snapshot is full and the bucket has been skipped
+         */
+        boolean putIfAbsent(long fingerprint, long availablePermits) {
+            if (count >= maxCount) {
+                return false;
+            }
+            for (int index = (int) fingerprint & mask; ; index = (index + 1) & mask) {
+                int offset = HEADER_BYTES + index * SLOT_BYTES;
+                long slotFingerprint = buffer.getLong(offset);
+                if (slotFingerprint == fingerprint) {
+                    return true;
+                }
+                if (slotFingerprint == 0) {
+                    buffer.putLong(offset, fingerprint);
+                    buffer.putLong(offset + 8, availablePermits);
+                    count++;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Writes the header, flushes the file and atomically replaces the previous snapshot.
+         *
+         * @param writtenAtMillis the wall clock time of the state of the buckets
+         * @return the number of buckets written
+         * @throws IOException if the snapshot cannot be written
+         */
+        int commit(long writtenAtMillis) throws IOException {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, writtenAtMillis);
+            buffer.putInt(8 + 8, mask + 1);
+            buffer.putInt(8 + 8 + 4, count);
+            buffer.force();
+            channel.close();
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        }
+
+        /**
+         * Closes the temporary file and deletes it, unless the snapshot has been committed.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+}
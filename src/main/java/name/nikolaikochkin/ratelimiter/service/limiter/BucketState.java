@@ -0,0 +1,12 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+/**
+ * The {@code BucketState} record is a snapshot of the bucket of a key, as returned by
+ * {@link InspectableRateLimitService#inspect(name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey)}.
+ *
+ * @param availablePermits  the number of permits which can be consumed right now
+ * @param capacity          the maximum number of permits of the bucket
+ * @param nanosToNextPermit the number of nanoseconds until one more permit is replenished, {@code 0} if the bucket is full
+ */
+public record BucketState(long availablePermits, long capacity, long nanosToNextPermit) {
+}
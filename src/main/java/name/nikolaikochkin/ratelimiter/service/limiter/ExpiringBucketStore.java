@@ -0,0 +1,443 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The {@code ExpiringBucketStore} class is a bounded store of {@link RateLimiter} instances.
+ *
+ * <p>Buckets which have been refilled to their full capacity and have not been accessed for longer than
+ * the configured idle time are removed. There is no background sweep over the whole map: the expiry is
+ * amortized over accesses. Every insertion and a small random fraction of lookups advance a shared cursor
+ * over the map by a few entries and remove the expired ones. The idle time and the access times of the least
+ * recently used eviction are read from the clock of the factory, the same clock as the decisions.</p>
+ *
+ * <p>The number of buckets is capped. When the cap is reached, an insertion evicts the least recently
+ * accessed bucket out of a small sample of entries, so the store never fails to admit a new key.</p>
+ *
+ * <p>A bucket is retired by a compare-and-set of its access time, so a request that touches a bucket
+ * concurrently with its expiry either keeps the bucket alive or moves on to a freshly created one.
+ * A bucket may still be retired while a request is consuming from its limiter, so the decisions go through
+ * {@link #apply(RateLimitKey, RateLimiterFactory, long, BucketOperation, int, long)}, which checks the bucket
+ * again after the operation and repeats the operation on the live bucket of the key if it has been retired.</p>
+ *
+ * <p>Every bucket remembers the {@link RateLimiterFactory} which created it. When a bucket is accessed
+ * with another factory, it is retired and replaced by a limiter of the new factory which keeps the permits
+ * available in the old one, up to the new capacity. The migration is lazy: a bucket which is never accessed
+ * again expires as usual without ever being rebuilt.</p>
+ *
+ * <p>The store may restore new buckets from a {@link BucketSnapshot}: a key which is accessed for the first time
+ * gets the permits it had in the snapshot, plus the ones replenished since. The time since the snapshot is
+ * the wall clock time up to the restore, then the time of the clock of the limiters, so the restored permits
+ * follow the same clock as the decisions. Once the whole capacity has been replenished since the snapshot,
+ * it is dropped by the next bucket creation.</p>
+ */
+final class ExpiringBucketStore {
+    private static final long RETIRED = Long.MIN_VALUE;
+    private static final long TOUCH_RESOLUTION_NANOS = Duration.ofMillis(1).toNanos();
+    private static final int SWEEP_BATCH = 4;
+    private static final int SWEEP_ON_ACCESS_MASK = 0x3F;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final ConcurrentMap<RateLimitKey, Bucket> buckets = new ConcurrentHashMap<>();
+    private final long expireAfterIdleNanos;
+    private final int maxBuckets;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final LongAdder evictions = new LongAdder();
+    private Iterator<Map.Entry<RateLimitKey, Bucket>> sweepCursor; // guarded by sweepLock
+    private final AtomicReference<Restoration> restoration = new AtomicReference<>();
+
+    /**
+     * Constructs a new {@code ExpiringBucketStore}.
+     *
+     * @param expireAfterIdle the time after which a full bucket without accesses is removed
+     * @param maxBuckets      the maximum number of buckets held by the store
+     * @throws IllegalArgumentException if expireAfterIdle is shorter than the access time resolution
+     *                                  or maxBuckets is not positive
+     */
+    ExpiringBucketStore(Duration expireAfterIdle, int maxBuckets) {
+        if (expireAfterIdle == null || expireAfterIdle.toNanos() <= TOUCH_RESOLUTION_NANOS) {
+            throw new IllegalArgumentException("Expire after idle value should be longer than 1ms");
+        }
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("Max buckets value should be positive");
+        }
+        this.expireAfterIdleNanos = expireAfterIdle.toNanos();
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * Returns the {@link RateLimiter} associated with the key, creating it if necessary. The limiter may be retired
+     * right after it is returned, so the decisions should rather be made by
+     * {@link #apply(RateLimitKey, RateLimiterFactory, long, BucketOperation, int, long)}.
+     *
+     * @param rateLimitKey the key of the bucket
+     * @param factory      the factory of new {@link RateLimiter} instances
+     * @return the live {@link RateLimiter} of the key
+     */
+    RateLimiter getOrCreate(RateLimitKey rateLimitKey, RateLimiterFactory factory) {
+        return lookup(rateLimitKey, factory, 0).rateLimiter;
+    }
+
+    /**
+     * Applies the operation to the live {@link RateLimiter} of the key, creating it if necessary with the specified
+     * permits already consumed.
+     *
+     * <p>If the bucket is retired while the operation runs, by an expiry, an eviction or a migration to another
+     * factory, the outcome may be lost with the detached limiter, so the operation is applied again to the live
+     * bucket of the key. A migration may have carried the outcome over already, then the permits are counted twice:
+     * the retry errs on the side of rejecting, never of admitting above the limit. An operation which gives permits
+     * back, such as a refund, must not be applied this way, as counting it twice would admit above the limit.</p>
+     *
+     * @param rateLimitKey    the key of the bucket
+     * @param factory         the factory of new {@link RateLimiter} instances
+     * @param consumedPermits the permits consumed from a new bucket, such as the ones admitted before it existed
+     * @param operation       the operation, consuming from the limiter
+     * @param permits         the permits of the operation
+     * @param argument        the other argument of the operation
+     * @return the result of the operation applied to a bucket which has stayed live
+     */
+    long apply(RateLimitKey rateLimitKey, RateLimiterFactory factory, long consumedPermits,
+               BucketOperation operation, int permits, long argument) {
+        while (true) {
+            Bucket bucket = lookup(rateLimitKey, factory, consumedPermits);
+            long result = operation.apply(bucket.rateLimiter, permits, argument);
+            if (!bucket.isRetired()) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the key has a live bucket, or a bucket to be restored from the snapshot.
+     *
+     * @param rateLimitKey the key of the bucket
+     * @param factory      the factory of new {@link RateLimiter} instances
+     */
+    boolean hasBucket(RateLimitKey rateLimitKey, RateLimiterFactory factory) {
+        Bucket bucket = buckets.get(rateLimitKey);
+        return bucket != null && !bucket.isRetired() || restoredPermits(rateLimitKey, factory) >= 0;
+    }
+
+    /**
+     * Returns the live bucket of the key, creating it if necessary.
+     */
+    private Bucket lookup(RateLimitKey rateLimitKey, RateLimiterFactory factory, long consumedPermits) {
+        while (true) {
+            long now = factory.clock().nanoTime();
+            Bucket bucket = buckets.get(rateLimitKey);
+            if (bucket == null) {
+                if (buckets.size() >= maxBuckets) {
+                    evict();
+                }
+                bucket = buckets.computeIfAbsent(storedKey(rateLimitKey),
+                        key -> new Bucket(factory, createRateLimiter(key, factory, consumedPermits), now));
+                sweep(now);
+                dropIfExhausted(factory);
+            } else if ((ThreadLocalRandom.current().nextInt() & SWEEP_ON_ACCESS_MASK) == 0) {
+                sweep(now);
+            }
+            if (!bucket.touch(now)) {
+                buckets.remove(rateLimitKey, bucket);
+            } else if (bucket.factory == factory) {
+                return bucket;
+            } else {
+                migrate(rateLimitKey, bucket, factory, now);
+            }
+        }
+    }
+
+    /**
+     * Returns the key to store with a new bucket, a copy of a reusable lookup key.
+     */
+    private static RateLimitKey storedKey(RateLimitKey rateLimitKey) {
+        return rateLimitKey instanceof ReusableRateLimitKey reusable ? reusable.copy() : rateLimitKey;
+    }
+
+    /**
+     * Returns the {@link RateLimiter} associated with the key as the factory would see it, without creating,
+     * touching or migrating the bucket. A bucket of another factory is carried over to a detached limiter,
+     * a key which has not been restored from the snapshot yet gets a detached restored limiter.
+     *
+     * @param rateLimitKey the key of the bucket
+     * @param factory      the current factory of {@link RateLimiter} instances
+     * @return the {@link RateLimiter} of the key, or {@code null} if the key has no live bucket and is not in the snapshot
+     */
+    RateLimiter peek(RateLimitKey rateLimitKey, RateLimiterFactory factory) {
+        Bucket bucket = buckets.get(rateLimitKey);
+        if (bucket == null || bucket.lastAccessNanotime == RETIRED) {
+            long restoredPermits = restoredPermits(rateLimitKey, factory);
+            return restoredPermits < 0 ? null : factory.createRateLimiter(restoredPermits);
+        }
+        return bucket.factory == factory ? bucket.rateLimiter : carryOver(bucket.rateLimiter, factory);
+    }
+
+    /**
+     * Restores the buckets of the keys accessed for the first time from the snapshot,
+     * until the snapshot is exhausted.
+     *
+     * @param snapshot the snapshot of the buckets, or {@code null} to create all buckets full
+     * @param clock    the clock of the limiters, which measures the time elapsed since the restore
+     */
+    void restoreFrom(BucketSnapshot snapshot, NanoClock clock) {
+        restoration.set(snapshot == null ? null : new Restoration(snapshot, clock, System.currentTimeMillis(), clock.nanoTime()));
+    }
+
+    /**
+     * Performs the action for every live bucket of the store.
+     *
+     * @param action the action receiving the key and the {@link RateLimiter} of every bucket
+     */
+    void forEach(BiConsumer<RateLimitKey, RateLimiter> action) {
+        buckets.forEach((key, bucket) -> {
+            if (bucket.lastAccessNanotime != RETIRED) {
+                action.accept(key, bucket.rateLimiter);
+            }
+        });
+    }
+
+    /**
+     * Returns the permits of the key restored from the snapshot, or {@code -1} if the snapshot does not hold the key.
+     */
+    private long restoredPermits(RateLimitKey rateLimitKey, RateLimiterFactory factory) {
+        Restoration restored = restoration.get();
+        return restored == null
+                ? -1
+                : restored.snapshot.availablePermits(rateLimitKey.hash64(), factory.bandwidth(), restored.nowMillis());
+    }
+
+    /**
+     * Creates the limiter of a new bucket with the permits already consumed, restored from the snapshot if it has the key.
+     */
+    private RateLimiter createRateLimiter(RateLimitKey rateLimitKey, RateLimiterFactory factory, long consumedPermits) {
+        long restoredPermits = restoredPermits(rateLimitKey, factory);
+        if (restoredPermits < 0 && consumedPermits <= 0) {
+            return factory.createRateLimiter();
+        }
+        long availablePermits = restoredPermits < 0 ? factory.bandwidth().capacity() : restoredPermits;
+        return factory.createRateLimiter(Math.max(0, availablePermits - Math.max(0, consumedPermits)));
+    }
+
+    /**
+     * Drops the snapshot once the whole capacity has been replenished since it was written, unless another
+     * snapshot has been restored meanwhile.
+     */
+    private void dropIfExhausted(RateLimiterFactory factory) {
+        Restoration restored = restoration.get();
+        if (restored != null && restored.snapshot.isExhausted(factory.bandwidth(), restored.nowMillis())) {
+            restoration.compareAndSet(restored, null);
+        }
+    }
+
+    /**
+     * Replaces the bucket of another factory by a bucket of the factory carrying over its available permits.
+     * The bucket is retired and replaced under the lock of its map entry, so no other request can remove
+     * the retired bucket and create a full one in between. If the bucket is concurrently touched or retired,
+     * the caller simply retries.
+     */
+    private void migrate(RateLimitKey rateLimitKey, Bucket bucket, RateLimiterFactory factory, long now) {
+        long lastAccess = bucket.lastAccessNanotime;
+        buckets.computeIfPresent(rateLimitKey, (key, current) -> current == bucket && bucket.retire(lastAccess)
+                ? new Bucket(factory, carryOver(bucket.rateLimiter, factory), now)
+                : current);
+    }
+
+    /**
+     * Creates a limiter of the factory with the permits available in the old limiter, up to the new capacity.
+     */
+    private static RateLimiter carryOver(RateLimiter old, RateLimiterFactory factory) {
+        return factory.createRateLimiter(old.availablePermits());
+    }
+
+    /**
+     * Returns the current number of buckets.
+     */
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Returns the number of buckets removed so far, either expired or evicted over the cap.
+     */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Advances the sweep cursor by a few entries and removes the expired buckets.
+     * Skipped if another thread is already sweeping.
+     */
+    private void sweep(long now) {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < SWEEP_BATCH; i++) {
+                Map.Entry<RateLimitKey, Bucket> entry = nextEntry();
+                if (entry == null) {
+                    return;
+                }
+                Bucket bucket = entry.getValue();
+                if (bucket.retireIfExpired(now, expireAfterIdleNanos)) {
+                    evictions.increment();
+                    buckets.remove(entry.getKey(), bucket);
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the least recently accessed bucket out of a sample of entries.
+     */
+    private void evict() {
+        sweepLock.lock();
+        try {
+            while (buckets.size() >= maxBuckets) {
+                Map.Entry<RateLimitKey, Bucket> oldest = null;
+                long oldestAccess = Long.MAX_VALUE;
+                for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                    Map.Entry<RateLimitKey, Bucket> entry = nextEntry();
+                    if (entry == null) {
+                        break;
+                    }
+                    long lastAccess = entry.getValue().lastAccessNanotime;
+                    if (oldest == null || lastAccess - oldestAccess < 0) {
+                        oldest = entry;
+                        oldestAccess = lastAccess;
+                    }
+                }
+                if (oldest == null) {
+                    return;
+                }
+                Bucket bucket = oldest.getValue();
+                if (oldestAccess == RETIRED) {
+                    buckets.remove(oldest.getKey(), bucket);
+                } else if (bucket.retire(oldestAccess)) {
+                    evictions.increment();
+                    buckets.remove(oldest.getKey(), bucket);
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the next entry of the sweep cursor, restarting it at the end of the map.
+     */
+    private Map.Entry<RateLimitKey, Bucket> nextEntry() {
+        if (sweepCursor == null || !sweepCursor.hasNext()) {
+            sweepCursor = buckets.entrySet().iterator();
+            if (!sweepCursor.hasNext()) {
+                return null;
+            }
+        }
+        return sweepCursor.next();
+    }
+
+    /**
+     * An operation on the {@link RateLimiter} of a bucket, such as a consumption, whose result is encoded
+     * into a {@code long}, so that the implementations are stateless constants and a decision allocates nothing.
+     */
+    @FunctionalInterface
+    interface BucketOperation {
+        long apply(RateLimiter rateLimiter, int permits, long argument);
+    }
+
+    @Override
+    public String toString() {
+        return "ExpiringBucketStore{" +
+                "size=" + buckets.size() +
+                ", expireAfterIdleNanos=" + expireAfterIdleNanos +
+                ", maxBuckets=" + maxBuckets +
+                '}';
+    }
+
+    /**
+     * A restored snapshot with the wall clock time and the time of the clock of the limiters at the restore.
+     */
+    private record Restoration(BucketSnapshot snapshot, NanoClock clock, long restoredAtMillis, long restoredAtNanos) {
+        /**
+         * Returns the wall clock time of the snapshot timeline, advanced by the clock of the limiters since the restore.
+         */
+        private long nowMillis() {
+            return restoredAtMillis + Math.max(0, clock.nanoTime() - restoredAtNanos) / 1_000_000;
+        }
+    }
+
+    /**
+     * A {@link RateLimiter} with its factory and the time of its last access.
+     */
+    private static final class Bucket {
+        private static final VarHandle LAST_ACCESS_NANOTIME;
+
+        static {
+            try {
+                LAST_ACCESS_NANOTIME = MethodHandles.lookup()
+                        .findVarHandle(Bucket.class, "lastAccessNanotime", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final RateLimiterFactory factory;
+        private final RateLimiter rateLimiter;
+        private volatile long lastAccessNanotime;
+
+        private Bucket(RateLimiterFactory factory, RateLimiter rateLimiter, long now) {
+            this.factory = factory;
+            this.rateLimiter = rateLimiter;
+            this.lastAccessNanotime = now;
+        }
+
+        /**
+         * Records an access. Updates are skipped within the access time resolution
+         * to keep hot buckets from contending on the field.
+         *
+         * @return {@code false} if the bucket has been retired and must not be used
+         */
+        private boolean touch(long now) {
+            long lastAccess = lastAccessNanotime;
+            if (lastAccess == RETIRED) {
+                return false;
+            }
+            if (now - lastAccess < TOUCH_RESOLUTION_NANOS) {
+                return true;
+            }
+            return LAST_ACCESS_NANOTIME.compareAndSet(this, lastAccess, now) || lastAccessNanotime != RETIRED;
+        }
+
+        private boolean isRetired() {
+            return lastAccessNanotime == RETIRED;
+        }
+
+        private boolean retireIfExpired(long now, long expireAfterIdleNanos) {
+            long lastAccess = lastAccessNanotime;
+            return lastAccess != RETIRED
+                    && now - lastAccess > expireAfterIdleNanos
+                    && rateLimiter.isFull()
+                    && retire(lastAccess);
+        }
+
+        private boolean retire(long lastAccess) {
+            return lastAccess != RETIRED && LAST_ACCESS_NANOTIME.compareAndSet(this, lastAccess, RETIRED);
+        }
+    }
+}
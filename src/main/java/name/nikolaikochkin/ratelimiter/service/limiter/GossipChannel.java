@@ -0,0 +1,265 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code GossipChannel} class is the UDP transport of the {@link GossipRateLimitService} instances of a node,
+ * one per policy, all sharing a single socket.
+ *
+ * <p>Every round the channel first applies the consumption deltas received from the peers, then sends the deltas
+ * of the keys changed on this node since the previous round to every peer. A packet carries the deltas of one
+ * policy, tagged with the 64-bit hash of its name, {@value #MAX_ENTRIES} keys at most, and fits into
+ * {@value #MAX_PACKET_BYTES} bytes, below the usual MTU.
+ * The number of keys sent per round is capped, which bounds the bandwidth of the node to
+ * {@code maxKeysPerRound * 12 bytes * peers} per interval; the remaining keys wait for the next round.</p>
+ *
+ * <p>The socket is non-blocking and is only touched by the rounds, so there is no receiver thread. Lost packets
+ * are not resent: the permits they carried are simply not seen by the peer, which makes the limit approximate.</p>
+ *
+ * <p>The packets are not authenticated, so a packet is only accepted from the address and port of a configured
+ * peer, the others are counted as dropped. A peer must therefore be listed by the address it sends from.</p>
+ */
+@Slf4j
+final class GossipChannel implements AutoCloseable {
+    static final int MAX_PACKET_BYTES = 1400;
+    private static final int MAGIC = 0x524C4732; // "RLG2"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 2;
+    private static final int ENTRY_BYTES = 8 + 4;
+    static final int MAX_ENTRIES = (MAX_PACKET_BYTES - HEADER_BYTES) / ENTRY_BYTES;
+    private static final int RECEIVE_BUFFER_BYTES = 1 << 20;
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final DatagramChannel channel;
+    private final List<InetSocketAddress> peers;
+    private final Set<SocketAddress> peerAddresses;
+    private final int maxKeysPerRound;
+    private final Map<Long, Registration> services = new ConcurrentHashMap<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_PACKET_BYTES); // guarded by this
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_PACKET_BYTES); // guarded by this
+    private final LongAdder sentPackets = new LongAdder();
+    private final LongAdder receivedPackets = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+    private final Disposable rounds;
+    private int packetEntries; // guarded by this
+
+    /**
+     * Binds the socket and starts the periodic rounds.
+     *
+     * @param bindAddress     the local address of the socket
+     * @param peers           the addresses of the other nodes
+     * @param interval        the time between two rounds
+     * @param maxKeysPerRound the maximum number of keys sent per round
+     * @throws IllegalArgumentException if interval or maxKeysPerRound is not positive
+     * @throws UncheckedIOException     if the socket cannot be bound
+     */
+    GossipChannel(InetSocketAddress bindAddress, List<InetSocketAddress> peers, Duration interval, int maxKeysPerRound) {
+        Assert.isTrue(interval != null && interval.toNanos() > 0, "Gossip interval must be positive");
+        Assert.isTrue(maxKeysPerRound > 0, "Max keys per round value must be positive");
+        this.peers = List.copyOf(peers);
+        this.peerAddresses = Set.copyOf(this.peers);
+        this.maxKeysPerRound = maxKeysPerRound;
+        try {
+            this.channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+            channel.bind(bindAddress);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bind gossip channel: " + bindAddress, e);
+        }
+        long intervalNanos = interval.toNanos();
+        this.rounds = Schedulers.boundedElastic().schedulePeriodically(this::scheduledRound,
+                intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the service of a policy, whose deltas are sent and received under the tag.
+     *
+     * @param tag        the 64-bit hash of the policy name, the same on every node
+     * @param policyName the name of the policy
+     * @param service    the service of the policy
+     * @throws IllegalStateException if the tag is already taken by the same or another policy
+     */
+    void register(long tag, String policyName, GossipRateLimitService service) {
+        Registration registered = services.putIfAbsent(tag, new Registration(policyName, service));
+        Assert.state(registered == null, () -> registered.policyName().equals(policyName)
+                ? "Duplicate gossip policy: " + policyName
+                : "Gossip tag of policy " + policyName + " collides with policy " + registered.policyName());
+    }
+
+    /**
+     * Returns the local address of the socket.
+     */
+    InetSocketAddress localAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long sentPackets() {
+        return sentPackets.sum();
+    }
+
+    long receivedPackets() {
+        return receivedPackets.sum();
+    }
+
+    long droppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    /**
+     * Applies the received deltas and sends the pending ones.
+     *
+     * @throws UncheckedIOException if the socket fails
+     */
+    synchronized void round() {
+        try {
+            receive();
+            send();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the rounds and closes the socket.
+     */
+    @Override
+    public void close() {
+        rounds.dispose();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close gossip channel", e);
+        }
+    }
+
+    private void scheduledRound() {
+        try {
+            round();
+        } catch (RuntimeException e) {
+            log.warn("Gossip round failed", e);
+        }
+    }
+
+    private void receive() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress sender = channel.receive(receiveBuffer);
+            if (sender == null) {
+                return;
+            }
+            if (!peerAddresses.contains(sender)) {
+                droppedPackets.increment();
+                log.debug("Gossip packet dropped, unknown sender: {}", sender);
+                continue;
+            }
+            receiveBuffer.flip();
+            if (receiveBuffer.remaining() < HEADER_BYTES || receiveBuffer.getInt() != MAGIC) {
+                droppedPackets.increment();
+                continue;
+            }
+            long senderId = receiveBuffer.getLong();
+            Registration registration = services.get(receiveBuffer.getLong());
+            int entries = Math.min(receiveBuffer.getShort() & 0xFFFF, receiveBuffer.remaining() / ENTRY_BYTES);
+            if (senderId == nodeId || registration == null) {
+                droppedPackets.increment();
+                continue;
+            }
+            receivedPackets.increment();
+            for (int i = 0; i < entries; i++) {
+                registration.service().applyRemote(receiveBuffer.getLong(), receiveBuffer.getInt());
+            }
+        }
+    }
+
+    private void send() throws IOException {
+        int budget = maxKeysPerRound;
+        for (Map.Entry<Long, Registration> entry : services.entrySet()) {
+            if (budget == 0) {
+                return;
+            }
+            startPacket(entry.getKey());
+            budget -= entry.getValue().service().drainPending(budget, (fingerprint, delta) -> {
+                if (packetEntries == MAX_ENTRIES) {
+                    flushPacket();
+                    startPacket(entry.getKey());
+                }
+                sendBuffer.putLong(fingerprint).putInt(delta);
+                packetEntries++;
+            });
+            flushPacket();
+        }
+    }
+
+    private void startPacket(long tag) {
+        sendBuffer.clear();
+        sendBuffer.putInt(MAGIC).putLong(nodeId).putLong(tag).putShort((short) 0);
+        packetEntries = 0;
+    }
+
+    private void flushPacket() {
+        if (packetEntries == 0) {
+            return;
+        }
+        sendBuffer.putShort(HEADER_BYTES - 2, (short) packetEntries);
+        sendBuffer.flip();
+        for (InetSocketAddress peer : peers) {
+            try {
+                if (channel.send(sendBuffer.duplicate(), peer) == 0) {
+                    droppedPackets.increment();
+                } else {
+                    sentPackets.increment();
+                }
+            } catch (IOException e) {
+                droppedPackets.increment();
+                log.debug("Failed to send gossip packet to {}", peer, e);
+            }
+        }
+        packetEntries = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GossipChannel{" +
+                "localAddress=" + localAddress() +
+                ", peers=" + peers +
+                ", maxKeysPerRound=" + maxKeysPerRound +
+                '}';
+    }
+
+    /**
+     * The service of a policy registered under its tag.
+     */
+    private record Registration(String policyName, GossipRateLimitService service) {
+    }
+
+    /**
+     * The receiver of the pending deltas of a service.
+     */
+    @FunctionalInterface
+    interface DeltaSink {
+        void accept(long fingerprint, int delta);
+    }
+}
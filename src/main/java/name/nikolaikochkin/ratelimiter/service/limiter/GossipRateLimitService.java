@@ -0,0 +1,449 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.KeyHashing;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code GossipRateLimitService} class implements the {@link LocalRateLimitService} interface with approximately
+ * global limits shared by several nodes, without a central store.
+ *
+ * <p>Every node keeps a replica of the bucket of every key in an {@link InMemoryRateLimitService} and decides
+ * locally, with no remote call on the decision path. The permits consumed on the node are accumulated per key,
+ * and the deltas of the changed keys are periodically sent to the peers over UDP by the {@link GossipChannel}.
+ * A node receiving a delta consumes the permits from its own replica of the bucket, so every replica converges
+ * to the consumption of the whole cluster, and each node gets the share of the limit its traffic takes.</p>
+ *
+ * <p>The share of a node is not computed as {@code limit / nodes} or from an observed share of the traffic:
+ * a static split under-admits a key whose traffic is skewed to a few nodes, and an observed share lags behind
+ * every shift of the traffic, when a key moves to another node. With replicated buckets the share of a node
+ * always follows its current traffic, as it is the node which drains the shared replica. The price is the bound:
+ * within one gossip interval every node may admit the permits its replica still has, so a key may be admitted up
+ * to {@code nodes - 1} times the permits consumed per interval above its limit. Lost packets are not resent and
+ * slightly raise the bound.</p>
+ *
+ * <p>Keys are identified by their {@link RateLimitKey#hash64()} on the wire and in the replicas. A request looks
+ * its replica up with a reusable per-thread fingerprint, only a new replica stores a copy of it. The service is
+ * enabled with {@code application.ratelimit.store=gossip}. Named policies share the socket of the node, their
+ * deltas are tagged with the 64-bit hash of the policy name, and colliding tags fail at startup.</p>
+ *
+ * <p>The socket is bound to the loopback address unless {@code application.ratelimit.gossip.bind-address} is set,
+ * and only the packets of the configured peers are applied.</p>
+ *
+ * @see GossipChannel
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "application.ratelimit.store", havingValue = "gossip")
+public class GossipRateLimitService implements LocalRateLimitService, UpdatableRateLimitService,
+        InspectableRateLimitService, AutoCloseable {
+    private static final ThreadLocal<Fingerprint> PROBES = ThreadLocal.withInitial(() -> new Fingerprint(0));
+
+    private final InMemoryRateLimitService local;
+    private final GossipChannel channel;
+    private final boolean ownsChannel;
+    private final ConcurrentMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final Queue<Long> changedKeys = new ConcurrentLinkedQueue<>();
+    private final LongAdder sentPermits = new LongAdder();
+    private final LongAdder receivedPermits = new LongAdder();
+
+    /**
+     * Constructs a new {@code GossipRateLimitService} from the configuration.
+     *
+     * @param rateLimiterFactory the factory of the local replicas of the buckets
+     * @param expireAfterIdle    the time after which a full replica without requests is removed
+     * @param maxBuckets         the maximum number of replicas held by the node
+     * @param bindAddress        the local address of the UDP socket, the loopback one by default
+     * @param port               the UDP port of the node
+     * @param peers              the {@code host:port} addresses of the other nodes
+     * @param interval           the time between two gossip rounds
+     * @param maxKeysPerRound    the maximum number of keys sent per round
+     * @throws IllegalArgumentException if a peer address is invalid or a value is not positive
+     */
+    @Autowired
+    public GossipRateLimitService(RateLimiterFactory rateLimiterFactory,
+                                  @Value("${application.ratelimit.expire-after-idle:PT10M}") Duration expireAfterIdle,
+                                  @Value("${application.ratelimit.max-buckets:1000000}") int maxBuckets,
+                                  @Value("${application.ratelimit.gossip.bind-address:127.0.0.1}") String bindAddress,
+                                  @Value("${application.ratelimit.gossip.port:7946}") int port,
+                                  @Value("${application.ratelimit.gossip.peers:}") List<String> peers,
+                                  @Value("${application.ratelimit.gossip.interval:PT0.1S}") Duration interval,
+                                  @Value("${application.ratelimit.gossip.max-keys-per-round:4096}") int maxKeysPerRound) {
+        this(new InMemoryRateLimitService(rateLimiterFactory, expireAfterIdle, maxBuckets, 0),
+                new InetSocketAddress(bindAddress, port),
+                parsePeers(peers),
+                interval,
+                maxKeysPerRound);
+    }
+
+    /**
+     * Constructs a new {@code GossipRateLimitService} of the local replicas.
+     *
+     * @param local           the service holding the local replicas of the buckets
+     * @param bindAddress     the local address of the UDP socket, port {@code 0} for an ephemeral one
+     * @param peers           the addresses of the other nodes
+     * @param interval        the time between two gossip rounds
+     * @param maxKeysPerRound the maximum number of keys sent per round
+     * @throws IllegalArgumentException if interval or maxKeysPerRound is not positive
+     */
+    public GossipRateLimitService(InMemoryRateLimitService local,
+                                  InetSocketAddress bindAddress,
+                                  List<InetSocketAddress> peers,
+                                  Duration interval,
+                                  int maxKeysPerRound) {
+        this(local, new GossipChannel(bindAddress, peers, interval, maxKeysPerRound), RateLimitPolicy.DEFAULT, true);
+        log.info("Gossip rate limit service: {}", channel);
+    }
+
+    private GossipRateLimitService(InMemoryRateLimitService local, GossipChannel channel, String policyName, boolean ownsChannel) {
+        this.local = local;
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        channel.register(KeyHashing.hash(policyName), policyName, this);
+    }
+
+    /**
+     * Evaluates if a request from the specified key should be allowed by the local replica of its bucket.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        return RateLimitService.decision(tryAcquire(rateLimitKey, 1));
+    }
+
+    /**
+     * Consumes the permits from the local replica of the bucket of the key
+     * and records them for the next gossip round.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return {@code true} if the permits have been acquired; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquire(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        if (!local.tryAcquire(probe(fingerprint), permits)) {
+            return false;
+        }
+        record(fingerprint, permits);
+        return true;
+    }
+
+    /**
+     * Consumes the permits from the local replica of the bucket of the key, records them for the next
+     * gossip round and reports the state of the replica.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return the {@link ConsumptionProbe} of the consumption
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryAcquireAndProbe(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        long probe = local.tryAcquireAndProbe(probe(fingerprint), permits);
+        if (ConsumptionProbe.isAllowed(probe)) {
+            record(fingerprint, permits);
+        }
+        return probe;
+    }
+
+    /**
+     * Reserves the permits in the local replica of the bucket of the key
+     * and records them for the next gossip round.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param permits      the number of permits to reserve
+     * @param maxWaitNanos the maximum time the caller is ready to wait for the permits
+     * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before using
+     * them, or {@link RateLimiter#NOT_RESERVED} if they would not be available within {@code maxWaitNanos}
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryReserve(RateLimitKey rateLimitKey, int permits, long maxWaitNanos) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        long waitNanos = local.tryReserve(probe(fingerprint), permits, maxWaitNanos);
+        if (waitNanos >= 0) {
+            record(fingerprint, permits);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Returns the permits to the local replica of the bucket of the key and withdraws them from the next
+     * gossip round. Permits which have already been sent stay consumed on the peers.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public void refund(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        local.refund(probe(fingerprint), permits);
+        pending.computeIfPresent(fingerprint, (key, delta) -> delta > permits ? delta - permits : null);
+    }
+
+    /**
+     * Consumes the permits from the local replicas of the buckets of all keys and records them for the next
+     * gossip round. When a key has not enough permits, the permits consumed from the previous keys are refunded
+     * before anything is recorded, so concurrent requests may briefly see fewer permits of those keys.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are acquired
+     * @param permits       the number of permits to acquire from every key
+     * @return {@code true} if the permits of all keys have been acquired; {@code false} if none have been
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquireAll(RateLimitKey[] rateLimitKeys, int permits) {
+        RateLimitKey[] fingerprints = new RateLimitKey[rateLimitKeys.length];
+        for (int i = 0; i < rateLimitKeys.length; i++) {
+            if (Objects.isNull(rateLimitKeys[i])) {
+                throw new IllegalArgumentException("Key must not be null");
+            }
+            fingerprints[i] = new Fingerprint(rateLimitKeys[i].hash64());
+        }
+        if (!local.tryAcquireAll(fingerprints, permits)) {
+            return false;
+        }
+        for (RateLimitKey fingerprint : fingerprints) {
+            record(fingerprint.hash64(), permits);
+        }
+        return true;
+    }
+
+    /**
+     * Creates a service of the policy with its own replicas, which gossips over the socket of this service.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@code GossipRateLimitService} of the policy
+     * @throws IllegalStateException if the hash of the policy name collides with another policy
+     */
+    @Override
+    public GossipRateLimitService withPolicy(RateLimitPolicy policy) {
+        return new GossipRateLimitService(local.withPolicy(policy), channel, policy.name(), false);
+    }
+
+    @Override
+    public void updatePolicy(RateLimitPolicy policy) {
+        local.updatePolicy(policy);
+    }
+
+    @Override
+    public BucketState inspect(RateLimitKey rateLimitKey) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        return local.inspect(probe(rateLimitKey.hash64()));
+    }
+
+    @Override
+    public long size() {
+        return local.size();
+    }
+
+    @Override
+    public long evictions() {
+        return local.evictions();
+    }
+
+    /**
+     * Runs a gossip round right away: applies the deltas received from the peers
+     * and sends the pending deltas of all policies of the node.
+     */
+    public void gossip() {
+        channel.round();
+    }
+
+    /**
+     * Returns the local address of the UDP socket of the node.
+     */
+    public InetSocketAddress localAddress() {
+        return channel.localAddress();
+    }
+
+    /**
+     * Returns the counters of the gossip, the packets of the node and the permits of the policy.
+     */
+    public Statistics statistics() {
+        return new Statistics(channel.sentPackets(), channel.receivedPackets(), channel.droppedPackets(),
+                sentPermits.sum(), receivedPermits.sum());
+    }
+
+    /**
+     * Closes the local replicas and, if the service owns them, stops the gossip rounds and closes the socket.
+     */
+    @Override
+    public void close() {
+        if (ownsChannel) {
+            channel.close();
+        }
+        local.close();
+    }
+
+    /**
+     * Consumes the permits consumed by a peer from the local replica of the bucket.
+     */
+    void applyRemote(long fingerprint, int delta) {
+        if (delta > 0) {
+            receivedPermits.add(delta);
+            local.consumeUpTo(probe(fingerprint), delta);
+        }
+    }
+
+    /**
+     * Passes the pending deltas of the changed keys to the sink in the order of their first change,
+     * at most {@code maxKeys} of them.
+     *
+     * @return the number of keys passed to the sink
+     */
+    int drainPending(int maxKeys, GossipChannel.DeltaSink sink) {
+        int keys = 0;
+        Long fingerprint;
+        while (keys < maxKeys && (fingerprint = changedKeys.poll()) != null) {
+            Long delta = pending.remove(fingerprint);
+            if (delta == null) {
+                continue;
+            }
+            int sent = (int) Math.min(delta, Integer.MAX_VALUE);
+            if (delta > sent) {
+                record(fingerprint, delta - sent);
+            }
+            sentPermits.add(sent);
+            sink.accept(fingerprint, sent);
+            keys++;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the fingerprint of the calling thread set to the hash, valid until the next call on the thread.
+     */
+    private static Fingerprint probe(long hash64) {
+        Fingerprint probe = PROBES.get();
+        probe.hash64 = hash64;
+        return probe;
+    }
+
+    /**
+     * Adds the permits to the pending delta of the key, queueing the key on its first change since the last round.
+     */
+    private void record(long fingerprint, long permits) {
+        if (permits > 0 && pending.merge(fingerprint, permits, Long::sum) == permits) {
+            changedKeys.add(fingerprint);
+        }
+    }
+
+    private static List<InetSocketAddress> parsePeers(List<String> peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            int separator = peer.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Gossip peer should be host:port: " + peer);
+            }
+            addresses.add(new InetSocketAddress(peer.substring(0, separator).trim(),
+                    Integer.parseInt(peer.substring(separator + 1).trim())));
+        }
+        return addresses;
+    }
+
+    @Override
+    public String toString() {
+        return "GossipRateLimitService{" +
+                "local=" + local +
+                ", channel=" + channel +
+                '}';
+    }
+
+    /**
+     * Gossip counters.
+     *
+     * @param sentPackets      the number of packets sent by the node to all peers
+     * @param receivedPackets  the number of packets of the peers applied by the node
+     * @param droppedPackets   the number of packets neither sent nor applied, such as malformed ones
+     * @param sentPermits      the number of permits of the policy consumed on the node and sent to the peers
+     * @param receivedPermits  the number of permits of the policy consumed by the peers
+     */
+    public record Statistics(long sentPackets, long receivedPackets, long droppedPackets,
+                             long sentPermits, long receivedPermits) {
+    }
+
+    /**
+     * The key of a replica, the hash of the original key, which is all the peers know of it.
+     * The lookups reuse the fingerprint of the thread, the store keeps a {@link #copy()}.
+     */
+    private static final class Fingerprint implements ReusableRateLimitKey {
+        private long hash64;
+
+        private Fingerprint(long hash64) {
+            this.hash64 = hash64;
+        }
+
+        @Override
+        public long hash64() {
+            return hash64;
+        }
+
+        @Override
+        public RateLimitKey copy() {
+            return new Fingerprint(hash64);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint fingerprint && fingerprint.hash64 == hash64;
+        }
+
+        @Override
+        public int hashCode() {
+            return KeyHashing.fold(hash64);
+        }
+
+        @Override
+        public String toString() {
+            return "Fingerprint{" + Long.toHexString(hash64) + '}';
+        }
+    }
+}
@@ -2,21 +2,59 @@ package name.nikolaikochkin.ratelimiter.service.limiter;
 
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
 import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
 import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.ExpiringBucketStore.BucketOperation;
 import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * The {@code InMemoryRateLimitService} class implements the {@link RateLimitService} interface,
+ * The {@code InMemoryRateLimitService} class implements the {@link LocalRateLimitService} interface,
  * providing an in-memory rate limiting mechanism.
- * <p>It uses a {@link ConcurrentMap} to store and manage {@link RateLimiter} instances for each {@link RateLimitKey}.</p>
- * <p>This service delegates the creation of {@link RateLimiter} instances to a {@link RateLimiterFactory}.</p>
+ * <p>It uses {@link ExpiringBucketStore} shards to store and manage {@link RateLimiter} instances for each {@link RateLimitKey}.
+ * Buckets which are full and idle for longer than the configured time are removed, and the total number
+ * of buckets is capped, so the memory footprint stays bounded regardless of the number of distinct keys.</p>
+ * <p>Every key is hashed to one of the shards. Each shard is an independently sized map with its own expiry
+ * bookkeeping and its own share of the bucket cap, so map resizes, sweeps and evictions of one shard
+ * never stall requests to the others.</p>
+ * <p>This service delegates the creation of {@link RateLimiter} instances to a {@link RateLimiterFactory}.
+ * The service of a named {@link RateLimitPolicy} uses the policy itself as the factory and has its own shards
+ * and its own cap of buckets. The limiters of the policies read the time from the clock of the original factory.</p>
+ * <p>The factory can be replaced at runtime by {@link #updatePolicy(RateLimitPolicy)}. The existing buckets are
+ * not rebuilt at once: every bucket is carried over to the new factory on its next access.</p>
+ * <p>If {@code application.ratelimit.snapshot.directory} is set, the buckets which are not full are periodically
+ * written to a {@link BucketSnapshot} file of the policy, and once more on shutdown. After a restart the file is
+ * mapped, and every key gets its permits back on its first access, so a rollout does not refill all buckets
+ * at the same moment.</p>
+ * <p>If {@code application.ratelimit.admission.width} is positive, the keys without a bucket are first counted
+ * by a fixed-size {@link AdmissionSketch}. A key is allowed without a bucket while its estimated permits stay
+ * within a quarter of the capacity, and gets a real bucket once it goes above, from then on the limit of the key
+ * is exact. The sketch is halved once per window of the current bandwidth, as read from the clock of the factory,
+ * so the one-off keys never allocate a bucket. A decay hides up to half the threshold of the permits a key has
+ * consumed in the previous window, so the new bucket is charged the estimate plus half the threshold, and a key
+ * never gets more than the capacity in any window. The charge is capped so that the request creating the bucket
+ * is always allowed: a key whose estimate is inflated by the other keys sharing its counters is never rejected
+ * on its first request.</p>
  *
  * @see RateLimitService
  * @see RateLimiterFactory
@@ -26,19 +64,191 @@ import java.util.concurrent.ConcurrentMap;
 @Slf4j
 @Service
 @ToString
-public class InMemoryRateLimitService implements RateLimitService {
+@ConditionalOnProperty(name = "application.ratelimit.store", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryRateLimitService implements LocalRateLimitService, UpdatableRateLimitService,
+        InspectableRateLimitService, AutoCloseable {
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final long ADMITTED = -1;
+    private static final int MAX_DECAYS = Integer.SIZE;
+    private static final BucketOperation TRY_CONSUME =
+            (rateLimiter, permits, argument) -> rateLimiter.tryConsume(permits) ? 1 : 0;
+    private static final BucketOperation TRY_CONSUME_AND_PROBE =
+            (rateLimiter, permits, argument) -> rateLimiter.tryConsumeAndProbe(permits);
+    private static final BucketOperation TRY_RESERVE =
+            (rateLimiter, permits, maxWaitNanos) -> rateLimiter.tryReserve(permits, maxWaitNanos);
+    private static final BucketOperation CONSUME_UP_TO = (rateLimiter, permits, consumed) -> {
+        long available = Math.min(consumed, rateLimiter.availablePermits());
+        if (available > 0) {
+            rateLimiter.tryConsume((int) Math.min(available, Integer.MAX_VALUE));
+        }
+        return available;
+    };
 
-    private final RateLimiterFactory rateLimiterFactory;
-    private final ConcurrentMap<RateLimitKey, RateLimiter> buckets;
+    private volatile RateLimiterFactory rateLimiterFactory;
+    private final Duration expireAfterIdle;
+    private final int maxBuckets;
+    private final ExpiringBucketStore[] shards;
+    private final int shardMask;
+    private final Path snapshotDirectory;
+    private final Path snapshotPath;
+    private final Duration snapshotInterval;
+    private final int admissionWidth;
+    private final AdmissionSketch admission;
+    @ToString.Exclude
+    private final List<InMemoryRateLimitService> policyServices = new CopyOnWriteArrayList<>();
+    @ToString.Exclude
+    private volatile BucketSnapshot restored;
+    @ToString.Exclude
+    private final Disposable snapshotter;
+    @ToString.Exclude
+    private final AtomicLong nextDecayNanotime;
 
     /**
-     * Constructs a new {@code InMemoryRateLimitService} with the specified {@link RateLimiterFactory}.
+     * Constructs a new {@code InMemoryRateLimitService} with the specified {@link RateLimiterFactory}
+     * and the default expiration settings.
      *
      * @param rateLimiterFactory the factory to create {@link RateLimiter} instances
      */
     public InMemoryRateLimitService(RateLimiterFactory rateLimiterFactory) {
+        this(rateLimiterFactory, Duration.ofMinutes(10), 1_000_000, 0);
+    }
+
+    /**
+     * Constructs a new {@code InMemoryRateLimitService} with the specified {@link RateLimiterFactory}.
+     *
+     * @param rateLimiterFactory the factory to create {@link RateLimiter} instances
+     * @param expireAfterIdle    the time after which a full bucket without requests is removed
+     * @param maxBuckets         the maximum number of buckets, the least recently used ones are evicted above it
+     * @param shards             the number of shards, rounded up to a power of two,
+     *                           or {@code 0} for the number of available processors
+     * @throws IllegalArgumentException if expireAfterIdle is not longer than 1ms, maxBuckets is less than
+     *                                  the number of shards or shards is negative
+     */
+    public InMemoryRateLimitService(RateLimiterFactory rateLimiterFactory,
+                                    Duration expireAfterIdle,
+                                    int maxBuckets,
+                                    int shards) {
+        this(rateLimiterFactory, expireAfterIdle, maxBuckets, shards, null, RateLimitPolicy.DEFAULT, Duration.ZERO);
+    }
+
+    /**
+     * Constructs a new {@code InMemoryRateLimitService} from the configuration.
+     *
+     * @param rateLimiterFactory the factory to create {@link RateLimiter} instances
+     * @param expireAfterIdle    the time after which a full bucket without requests is removed
+     * @param maxBuckets         the maximum number of buckets, the least recently used ones are evicted above it
+     * @param shards             the number of shards, rounded up to a power of two,
+     *                           or {@code 0} for the number of available processors
+     * @param snapshotDirectory  the directory of the bucket snapshots, snapshots are disabled if empty
+     * @param snapshotInterval   the time between two snapshots
+     * @param admissionWidth     the number of counters per row of the admission sketch, the sketch is disabled if {@code 0}
+     * @throws IllegalArgumentException if expireAfterIdle is not longer than 1ms, maxBuckets is less than
+     *                                  the number of shards, shards is negative, snapshotInterval is not positive
+     *                                  or admissionWidth is negative
+     */
+    @Autowired
+    public InMemoryRateLimitService(RateLimiterFactory rateLimiterFactory,
+                                    @Value("${application.ratelimit.expire-after-idle:PT10M}") Duration expireAfterIdle,
+                                    @Value("${application.ratelimit.max-buckets:1000000}") int maxBuckets,
+                                    @Value("${application.ratelimit.shards:0}") int shards,
+                                    @Value("${application.ratelimit.snapshot.directory:}") String snapshotDirectory,
+                                    @Value("${application.ratelimit.snapshot.interval:PT30S}") Duration snapshotInterval,
+                                    @Value("${application.ratelimit.admission.width:0}") int admissionWidth) {
+        this(rateLimiterFactory, expireAfterIdle, maxBuckets, shards,
+                snapshotDirectory == null || snapshotDirectory.isBlank() ? null : Path.of(snapshotDirectory),
+                RateLimitPolicy.DEFAULT, snapshotInterval, admissionWidth);
+    }
+
+    /**
+     * Constructs a new {@code InMemoryRateLimitService} which snapshots its buckets into the file
+     * {@code <snapshotDirectory>/<snapshotName>.snapshot} and restores them from it.
+     *
+     * @param rateLimiterFactory the factory to create {@link RateLimiter} instances
+     * @param expireAfterIdle    the time after which a full bucket without requests is removed
+     * @param maxBuckets         the maximum number of buckets, the least recently used ones are evicted above it
+     * @param shards             the number of shards, rounded up to a power of two,
+     *                           or {@code 0} for the number of available processors
+     * @param snapshotDirectory  the directory of the bucket snapshots, or {@code null} to disable snapshots
+     * @param snapshotName       the name of the snapshot file, the name of the policy
+     * @param snapshotInterval   the time between two snapshots
+     * @throws IllegalArgumentException if expireAfterIdle is not longer than 1ms, maxBuckets is less than
+     *                                  the number of shards, shards is negative or snapshotInterval is not positive
+     */
+    public InMemoryRateLimitService(RateLimiterFactory rateLimiterFactory,
+                                    Duration expireAfterIdle,
+                                    int maxBuckets,
+                                    int shards,
+                                    Path snapshotDirectory,
+                                    String snapshotName,
+                                    Duration snapshotInterval) {
+        this(rateLimiterFactory, expireAfterIdle, maxBuckets, shards, snapshotDirectory, snapshotName, snapshotInterval, 0);
+    }
+
+    /**
+     * Constructs a new {@code InMemoryRateLimitService} which snapshots its buckets and counts the keys without
+     * a bucket by an {@link AdmissionSketch}.
+     *
+     * @param rateLimiterFactory the factory to create {@link RateLimiter} instances
+     * @param expireAfterIdle    the time after which a full bucket without requests is removed
+     * @param maxBuckets         the maximum number of buckets, the least recently used ones are evicted above it
+     * @param shards             the number of shards, rounded up to a power of two,
+     *                           or {@code 0} for the number of available processors
+     * @param snapshotDirectory  the directory of the bucket snapshots, or {@code null} to disable snapshots
+     * @param snapshotName       the name of the snapshot file, the name of the policy
+     * @param snapshotInterval   the time between two snapshots
+     * @param admissionWidth     the number of counters per row of the admission sketch, rounded up to a power of two,
+     *                           or {@code 0} to create a bucket for every key
+     * @throws IllegalArgumentException if expireAfterIdle is not longer than 1ms, maxBuckets is less than
+     *                                  the number of shards, shards is negative, snapshotInterval is not positive
+     *                                  or admissionWidth is negative
+     */
+    public InMemoryRateLimitService(RateLimiterFactory rateLimiterFactory,
+                                    Duration expireAfterIdle,
+                                    int maxBuckets,
+                                    int shards,
+                                    Path snapshotDirectory,
+                                    String snapshotName,
+                                    Duration snapshotInterval,
+                                    int admissionWidth) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("Shards value should not be negative");
+        }
+        if (admissionWidth < 0) {
+            throw new IllegalArgumentException("Admission width value should not be negative");
+        }
+        if (snapshotDirectory != null && (snapshotInterval == null || snapshotInterval.isZero() || snapshotInterval.isNegative())) {
+            throw new IllegalArgumentException("Snapshot interval value should be positive");
+        }
         this.rateLimiterFactory = rateLimiterFactory;
-        this.buckets = new ConcurrentHashMap<>();
+        this.expireAfterIdle = expireAfterIdle;
+        this.maxBuckets = maxBuckets;
+        int requestedShards = shards == 0 ? Runtime.getRuntime().availableProcessors() : shards;
+        int shardCount = requestedShards == 1 ? 1 : Integer.highestOneBit(requestedShards - 1) << 1;
+        if (maxBuckets < shardCount) {
+            throw new IllegalArgumentException("Max buckets value should not be less than the number of shards: " + shardCount);
+        }
+        this.shards = new ExpiringBucketStore[shardCount];
+        this.shardMask = shardCount - 1;
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new ExpiringBucketStore(expireAfterIdle, maxBuckets / shardCount);
+        }
+        this.snapshotDirectory = snapshotDirectory;
+        this.snapshotPath = snapshotDirectory == null ? null : snapshotDirectory.resolve(snapshotName + SNAPSHOT_SUFFIX);
+        this.snapshotInterval = snapshotInterval;
+        this.admissionWidth = admissionWidth;
+        this.admission = admissionWidth == 0 ? null : new AdmissionSketch(admissionWidth);
+        this.nextDecayNanotime = new AtomicLong(rateLimiterFactory.clock().nanoTime() + rateLimiterFactory.bandwidth().windowNanos());
+        if (snapshotPath == null) {
+            this.snapshotter = null;
+            return;
+        }
+        this.restored = openSnapshot(snapshotPath);
+        for (ExpiringBucketStore shard : this.shards) {
+            shard.restoreFrom(restored, rateLimiterFactory.clock());
+        }
+        long intervalNanos = snapshotInterval.toNanos();
+        this.snapshotter = Schedulers.boundedElastic()
+                .schedulePeriodically(this::writeSnapshot, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
     }
 
     /**
@@ -46,6 +256,8 @@ public class InMemoryRateLimitService implements RateLimitService {
      * This method retrieves or creates a {@link RateLimiter} for the key
      * and then checks if a request can be made under the current rate limit.
      *
+     * <p>The decision is made on the call, the returned {@code Mono} is one of the shared results.</p>
+     *
      * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
      * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
      * @throws IllegalArgumentException if the key is null
@@ -55,8 +267,371 @@ public class InMemoryRateLimitService implements RateLimitService {
         if (Objects.isNull(rateLimitKey)) {
             return Mono.error(new IllegalArgumentException("Key must not be null"));
         }
-        return Mono.fromCallable(() -> buckets.computeIfAbsent(rateLimitKey, key -> rateLimiterFactory.createRateLimiter()))
-                .doOnNext(rateLimiter -> log.debug("Key: {}, has limits: {}", rateLimitKey, rateLimiter))
-                .map(RateLimiter::tryConsume);
+        return RateLimitService.decision(tryAcquire(rateLimitKey, 1));
+    }
+
+    /**
+     * Retrieves or creates the {@link RateLimiter} of the key and consumes the permits from it.
+     * A cold key within the admission threshold is allowed by the {@link AdmissionSketch} without a bucket.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return {@code true} if the permits have been acquired; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquire(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long consumedPermits = admit(rateLimitKey, permits);
+        if (consumedPermits == ADMITTED) {
+            log.debug("Key: {}, admitted without bucket", rateLimitKey);
+            return true;
+        }
+        boolean allowed = shardOf(rateLimitKey).apply(rateLimitKey, rateLimiterFactory, consumedPermits,
+                TRY_CONSUME, permits, 0) != 0;
+        log.debug("Key: {}, allowed: {}", rateLimitKey, allowed);
+        return allowed;
+    }
+
+    /**
+     * Retrieves or creates the {@link RateLimiter} of the key, consumes the permits from it
+     * and reports the state of the bucket. The probe of a cold key allowed by the {@link AdmissionSketch}
+     * reports its estimated permits.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return the {@link ConsumptionProbe} of the consumption
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryAcquireAndProbe(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        long consumedPermits = admit(rateLimitKey, permits);
+        if (consumedPermits == ADMITTED) {
+            Bandwidth bandwidth = rateLimiterFactory.bandwidth();
+            long estimate = admission.estimate(rateLimitKey.hash64());
+            return ConsumptionProbe.allowed(bandwidth.capacity() - estimate, estimate == 0 ? 0 : bandwidth.nanosPerPermit());
+        }
+        return shardOf(rateLimitKey).apply(rateLimitKey, rateLimiterFactory, consumedPermits,
+                TRY_CONSUME_AND_PROBE, permits, 0);
+    }
+
+    /**
+     * Retrieves or creates the {@link RateLimiter} of the key and reserves the permits in it.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param permits      the number of permits to reserve
+     * @param maxWaitNanos the maximum time the caller is ready to wait for the permits
+     * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before using
+     * them, or {@link RateLimiter#NOT_RESERVED} if they would not be available within {@code maxWaitNanos}
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryReserve(RateLimitKey rateLimitKey, int permits, long maxWaitNanos) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        return shardOf(rateLimitKey).apply(rateLimitKey, rateLimiterFactory, estimateOf(rateLimitKey, permits),
+                TRY_RESERVE, permits, maxWaitNanos);
+    }
+
+    /**
+     * Returns the permits to the {@link RateLimiter} of the key. The permits of a cold key without a bucket
+     * are taken back from the {@link AdmissionSketch} instead.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public void refund(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits must not be negative");
+        }
+        RateLimiterFactory factory = rateLimiterFactory;
+        ExpiringBucketStore shard = shardOf(rateLimitKey);
+        if (admission != null && !shard.hasBucket(rateLimitKey, factory)) {
+            admission.remove(rateLimitKey.hash64(), permits);
+            return;
+        }
+        shard.getOrCreate(rateLimitKey, factory).refund(permits);
+    }
+
+    /**
+     * Retrieves or creates the {@link RateLimiter} of the key and consumes as many of the permits as are available,
+     * for permits which have already been consumed elsewhere, such as on another node.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are consumed
+     * @param permits      the number of permits consumed elsewhere
+     */
+    void consumeUpTo(RateLimitKey rateLimitKey, long permits) {
+        shardOf(rateLimitKey).apply(rateLimitKey, rateLimiterFactory, estimateOf(rateLimitKey, 0),
+                CONSUME_UP_TO, 0, permits);
+    }
+
+    /**
+     * Consumes the permits from the {@link RateLimiter} of every key in turn. When a key has not enough
+     * permits, the permits consumed from the previous keys are refunded, so concurrent requests may briefly
+     * see fewer permits of those keys, but never more than their limits. The permits of the cold keys admitted
+     * by the {@link AdmissionSketch} are taken back from the sketch as well.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are acquired
+     * @param permits       the number of permits to acquire from every key
+     * @return {@code true} if the permits of all keys have been acquired; {@code false} if none have been
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquireAll(RateLimitKey[] rateLimitKeys, int permits) {
+        RateLimiterFactory factory = rateLimiterFactory;
+        long[] consumedPermits = new long[rateLimitKeys.length];
+        for (int i = 0; i < rateLimitKeys.length; i++) {
+            if (Objects.isNull(rateLimitKeys[i])) {
+                throw new IllegalArgumentException("Key must not be null");
+            }
+            consumedPermits[i] = admit(rateLimitKeys[i], permits);
+        }
+        for (int i = 0; i < rateLimitKeys.length; i++) {
+            if (consumedPermits[i] != ADMITTED
+                    && shardOf(rateLimitKeys[i]).apply(rateLimitKeys[i], factory, consumedPermits[i], TRY_CONSUME, permits, 0) == 0) {
+                log.debug("Key: {}, rejected, refund {} keys", rateLimitKeys[i], i);
+                for (int j = 0; j < rateLimitKeys.length; j++) {
+                    if (consumedPermits[j] == ADMITTED) {
+                        admission.remove(rateLimitKeys[j].hash64(), permits);
+                    } else if (j < i) {
+                        shardOf(rateLimitKeys[j]).getOrCreate(rateLimitKeys[j], factory).refund(permits);
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a service with the same expiration settings and number of shards,
+     * whose buckets are created by the policy.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@code InMemoryRateLimitService} of the policy
+     */
+    @Override
+    public InMemoryRateLimitService withPolicy(RateLimitPolicy policy) {
+        InMemoryRateLimitService policyService = new InMemoryRateLimitService(policy.withClock(rateLimiterFactory.clock()),
+                expireAfterIdle, maxBuckets, shards.length, snapshotDirectory, policy.name(), snapshotInterval, admissionWidth);
+        policyServices.add(policyService);
+        return policyService;
+    }
+
+    /**
+     * Replaces the factory of the buckets by the policy. Every existing bucket is migrated to the policy
+     * on its next access, keeping its available permits up to the new capacity. The admission sketch
+     * is decayed once per window of the new bandwidth after its next decay.
+     *
+     * @param policy the new policy of the service
+     * @throws IllegalArgumentException if the policy is null
+     */
+    @Override
+    public void updatePolicy(RateLimitPolicy policy) {
+        if (Objects.isNull(policy)) {
+            throw new IllegalArgumentException("Policy must not be null");
+        }
+        log.info("Rate limiter factory updated: {}", policy);
+        this.rateLimiterFactory = policy.withClock(rateLimiterFactory.clock());
+    }
+
+    /**
+     * Returns the state of the bucket of the key under the current factory, without creating,
+     * touching or migrating the bucket.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose bucket is inspected
+     * @return the state of the bucket of the key, a full one less the permits estimated by the admission sketch
+     * if the key has no bucket
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Override
+    public BucketState inspect(RateLimitKey rateLimitKey) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        RateLimiterFactory factory = rateLimiterFactory;
+        RateLimiter rateLimiter = shardOf(rateLimitKey).peek(rateLimitKey, factory);
+        if (rateLimiter == null) {
+            Bandwidth bandwidth = factory.bandwidth();
+            long estimate = admission == null ? 0 : admission.estimate(rateLimitKey.hash64());
+            return new BucketState(Math.max(0, bandwidth.capacity() - estimate), bandwidth.capacity(),
+                    estimate == 0 ? 0 : bandwidth.nanosPerPermit());
+        }
+        return new BucketState(rateLimiter.availablePermits(), rateLimiter.bandwidth().capacity(), rateLimiter.nanosToNextPermit());
+    }
+
+    /**
+     * Returns the current number of buckets in all shards.
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (ExpiringBucketStore shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of buckets expired or evicted from all shards so far.
+     */
+    @Override
+    public long evictions() {
+        long evictions = 0;
+        for (ExpiringBucketStore shard : shards) {
+            evictions += shard.evictions();
+        }
+        return evictions;
+    }
+
+    /**
+     * Writes the buckets of all shards which are not full to the snapshot file, together with the buckets
+     * of the restored snapshot which have not been accessed since the restart and are still not full.
+     * Does nothing if snapshots are disabled.
+     *
+     * @return the number of buckets written, or {@code -1} if the snapshot has not been written
+     */
+    public synchronized int writeSnapshot() {
+        if (snapshotPath == null) {
+            return -1;
+        }
+        long nowMillis = System.currentTimeMillis();
+        Bandwidth bandwidth = rateLimiterFactory.bandwidth();
+        BucketSnapshot previous = restored;
+        if (previous != null && previous.isExhausted(bandwidth, nowMillis)) {
+            restored = previous = null;
+        }
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(snapshotPath, size() + (previous == null ? 0 : previous.count()))) {
+            for (ExpiringBucketStore shard : shards) {
+                shard.forEach((rateLimitKey, rateLimiter) -> {
+                    long availablePermits = rateLimiter.availablePermits();
+                    if (availablePermits < rateLimiter.bandwidth().capacity()) {
+                        writer.putIfAbsent(rateLimitKey.hash64(), availablePermits);
+                    }
+                });
+            }
+            if (previous != null) {
+                previous.copyTo(writer, bandwidth, nowMillis);
+            }
+            int count = writer.commit(nowMillis);
+            log.debug("Bucket snapshot written: {}, buckets: {}", snapshotPath, count);
+            return count;
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to write bucket snapshot: {}", snapshotPath, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes the last one, also for the services of the named policies.
+     */
+    @Override
+    public void close() {
+        for (InMemoryRateLimitService policyService : policyServices) {
+            policyService.close();
+        }
+        if (snapshotter != null && !snapshotter.isDisposed()) {
+            snapshotter.dispose();
+            writeSnapshot();
+        }
+    }
+
+    private static BucketSnapshot openSnapshot(Path snapshotPath) {
+        try {
+            Files.createDirectories(snapshotPath.getParent());
+            BucketSnapshot snapshot = BucketSnapshot.open(snapshotPath);
+            if (snapshot != null) {
+                log.info("Restoring buckets from snapshot: {}, buckets: {}", snapshotPath, snapshot.count());
+            }
+            return snapshot;
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to open bucket snapshot: {}", snapshotPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Counts the permits of a key without a bucket by the {@link AdmissionSketch}. A key which goes above
+     * the admission threshold of a quarter of the capacity gets a bucket charged by {@link #charge}.
+     *
+     * @return {@link #ADMITTED} if the permits have been admitted without a bucket, otherwise the permits
+     * to consume from a new bucket of the key
+     */
+    private long admit(RateLimitKey rateLimitKey, int permits) {
+        if (admission == null) {
+            return 0;
+        }
+        RateLimiterFactory factory = rateLimiterFactory;
+        if (shardOf(rateLimitKey).hasBucket(rateLimitKey, factory)) {
+            return 0;
+        }
+        decay(factory);
+        long capacity = factory.bandwidth().capacity();
+        long threshold = capacity / 4;
+        if (permits < 0 || permits > threshold) {
+            return charge(admission.estimate(rateLimitKey.hash64()), threshold, capacity, permits);
+        }
+        int estimate = admission.add(rateLimitKey.hash64(), permits);
+        return estimate <= threshold ? ADMITTED : charge(estimate - permits, threshold, capacity, permits);
+    }
+
+    /**
+     * Returns the permits to consume from a new bucket of a key: its estimate, plus the half of the threshold
+     * which the last decay may have hidden, but never so many that the request of the permits is rejected.
+     */
+    private static long charge(long estimate, long threshold, long capacity, int permits) {
+        if (estimate == 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(estimate + (threshold + 1) / 2, capacity - permits));
+    }
+
+    /**
+     * Halves the sketch once for every window of the bandwidth elapsed on the clock of the factory since
+     * the last decay. The thread which moves the time of the next decay forward does the decay.
+     */
+    private void decay(RateLimiterFactory factory) {
+        long now = factory.clock().nanoTime();
+        long next = nextDecayNanotime.get();
+        if (now - next < 0) {
+            return;
+        }
+        long windowNanos = factory.bandwidth().windowNanos();
+        long decays = Math.min((now - next) / windowNanos + 1, MAX_DECAYS);
+        if (nextDecayNanotime.compareAndSet(next, now + windowNanos)) {
+            for (long i = 0; i < decays; i++) {
+                admission.decay();
+            }
+        }
+    }
+
+    /**
+     * Returns the permits to consume from a new bucket of the key, charged by the {@link AdmissionSketch}.
+     */
+    private long estimateOf(RateLimitKey rateLimitKey, int permits) {
+        if (admission == null) {
+            return 0;
+        }
+        long capacity = rateLimiterFactory.bandwidth().capacity();
+        return charge(admission.estimate(rateLimitKey.hash64()), capacity / 4, capacity, permits);
+    }
+
+    /**
+     * Selects the shard of the key by the high bits of its precomputed {@link RateLimitKey#hash64()},
+     * which are decorrelated from the low bits used by the maps inside the shards.
+     */
+    private ExpiringBucketStore shardOf(RateLimitKey rateLimitKey) {
+        return shards[(int) (rateLimitKey.hash64() >>> 32) & shardMask];
     }
 }
@@ -0,0 +1,21 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+/**
+ * The {@code InspectableRateLimitService} interface extends {@link RateLimitService} with a read-only view
+ * of the bucket of a key.
+ * <p>It is implemented by the stores which hold their buckets locally, see {@link InMemoryRateLimitService}.</p>
+ */
+public interface InspectableRateLimitService extends RateLimitService {
+
+    /**
+     * Returns the state of the bucket of the key under the current policy, without consuming any permits
+     * and without creating the bucket. A key without a bucket is reported as a full one.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose bucket is inspected
+     * @return the state of the bucket of the key
+     * @throws IllegalArgumentException if the key is null
+     */
+    BucketState inspect(RateLimitKey rateLimitKey);
+}
@@ -0,0 +1,42 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code LeasableRateLimitService} interface extends {@link RateLimitService} with operations
+ * to take a batch of permits out of a shared limiter store and to give unused permits back.
+ * <p>It allows a node to serve permits of a remote store locally, see {@link LeasingRateLimitService}.</p>
+ */
+public interface LeasableRateLimitService extends RateLimitService {
+
+    /**
+     * Reserves up to the specified number of permits of the key.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param maxPermits   the maximum number of permits to reserve
+     * @return the number of reserved permits, from {@code 0} to {@code maxPermits}
+     * @throws IllegalArgumentException if the key is null or maxPermits is not positive
+     */
+    Mono<Long> reserve(RateLimitKey rateLimitKey, long maxPermits);
+
+    /**
+     * Returns previously reserved but unused permits of the key.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @return completes when the permits are returned
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    Mono<Void> release(RateLimitKey rateLimitKey, long permits);
+
+    /**
+     * Creates a leasable service of the same store which applies the specified policy.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@link LeasableRateLimitService} of the policy
+     */
+    @Override
+    LeasableRateLimitService withPolicy(RateLimitPolicy policy);
+}
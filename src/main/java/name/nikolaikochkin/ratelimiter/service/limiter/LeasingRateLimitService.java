@@ -0,0 +1,328 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LeasingRateLimitService} class implements the {@link RateLimitService} interface
+ * in front of a remote {@link LeasableRateLimitService}, serving most of the decisions locally.
+ *
+ * <p>For every key the node reserves a batch of permits in the remote store and serves them from a local
+ * counter. When the counter drops below a quarter of the batch, the next batch is reserved asynchronously,
+ * so hot keys rarely wait for the remote store. Concurrent requests of an exhausted key share a single
+ * reservation. The batch size follows the request rate of the key: it starts from a single permit, doubles
+ * every time the key needs another batch within a lease and halves when a lease expires unused, so it
+ * settles around the number of requests per lease duration, capped by {@code maxBatch}.</p>
+ *
+ * <p>Leased permits expire after the lease duration. Unused permits of an expired lease are returned
+ * to the remote store. Idle leases are dropped by a periodic sweep, under the same lease monitor as
+ * the reservations, so permits are never granted into a dropped lease.</p>
+ *
+ * <p>Leasing trades exactness for round trips: permits reserved by a node may be served up to one lease
+ * duration later, so within any period a key may be admitted up to {@code nodes * maxBatch} permits above
+ * its limit. The bound is configured by {@code maxBatch} and {@code leaseDuration}, the actual numbers
+ * of leased, served and returned permits are reported by {@link #statistics()}.</p>
+ *
+ * @see LeasableRateLimitService
+ */
+@Slf4j
+public class LeasingRateLimitService implements RateLimitService, AutoCloseable {
+    private static final double REFILL_THRESHOLD = 0.25;
+
+    private final LeasableRateLimitService remote;
+    private final Duration leaseDuration;
+    private final long leaseNanos;
+    private final long maxBatch;
+    private final NanoClock clock;
+    private final ConcurrentMap<RateLimitKey, Lease> leases = new ConcurrentHashMap<>();
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder leasedPermits = new LongAdder();
+    private final LongAdder servedPermits = new LongAdder();
+    private final LongAdder releasedPermits = new LongAdder();
+    private final Disposable sweeper;
+
+    /**
+     * Constructs a new {@code LeasingRateLimitService}.
+     *
+     * @param remote        the remote store to lease permits from
+     * @param leaseDuration the time after which unused leased permits are returned
+     * @param maxBatch      the maximum number of permits leased by the node per key
+     * @throws IllegalArgumentException if leaseDuration or maxBatch is not positive
+     */
+    public LeasingRateLimitService(LeasableRateLimitService remote, Duration leaseDuration, long maxBatch) {
+        this(remote, leaseDuration, maxBatch, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code LeasingRateLimitService} which reads the time of the leases from the specified clock.
+     *
+     * @param remote        the remote store to lease permits from
+     * @param leaseDuration the time after which unused leased permits are returned
+     * @param maxBatch      the maximum number of permits leased by the node per key
+     * @param clock         the clock of the leases
+     * @throws IllegalArgumentException if leaseDuration or maxBatch is not positive, or the clock is null
+     */
+    public LeasingRateLimitService(LeasableRateLimitService remote, Duration leaseDuration, long maxBatch, NanoClock clock) {
+        Assert.notNull(remote, "Remote rate limit service must not be null");
+        Assert.isTrue(leaseDuration != null && leaseDuration.toNanos() > 0, "Lease duration must be positive");
+        Assert.isTrue(maxBatch > 0, "Max batch value must be positive");
+        Assert.notNull(clock, "Clock must not be null");
+        this.remote = remote;
+        this.leaseDuration = leaseDuration;
+        this.leaseNanos = leaseDuration.toNanos();
+        this.maxBatch = maxBatch;
+        this.clock = clock;
+        this.sweeper = Schedulers.parallel().schedulePeriodically(this::sweep, leaseNanos, leaseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Evaluates if a request from the specified key should be allowed.
+     * The permit is taken from the local lease of the key, the remote store is called
+     * only when the lease is exhausted.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        long now = clock.nanoTime();
+        Lease lease = leases.computeIfAbsent(rateLimitKey, key -> new Lease(now));
+        if (lease.isExpired(now) && lease.remaining.get() > 0) {
+            expire(rateLimitKey, lease);
+        }
+        if (lease.tryTake()) {
+            servedPermits.increment();
+            if (lease.remaining.get() <= lease.batch * REFILL_THRESHOLD) {
+                refill(rateLimitKey, lease).subscribe(null, e -> log.warn("Failed to lease permits for key: {}", rateLimitKey, e));
+            }
+            return RateLimitService.decision(true);
+        }
+        return refill(rateLimitKey, lease)
+                .then(Mono.defer(() -> {
+                    if (lease.retired) {
+                        // The lease was dropped by the sweep before the reservation, lease again
+                        return allowRequest(rateLimitKey);
+                    }
+                    boolean taken = lease.tryTake();
+                    if (taken) {
+                        servedPermits.increment();
+                    }
+                    return RateLimitService.decision(taken);
+                }));
+    }
+
+    /**
+     * Evaluates a request of several permits directly in the remote store, so that a costly request
+     * never drains a lease sized by the rate of single permit requests.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @param permits      the number of permits the request consumes
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+        if (permits == 1) {
+            return allowRequest(rateLimitKey);
+        }
+        remoteCalls.increment();
+        return remote.allowRequest(rateLimitKey, permits);
+    }
+
+    /**
+     * Evaluates a request limited by several keys directly in the remote store, in a single round trip,
+     * since leased permits of one key cannot be rolled back atomically with the others.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are to be consumed
+     * @param permits       the number of permits to consume from every key
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     */
+    @Override
+    public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+        remoteCalls.increment();
+        return remote.allowAll(rateLimitKeys, permits);
+    }
+
+    /**
+     * Creates a leasing service with the same lease settings in front of the remote service of the policy.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@code LeasingRateLimitService} of the policy
+     */
+    @Override
+    public LeasingRateLimitService withPolicy(RateLimitPolicy policy) {
+        return new LeasingRateLimitService(remote.withPolicy(policy), leaseDuration, maxBatch, clock);
+    }
+
+    /**
+     * Returns the counters of the leasing, which measure the round trips saved
+     * and the permits held by the node.
+     */
+    public Statistics statistics() {
+        return new Statistics(remoteCalls.sum(), leasedPermits.sum(), servedPermits.sum(), releasedPermits.sum());
+    }
+
+    /**
+     * Stops the periodic sweep of the leases.
+     */
+    @Override
+    public void close() {
+        sweeper.dispose();
+    }
+
+    /**
+     * Reserves the next batch for the lease, or joins the reservation already in flight.
+     * Nothing is reserved for a lease already dropped by the sweep.
+     */
+    private Mono<Long> refill(RateLimitKey rateLimitKey, Lease lease) {
+        Mono<Long> inflight = lease.inflight;
+        if (inflight != null) {
+            return inflight;
+        }
+        synchronized (lease) {
+            if (lease.inflight != null) {
+                return lease.inflight;
+            }
+            if (lease.retired) {
+                return Mono.just(0L);
+            }
+            long batch = Math.min(lease.growBatch(maxBatch), maxBatch - lease.remaining.get());
+            if (batch <= 0) {
+                return Mono.just(0L);
+            }
+            remoteCalls.increment();
+            inflight = remote.reserve(rateLimitKey, batch)
+                    .doOnNext(reserved -> {
+                        lease.grant(reserved, clock.nanoTime() + leaseNanos);
+                        leasedPermits.add(reserved);
+                        log.debug("Key: {}, leased {} of {} permits", rateLimitKey, reserved, batch);
+                    })
+                    .doFinally(signal -> lease.inflight = null)
+                    .cache();
+            lease.inflight = inflight;
+            return inflight;
+        }
+    }
+
+    /**
+     * Returns the unused permits of an expired lease to the remote store.
+     */
+    private void expire(RateLimitKey rateLimitKey, Lease lease) {
+        long unused = lease.remaining.getAndSet(0);
+        if (unused > 0) {
+            lease.shrinkBatch();
+            releasedPermits.add(unused);
+            remote.release(rateLimitKey, unused)
+                    .subscribe(null, e -> log.warn("Failed to return permits of key: {}", rateLimitKey, e));
+        }
+    }
+
+    /**
+     * Expires the leases which outlived their duration and drops the idle ones.
+     *
+     * <p>A lease is dropped under its monitor, which also guards the start of every reservation, and only
+     * with no reservation in flight, so no permits are granted after it is retired. A request which still
+     * holds the retired lease finds it retired after its reservation and leases again.</p>
+     */
+    private void sweep() {
+        long now = clock.nanoTime();
+        for (Map.Entry<RateLimitKey, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (lease.isExpired(now)) {
+                expire(entry.getKey(), lease);
+                synchronized (lease) {
+                    if (lease.inflight == null && now - lease.expiresNanotime > leaseNanos && lease.remaining.get() == 0) {
+                        lease.retired = true;
+                        leases.remove(entry.getKey(), lease);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Leasing counters.
+     *
+     * @param remoteCalls     the number of reservations sent to the remote store
+     * @param leasedPermits   the number of permits reserved in the remote store
+     * @param servedPermits   the number of requests allowed from leased permits
+     * @param releasedPermits the number of unused permits returned to the remote store
+     */
+    public record Statistics(long remoteCalls, long leasedPermits, long servedPermits, long releasedPermits) {
+        /**
+         * Returns the number of leased permits neither served nor returned yet,
+         * the current over-admission exposure of the node.
+         */
+        public long outstandingPermits() {
+            return leasedPermits - servedPermits - releasedPermits;
+        }
+    }
+
+    /**
+     * The local lease of one key.
+     */
+    private static final class Lease {
+        private final AtomicLong remaining = new AtomicLong();
+        private volatile long expiresNanotime;
+        private volatile Mono<Long> inflight;
+        private volatile long batch;
+        private volatile boolean retired;
+
+        private Lease(long now) {
+            this.expiresNanotime = now;
+        }
+
+        private boolean tryTake() {
+            long current;
+            do {
+                current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        private void grant(long permits, long expiresNanotime) {
+            remaining.addAndGet(permits);
+            this.expiresNanotime = expiresNanotime;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresNanotime >= 0;
+        }
+
+        /**
+         * Doubles the batch, since the key needs more permits within a lease. Called under the lease monitor.
+         */
+        private long growBatch(long maxBatch) {
+            batch = batch == 0 ? 1 : Math.min(maxBatch, batch * 2);
+            return batch;
+        }
+
+        /**
+         * Halves the batch, since the lease expired with unused permits.
+         */
+        private synchronized void shrinkBatch() {
+            batch = Math.max(1, batch / 2);
+        }
+    }
+}
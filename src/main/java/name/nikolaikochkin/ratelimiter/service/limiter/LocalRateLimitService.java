@@ -0,0 +1,118 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code LocalRateLimitService} interface extends {@link RateLimitService} with decisions made
+ * in the calling thread without I/O, by services whose buckets are held in local memory.
+ *
+ * <p>Callers on a hot path, such as the aspect and the web filter, check whether the service of a policy
+ * is local and then decide with {@link #tryAcquireAndProbe(RateLimitKey, int)} without any reactive machinery.
+ * The reactive methods of a local service return the shared results of the same decisions.</p>
+ */
+public interface LocalRateLimitService extends RateLimitService {
+    /**
+     * Determines whether a request of the specified number of permits from the key should be allowed,
+     * deciding with {@link #tryAcquire(RateLimitKey, int)} on the call.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @param permits      the number of permits the request consumes
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    default Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+        return RateLimitService.decision(tryAcquire(rateLimitKey, permits));
+    }
+
+    /**
+     * Determines whether a request limited by all the specified keys should be allowed,
+     * deciding with {@link #tryAcquireAll(RateLimitKey[], int)} on the call.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are to be consumed
+     * @param permits       the number of permits to consume from every key
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    @Override
+    default Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+        return RateLimitService.decision(tryAcquireAll(rateLimitKeys, permits));
+    }
+
+    /**
+     * Attempts to acquire the specified number of permits of the key in the calling thread.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return {@code true} if the permits have been acquired; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    boolean tryAcquire(RateLimitKey rateLimitKey, int permits);
+
+    /**
+     * Attempts to acquire the specified number of permits of the key in the calling thread and reports
+     * the state of its bucket, such as the remaining permits and the time to wait after a rejection.
+     *
+     * <p>The default implementation reports the decision of {@link #tryAcquire(RateLimitKey, int)}
+     * without the state of the bucket.</p>
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return the {@link ConsumptionProbe} of the consumption
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     * @see RateLimiter#tryConsumeAndProbe(int)
+     */
+    default long tryAcquireAndProbe(RateLimitKey rateLimitKey, int permits) {
+        return ConsumptionProbe.of(tryAcquire(rateLimitKey, permits));
+    }
+
+    /**
+     * Attempts to reserve the specified number of permits of the key in the calling thread, allowing permits
+     * which become available within the maximum wait.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param permits      the number of permits to reserve
+     * @param maxWaitNanos the maximum time the caller is ready to wait for the permits
+     * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before using
+     * them, or {@link RateLimiter#NOT_RESERVED} if they would not be available within {@code maxWaitNanos}
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     * @see RateLimiter#tryReserve(int, long)
+     */
+    long tryReserve(RateLimitKey rateLimitKey, int permits, long maxWaitNanos);
+
+    /**
+     * Returns permits acquired or reserved for the key which have not been used, for example because
+     * the caller has been cancelled while waiting for them. The bucket never exceeds its capacity after a refund.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     * @see RateLimiter#refund(int)
+     */
+    void refund(RateLimitKey rateLimitKey, int permits);
+
+    /**
+     * Attempts to acquire the specified number of permits of every key in the calling thread.
+     * If any key has not enough permits, the permits already taken from the other keys are refunded.
+     * This is not atomic: until the refund, concurrent requests may see fewer permits of those keys.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are acquired
+     * @param permits       the number of permits to acquire from every key
+     * @return {@code true} if the permits of all keys have been acquired; {@code false} if none have been
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    boolean tryAcquireAll(RateLimitKey[] rateLimitKeys, int permits);
+
+    /**
+     * Creates a local service of the same store which applies the specified policy to its own buckets.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@link LocalRateLimitService} of the policy
+     */
+    @Override
+    LocalRateLimitService withPolicy(RateLimitPolicy policy);
+}
@@ -1,6 +1,7 @@
 package name.nikolaikochkin.ratelimiter.service.limiter;
 
 import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
 import reactor.core.publisher.Mono;
 
 /**
@@ -8,8 +9,24 @@ import reactor.core.publisher.Mono;
  * that manage rate limiting.
  * <p>Implementations of this interface provide a method to determine whether a request from a specific key
  * should be allowed or denied based on the rate-limiting criteria.</p>
+ *
+ * <p>Services backed by local memory implement {@link LocalRateLimitService}: they also decide in the calling
+ * thread without any reactive machinery, and callers on a hot path should prefer it. Services backed by
+ * a remote store decide only through the returned {@code Mono}.</p>
+ *
+ * <p>A service applies a single {@link RateLimitPolicy}. The services of the other policies are created
+ * with {@link #withPolicy(RateLimitPolicy)} and share the store settings of the original one.</p>
  */
 public interface RateLimitService {
+    /**
+     * The shared result of an allowed request.
+     */
+    Mono<Boolean> ALLOWED = Mono.just(Boolean.TRUE);
+
+    /**
+     * The shared result of a denied request.
+     */
+    Mono<Boolean> DENIED = Mono.just(Boolean.FALSE);
 
     /**
      * Determines whether a request from the specified key should be allowed
@@ -27,4 +44,57 @@ public interface RateLimitService {
      * @throws IllegalArgumentException if the key is null
      */
     Mono<Boolean> allowRequest(RateLimitKey rateLimitKey);
+
+    /**
+     * Determines whether a request of the specified number of permits from the key should be allowed.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @param permits      the number of permits the request consumes
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits);
+
+    /**
+     * Determines whether a request limited by all the specified keys should be allowed, leaving the permits
+     * of every key consumed only if each of them has enough. Remote services should check all keys in a single
+     * round trip. The check is not necessarily atomic: a local service takes the permits key by key and refunds
+     * them on a rejection, so concurrent requests may briefly see fewer permits, but never more than the limits.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are to be consumed
+     * @param permits       the number of permits to consume from every key
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits);
+
+    /**
+     * Creates a service of the same store which applies the specified policy to its own buckets.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@link RateLimitService} of the policy
+     */
+    RateLimitService withPolicy(RateLimitPolicy policy);
+
+    /**
+     * Returns the number of buckets held by the service, or {@code -1} if they are not held locally.
+     */
+    default long size() {
+        return -1;
+    }
+
+    /**
+     * Returns the number of buckets removed by the service so far, either expired or evicted to make room
+     * for new ones, or {@code -1} if the buckets are not held locally.
+     */
+    default long evictions() {
+        return -1;
+    }
+
+    /**
+     * Returns the shared {@code Mono} of the decision.
+     */
+    static Mono<Boolean> decision(boolean allowed) {
+        return allowed ? ALLOWED : DENIED;
+    }
 }
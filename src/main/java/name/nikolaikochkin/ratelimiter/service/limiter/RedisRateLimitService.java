@@ -0,0 +1,324 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.GcraRateLimiter;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The {@code RedisRateLimitService} class implements the {@link RateLimitService} interface,
+ * keeping the state of every key in a Redis-protocol store shared by all replicas of the application.
+ *
+ * <p>The state of a key is the theoretical arrival time of the {@link GcraRateLimiter} algorithm, a single
+ * number in microseconds of the server clock. Each decision is one atomic server-side script call, which
+ * reads the state, decides and writes it back. The key expires as soon as its bucket is full again,
+ * so idle keys do not occupy the store.</p>
+ *
+ * <p>The script is executed through the reactive Lettuce connection, which multiplexes concurrent
+ * decisions over one connection and pipelines them without blocking. The script is sent by its SHA
+ * and loaded on the first call only.</p>
+ *
+ * <p>A request limited by several keys is checked against all of them in the same script call,
+ * and permits are consumed from all keys or from none. A script may only touch the keys of one hash slot
+ * of a Redis Cluster, so with {@code application.ratelimit.redis.hash-tag=true}, or on a cluster-aware
+ * connection, the prefix of the keys is wrapped into a hash tag, such as {@code {ratelimit:}1.1.1.1}.
+ * All the keys of a policy then live on one node of the cluster, which is the price of the atomic
+ * multi-key check.</p>
+ *
+ * <p>Permits can also be reserved in batches and returned, so that a {@link LeasingRateLimitService}
+ * can serve them locally without a round trip per request.</p>
+ *
+ * <p>The service is enabled with {@code application.ratelimit.store=redis}. It always applies
+ * token bucket semantics configured by {@code application.ratelimit.permits} and {@code period}.
+ * The keys of a named policy are prefixed with the name of the policy and have the bandwidth of the policy,
+ * its algorithm is ignored.</p>
+ *
+ * @see RateLimitService
+ * @see GcraRateLimiter
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "application.ratelimit.store", havingValue = "redis")
+public class RedisRateLimitService implements LeasableRateLimitService {
+    /**
+     * KEYS - the keys of the buckets,
+     * ARGV[1] - the emission interval in microseconds,
+     * ARGV[2] - the burst tolerance in microseconds,
+     * ARGV[3] - the number of permits to consume from every bucket.
+     * Returns {@code 1} if the permits have been consumed from all buckets, {@code 0} if from none.
+     */
+    static final RedisScript<Long> GCRA_SCRIPT = RedisScript.of("""
+            redis.replicate_commands()
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local increment = tonumber(ARGV[1]) * tonumber(ARGV[3])
+            local updated = {}
+            for i, key in ipairs(KEYS) do
+                local tat = tonumber(redis.call('GET', key) or now)
+                if tat < now then
+                    tat = now
+                end
+                updated[i] = tat + increment
+                if updated[i] - now > tonumber(ARGV[2]) then
+                    return 0
+                end
+            end
+            for i, key in ipairs(KEYS) do
+                if updated[i] > now then
+                    redis.call('SET', key, string.format('%.0f', updated[i]), 'PX', math.ceil((updated[i] - now) / 1000))
+                end
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] - the key of the bucket,
+     * ARGV[1] - the emission interval in microseconds,
+     * ARGV[2] - the burst tolerance in microseconds,
+     * ARGV[3] - the maximum number of permits to reserve.
+     * Returns the number of reserved permits.
+     */
+    static final RedisScript<Long> RESERVE_SCRIPT = RedisScript.of("""
+            redis.replicate_commands()
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local tat = tonumber(redis.call('GET', KEYS[1]) or now)
+            if tat < now then
+                tat = now
+            end
+            local interval = tonumber(ARGV[1])
+            local available = math.floor((tonumber(ARGV[2]) - (tat - now)) / interval)
+            local reserved = math.min(available, tonumber(ARGV[3]))
+            if reserved <= 0 then
+                return 0
+            end
+            local updated = tat + interval * reserved
+            redis.call('SET', KEYS[1], string.format('%.0f', updated), 'PX', math.ceil((updated - now) / 1000))
+            return reserved
+            """, Long.class);
+
+    /**
+     * KEYS[1] - the key of the bucket,
+     * ARGV[1] - the emission interval in microseconds,
+     * ARGV[2] - the number of permits to return.
+     * Returns {@code 1} if the bucket still exists, {@code 0} otherwise.
+     */
+    static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            redis.replicate_commands()
+            local tat = tonumber(redis.call('GET', KEYS[1]))
+            if not tat then
+                return 0
+            end
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local updated = tat - tonumber(ARGV[1]) * tonumber(ARGV[2])
+            if updated <= now then
+                redis.call('DEL', KEYS[1])
+            else
+                redis.call('SET', KEYS[1], string.format('%.0f', updated), 'PX', math.ceil((updated - now) / 1000))
+            end
+            return 1
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final boolean hashTag;
+    private final String emissionIntervalMicros;
+    private final String burstToleranceMicros;
+
+    /**
+     * Constructs a new {@code RedisRateLimitService}.
+     *
+     * @param redisTemplate the reactive template of the Redis connection
+     * @param permits       the capacity of every bucket
+     * @param period        the time during which the whole capacity of a bucket is replenished
+     * @param keyPrefix     the prefix of the keys in the store
+     * @param hashTag       whether the prefix is a hash tag of the keys, implied by a cluster-aware connection
+     * @throws IllegalStateException if permits is not positive or period is shorter than permits microseconds
+     */
+    @Autowired
+    public RedisRateLimitService(ReactiveStringRedisTemplate redisTemplate,
+                                 @Value("${application.ratelimit.permits}") long permits,
+                                 @Value("${application.ratelimit.period}") Duration period,
+                                 @Value("${application.ratelimit.redis.key-prefix:ratelimit:}") String keyPrefix,
+                                 @Value("${application.ratelimit.redis.hash-tag:false}") boolean hashTag) {
+        this(redisTemplate, bandwidth(permits, period), keyPrefix, hashTag || isClusterAware(redisTemplate));
+    }
+
+    /**
+     * Constructs a new {@code RedisRateLimitService} of the bandwidth.
+     *
+     * @param redisTemplate the reactive template of the Redis connection
+     * @param bandwidth     the burst and the rate of every bucket
+     * @param keyPrefix     the prefix of the keys in the store
+     * @param hashTag       whether the prefix is a hash tag of the keys, so that all of them map to one hash slot
+     * @throws IllegalStateException if the interval of the token generation is shorter than a microsecond
+     */
+    public RedisRateLimitService(ReactiveStringRedisTemplate redisTemplate, Bandwidth bandwidth, String keyPrefix, boolean hashTag) {
+        Assert.notNull(bandwidth, "Bandwidth must not be null");
+        Assert.state(bandwidth.nanosPerPermit() >= 1000, "Period must not be shorter than permits microseconds");
+        long emissionInterval = bandwidth.nanosPerPermit() / 1000;
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.hashTag = hashTag;
+        this.emissionIntervalMicros = Long.toString(emissionInterval);
+        this.burstToleranceMicros = Long.toString(emissionInterval * bandwidth.capacity());
+    }
+
+    /**
+     * Evaluates if a request from the specified key should be allowed
+     * with a single atomic script call to the store.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        return allowRequest(rateLimitKey, 1);
+    }
+
+    /**
+     * Evaluates if a request of the specified number of permits from the key should be allowed
+     * with a single atomic script call to the store.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @param permits      the number of permits the request consumes
+     * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        if (permits < 0) {
+            return Mono.error(new IllegalArgumentException("Permits value should not be negative"));
+        }
+        return redisTemplate.execute(GCRA_SCRIPT,
+                        List.of(key(rateLimitKey)),
+                        List.of(emissionIntervalMicros, burstToleranceMicros, Integer.toString(permits)))
+                .next()
+                .map(result -> result == 1L)
+                .doOnNext(allowed -> log.debug("Key: {}, allowed: {}", rateLimitKey, allowed));
+    }
+
+    /**
+     * Evaluates if a request limited by all the specified keys should be allowed with a single atomic
+     * script call, which checks every key first and consumes the permits only if all of them conform.
+     * In a Redis Cluster the keys map to the same hash slot only if the prefix is a hash tag.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are to be consumed
+     * @param permits       the number of permits to consume from every key
+     * @return {@code true} if the request is allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    @Override
+    public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+        if (permits < 0) {
+            return Mono.error(new IllegalArgumentException("Permits value should not be negative"));
+        }
+        List<String> keys = new ArrayList<>(rateLimitKeys.length);
+        for (RateLimitKey rateLimitKey : rateLimitKeys) {
+            if (Objects.isNull(rateLimitKey)) {
+                return Mono.error(new IllegalArgumentException("Key must not be null"));
+            }
+            keys.add(key(rateLimitKey));
+        }
+        return redisTemplate.execute(GCRA_SCRIPT, keys, List.of(emissionIntervalMicros, burstToleranceMicros, Integer.toString(permits)))
+                .next()
+                .map(result -> result == 1L)
+                .doOnNext(allowed -> log.debug("Keys: {}, allowed: {}", keys, allowed));
+    }
+
+    /**
+     * Creates a service of the same connection whose keys are prefixed with the name of the policy
+     * and have the bandwidth of the policy.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@code RedisRateLimitService} of the policy
+     */
+    @Override
+    public RedisRateLimitService withPolicy(RateLimitPolicy policy) {
+        return new RedisRateLimitService(redisTemplate, policy.bandwidth(), keyPrefix + policy.name() + ":", hashTag);
+    }
+
+    /**
+     * Reserves up to the specified number of permits of the key with a single atomic script call.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param maxPermits   the maximum number of permits to reserve
+     * @return the number of reserved permits, from {@code 0} to {@code maxPermits}
+     * @throws IllegalArgumentException if the key is null or maxPermits is not positive
+     */
+    @Override
+    public Mono<Long> reserve(RateLimitKey rateLimitKey, long maxPermits) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        if (maxPermits <= 0) {
+            return Mono.error(new IllegalArgumentException("Max permits value should be positive"));
+        }
+        return redisTemplate.execute(RESERVE_SCRIPT,
+                        List.of(key(rateLimitKey)),
+                        List.of(emissionIntervalMicros, burstToleranceMicros, Long.toString(maxPermits)))
+                .next()
+                .doOnNext(reserved -> log.debug("Key: {}, reserved: {}", rateLimitKey, reserved));
+    }
+
+    /**
+     * Returns unused permits of the key with a single atomic script call.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @return completes when the permits are returned
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public Mono<Void> release(RateLimitKey rateLimitKey, long permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        if (permits < 0) {
+            return Mono.error(new IllegalArgumentException("Permits value should not be negative"));
+        }
+        if (permits == 0) {
+            return Mono.empty();
+        }
+        return redisTemplate.execute(RELEASE_SCRIPT,
+                        List.of(key(rateLimitKey)),
+                        List.of(emissionIntervalMicros, Long.toString(permits)))
+                .then();
+    }
+
+    private String key(RateLimitKey rateLimitKey) {
+        return hashTag ? "{" + keyPrefix + "}" + rateLimitKey : keyPrefix + rateLimitKey;
+    }
+
+    private static boolean isClusterAware(ReactiveStringRedisTemplate redisTemplate) {
+        return redisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory connectionFactory
+                && connectionFactory.isClusterAware();
+    }
+
+    private static Bandwidth bandwidth(long permits, Duration period) {
+        Assert.state(permits > 0, "Permits value must be positive");
+        Assert.notNull(period, "Period must not be null");
+        Assert.state(period.toNanos() / 1000 >= permits, "Period must not be shorter than permits microseconds");
+        return Bandwidth.of(permits, period);
+    }
+}
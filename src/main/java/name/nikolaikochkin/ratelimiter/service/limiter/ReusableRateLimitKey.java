@@ -0,0 +1,15 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+/**
+ * The {@code ReusableRateLimitKey} interface marks the keys which are mutable and reused for lookups,
+ * so that a decision allocates no key. The {@link ExpiringBucketStore} stores a copy of such a key
+ * when it creates its bucket.
+ */
+interface ReusableRateLimitKey extends RateLimitKey {
+    /**
+     * Returns an immutable key equal to this one.
+     */
+    RateLimitKey copy();
+}
@@ -0,0 +1,469 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.algorithm.LockFreeTokenBucketRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The {@code SlabRateLimitService} class implements the {@link LocalRateLimitService} interface,
+ * keeping the token bucket state of every key in primitive {@code long[]} slabs.
+ *
+ * <p>Keys are identified by their precomputed {@link RateLimitKey#hash64()} and are not retained. The state of a bucket
+ * is the single {@code long} used by {@link LockFreeTokenBucketRateLimiter}, the moment at which the bucket
+ * was empty. A slot therefore takes two {@code long}s, fingerprint and state, stored next to each other
+ * in an open addressing table with linear probing. Decisions create no objects.</p>
+ *
+ * <p>The table is split into segments, each guarded by its own monitor. When a segment gets too dense,
+ * it is rebuilt: buckets which have been refilled to full capacity are dropped, because they are
+ * indistinguishable from new ones, and the segment is resized to fit the remaining buckets.</p>
+ *
+ * <p>The service is enabled with {@code application.ratelimit.store=slab}. It always applies the
+ * token bucket algorithm configured by {@code application.ratelimit.permits} and {@code period}.
+ * Named policies get their own slabs with the bandwidth of the policy, their algorithm is ignored.
+ * The time is read from the {@link NanoClock} of the application, shared by the slabs of all policies.</p>
+ *
+ * @see RateLimitService
+ * @see LockFreeTokenBucketRateLimiter
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "application.ratelimit.store", havingValue = "slab")
+public class SlabRateLimitService implements LocalRateLimitService {
+    private static final int MIN_SEGMENT_SLOTS = 16;
+    private static final int MAX_SEGMENT_SLOTS = 1 << 29;
+
+    private final long capacity;
+    private final long nanosToGenerationToken;
+    private final NanoClock clock;
+    private final int initialSegmentSlots;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Constructs a new {@code SlabRateLimitService} sized for the available processors.
+     *
+     * @param permits the capacity of every bucket
+     * @param period  the time during which the whole capacity of a bucket is replenished
+     */
+    public SlabRateLimitService(long permits, Duration period) {
+        this(permits, period, 0, 1024, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code SlabRateLimitService}.
+     *
+     * @param permits             the capacity of every bucket
+     * @param period              the time during which the whole capacity of a bucket is replenished
+     * @param segments            the number of independently locked segments, rounded up to a power of two,
+     *                            or {@code 0} for four segments per available processor
+     * @param initialSegmentSlots the initial number of slots of every segment, rounded up to a power of two
+     * @param clock               the clock of the buckets
+     * @throws IllegalStateException if any of the values is not positive
+     */
+    @Autowired
+    public SlabRateLimitService(@Value("${application.ratelimit.permits}") long permits,
+                                @Value("${application.ratelimit.period}") Duration period,
+                                @Value("${application.ratelimit.slab.segments:0}") int segments,
+                                @Value("${application.ratelimit.slab.initial-segment-slots:1024}") int initialSegmentSlots,
+                                NanoClock clock) {
+        this(bandwidth(permits, period), segments, initialSegmentSlots, clock);
+    }
+
+    /**
+     * Constructs a new {@code SlabRateLimitService} of the bandwidth.
+     *
+     * @param bandwidth           the capacity of every bucket and the interval of the token generation
+     * @param segments            the number of independently locked segments, rounded up to a power of two,
+     *                            or {@code 0} for four segments per available processor
+     * @param initialSegmentSlots the initial number of slots of every segment, rounded up to a power of two
+     * @throws IllegalStateException if segments is negative or initialSegmentSlots is not positive
+     */
+    public SlabRateLimitService(Bandwidth bandwidth, int segments, int initialSegmentSlots) {
+        this(bandwidth, segments, initialSegmentSlots, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@code SlabRateLimitService} of the bandwidth, whose buckets read the time from the clock.
+     *
+     * @param bandwidth           the capacity of every bucket and the interval of the token generation
+     * @param segments            the number of independently locked segments, rounded up to a power of two,
+     *                            or {@code 0} for four segments per available processor
+     * @param initialSegmentSlots the initial number of slots of every segment, rounded up to a power of two
+     * @param clock               the clock of the buckets
+     * @throws IllegalStateException if segments is negative or initialSegmentSlots is not positive
+     */
+    public SlabRateLimitService(Bandwidth bandwidth, int segments, int initialSegmentSlots, NanoClock clock) {
+        Assert.notNull(bandwidth, "Bandwidth must not be null");
+        Assert.notNull(clock, "Clock must not be null");
+        Assert.state(segments >= 0, "Segments value must not be negative");
+        Assert.state(initialSegmentSlots > 0, "Initial segment slots value must be positive");
+        this.capacity = bandwidth.capacity();
+        this.nanosToGenerationToken = bandwidth.nanosPerPermit();
+        this.clock = clock;
+        this.initialSegmentSlots = initialSegmentSlots;
+        this.segments = new Segment[tableSizeFor(segments == 0 ? Runtime.getRuntime().availableProcessors() * 4 : segments)];
+        this.segmentMask = this.segments.length - 1;
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment(tableSizeFor(Math.max(initialSegmentSlots, MIN_SEGMENT_SLOTS)));
+        }
+    }
+
+    /**
+     * Evaluates if a request from the specified key should be allowed.
+     * The bucket of the key is created full on its first request.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose request is to be evaluated
+     * @return {@code true} if the request is within the rate limit and can be allowed; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        if (Objects.isNull(rateLimitKey)) {
+            return Mono.error(new IllegalArgumentException("Key must not be null"));
+        }
+        return RateLimitService.decision(ConsumptionProbe.isAllowed(tryConsume(rateLimitKey.hash64(), 1)));
+    }
+
+    /**
+     * Consumes the permits from the bucket of the key, creating it full on its first request.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return {@code true} if the permits have been acquired; {@code false} otherwise
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquire(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should not be negative");
+        }
+        return ConsumptionProbe.isAllowed(tryConsume(rateLimitKey.hash64(), permits));
+    }
+
+    /**
+     * Consumes the permits from the bucket of the key, creating it full on its first request,
+     * and reports the state of the bucket.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are acquired
+     * @param permits      the number of permits to acquire
+     * @return the {@link ConsumptionProbe} of the consumption
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryAcquireAndProbe(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should not be negative");
+        }
+        return tryConsume(rateLimitKey.hash64(), permits);
+    }
+
+    /**
+     * Reserves the permits in the bucket of the key, the same way {@link LockFreeTokenBucketRateLimiter} does,
+     * creating it full on its first request.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are reserved
+     * @param permits      the number of permits to reserve
+     * @param maxWaitNanos the maximum time the caller is ready to wait for the permits
+     * @return {@code 0} if the permits are available right now, the number of nanoseconds to wait before using
+     * them, or {@link RateLimiter#NOT_RESERVED} if they would not be available within {@code maxWaitNanos}
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public long tryReserve(RateLimitKey rateLimitKey, int permits, long maxWaitNanos) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should not be negative");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        return segmentOf(fingerprint).tryReserve(fingerprint, (int) fingerprint, permits, maxWaitNanos);
+    }
+
+    /**
+     * Returns the permits to the bucket of the key, if it still has one.
+     *
+     * @param rateLimitKey the {@link RateLimitKey} whose permits are returned
+     * @param permits      the number of permits to return
+     * @throws IllegalArgumentException if the key is null or permits is negative
+     */
+    @Override
+    public void refund(RateLimitKey rateLimitKey, int permits) {
+        if (Objects.isNull(rateLimitKey)) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should not be negative");
+        }
+        long fingerprint = rateLimitKey.hash64();
+        segmentOf(fingerprint).refund(fingerprint, (int) fingerprint, permits);
+    }
+
+    /**
+     * Consumes the permits from the bucket of every key in turn. When a key has not enough permits,
+     * the permits consumed from the previous keys are refunded, so concurrent requests may briefly see
+     * fewer permits of those keys.
+     *
+     * @param rateLimitKeys the distinct keys whose permits are acquired
+     * @param permits       the number of permits to acquire from every key
+     * @return {@code true} if the permits of all keys have been acquired; {@code false} if none have been
+     * @throws IllegalArgumentException if a key is null or permits is negative
+     */
+    @Override
+    public boolean tryAcquireAll(RateLimitKey[] rateLimitKeys, int permits) {
+        for (RateLimitKey rateLimitKey : rateLimitKeys) {
+            if (Objects.isNull(rateLimitKey)) {
+                throw new IllegalArgumentException("Key must not be null");
+            }
+        }
+        if (permits < 0) {
+            throw new IllegalArgumentException("Permits value should not be negative");
+        }
+        for (int i = 0; i < rateLimitKeys.length; i++) {
+            if (!ConsumptionProbe.isAllowed(tryConsume(rateLimitKeys[i].hash64(), permits))) {
+                for (int j = 0; j < i; j++) {
+                    long fingerprint = rateLimitKeys[j].hash64();
+                    segmentOf(fingerprint).refund(fingerprint, (int) fingerprint, permits);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a service with the same number of segments, whose buckets have the bandwidth of the policy.
+     *
+     * @param policy the policy of the new service
+     * @return a new {@code SlabRateLimitService} of the policy
+     */
+    @Override
+    public SlabRateLimitService withPolicy(RateLimitPolicy policy) {
+        return new SlabRateLimitService(policy.bandwidth(), segments.length, initialSegmentSlots, clock);
+    }
+
+    /**
+     * Returns the number of buckets currently held by the service,
+     * including full ones which have not been dropped by a rebuild yet.
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of full buckets dropped by rebuilds so far.
+     */
+    @Override
+    public long evictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    private long tryConsume(long fingerprint, int permits) {
+        return segmentOf(fingerprint).tryConsume(fingerprint, (int) fingerprint, permits);
+    }
+
+    private Segment segmentOf(long fingerprint) {
+        return segments[(int) (fingerprint >>> 32) & segmentMask];
+    }
+
+    private static Bandwidth bandwidth(long permits, Duration period) {
+        Assert.state(permits > 0, "Permits value must be positive");
+        Assert.notNull(period, "Period must not be null");
+        Assert.state(period.toNanos() >= permits, "Period must be positive and not shorter than permits nanoseconds");
+        return Bandwidth.of(permits, period);
+    }
+
+    private static int tableSizeFor(int value) {
+        return value >= MAX_SEGMENT_SLOTS ? MAX_SEGMENT_SLOTS : Integer.highestOneBit(Math.max(1, value - 1)) << 1;
+    }
+
+    @Override
+    public String toString() {
+        return "SlabRateLimitService{" +
+                "capacity=" + capacity +
+                ", nanosToGenerationToken=" + nanosToGenerationToken +
+                ", segments=" + segments.length +
+                ", size=" + size() +
+                '}';
+    }
+
+    /**
+     * An open addressing table of {@code [fingerprint, emptyNanotime]} pairs.
+     */
+    private final class Segment {
+        private long[] table;
+        private int mask;
+        private int size;
+        private int threshold;
+        private long evictions;
+
+        private Segment(int slots) {
+            allocate(slots);
+        }
+
+        /**
+         * Consumes the permits and returns the {@link ConsumptionProbe} of the bucket.
+         */
+        private synchronized long tryConsume(long fingerprint, int hash, int permits) {
+            long now = clock.nanoTime();
+            int index = slotOf(fingerprint, hash, now);
+            long emptyNanotime = refill(table[index + 1], now);
+            long tokens = (now - emptyNanotime) / nanosToGenerationToken;
+            if (tokens < permits) {
+                return ConsumptionProbe.rejected(tokens, permits > capacity
+                        ? Long.MAX_VALUE
+                        : emptyNanotime + permits * nanosToGenerationToken - now);
+            }
+            long updated = emptyNanotime + permits * nanosToGenerationToken;
+            table[index + 1] = updated;
+            long remaining = tokens - permits;
+            return ConsumptionProbe.allowed(remaining, remaining >= capacity
+                    ? 0
+                    : updated + (remaining + 1) * nanosToGenerationToken - now);
+        }
+
+        /**
+         * Moves the empty moment past now for the permits which are not available yet, within the maximum wait.
+         */
+        private synchronized long tryReserve(long fingerprint, int hash, int permits, long maxWaitNanos) {
+            long now = clock.nanoTime();
+            int index = slotOf(fingerprint, hash, now);
+            long updated = refill(table[index + 1], now) + permits * nanosToGenerationToken;
+            long waitNanos = Math.max(0, updated - now);
+            if (waitNanos > maxWaitNanos) {
+                return RateLimiter.NOT_RESERVED;
+            }
+            table[index + 1] = updated;
+            return waitNanos;
+        }
+
+        /**
+         * Returns permits to the bucket, up to its capacity. A bucket dropped by a rebuild meanwhile is full.
+         */
+        private synchronized void refund(long fingerprint, int hash, int permits) {
+            int index = indexOf(fingerprint, hash);
+            if (table[index] == 0) {
+                return;
+            }
+            long now = clock.nanoTime();
+            long emptyNanotime = table[index + 1];
+            long tokens = (now - emptyNanotime) / nanosToGenerationToken;
+            long returned = Math.min(permits, capacity - Math.min(tokens, capacity));
+            table[index + 1] = emptyNanotime - returned * nanosToGenerationToken;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized long evictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the index of the slot holding the fingerprint, inserting a full bucket if there is none.
+         */
+        private int slotOf(long fingerprint, int hash, long now) {
+            int index = indexOf(fingerprint, hash);
+            if (table[index] == 0) {
+                if (size >= threshold) {
+                    rebuild(now);
+                    index = indexOf(fingerprint, hash);
+                }
+                table[index] = fingerprint;
+                table[index + 1] = now - capacity * nanosToGenerationToken;
+                size++;
+            }
+            return index;
+        }
+
+        /**
+         * Moves the empty moment forward so that the bucket holds at most {@code capacity} tokens.
+         */
+        private long refill(long emptyNanotime, long now) {
+            long tokens = (now - emptyNanotime) / nanosToGenerationToken;
+            return tokens > capacity ? emptyNanotime + (tokens - capacity) * nanosToGenerationToken : emptyNanotime;
+        }
+
+        /**
+         * Returns the index of the slot holding the fingerprint or of the empty slot where it should be inserted.
+         */
+        private int indexOf(long fingerprint, int hash) {
+            int slot = hash & mask;
+            while (true) {
+                int index = slot << 1;
+                long stored = table[index];
+                if (stored == fingerprint || stored == 0) {
+                    return index;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * Drops full buckets and resizes the table for the remaining ones.
+         */
+        private void rebuild(long now) {
+            long[] old = table;
+            int live = 0;
+            for (int index = 0; index < old.length; index += 2) {
+                if (old[index] != 0 && !isFull(old[index + 1], now)) {
+                    live++;
+                }
+            }
+            int slots = tableSizeFor(Math.max((live + 1) * 2, MIN_SEGMENT_SLOTS));
+            log.debug("Rebuild segment: {} buckets, {} live, {} -> {} slots", size, live, mask + 1, slots);
+            evictions += size - live;
+            allocate(slots);
+            for (int index = 0; index < old.length; index += 2) {
+                long fingerprint = old[index];
+                if (fingerprint != 0 && !isFull(old[index + 1], now)) {
+                    int target = indexOf(fingerprint, (int) fingerprint);
+                    table[target] = fingerprint;
+                    table[target + 1] = old[index + 1];
+                    size++;
+                }
+            }
+        }
+
+        private boolean isFull(long emptyNanotime, long now) {
+            return (now - emptyNanotime) / nanosToGenerationToken >= capacity;
+        }
+
+        private void allocate(int slots) {
+            table = new long[slots << 1];
+            mask = slots - 1;
+            size = 0;
+            threshold = slots == MAX_SEGMENT_SLOTS ? slots - 1 : slots / 4 * 3;
+        }
+    }
+}
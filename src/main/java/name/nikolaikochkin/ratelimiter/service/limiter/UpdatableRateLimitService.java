@@ -0,0 +1,20 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+
+/**
+ * The {@code UpdatableRateLimitService} interface extends {@link RateLimitService} with the replacement
+ * of the policy at runtime.
+ * <p>It is implemented by the stores which create their buckets locally, see {@link InMemoryRateLimitService}.</p>
+ */
+public interface UpdatableRateLimitService extends RateLimitService {
+
+    /**
+     * Replaces the policy applied by the service. The buckets of the keys are carried over to the new policy,
+     * keeping their available permits up to the new capacity, at the latest on their next access.
+     *
+     * @param policy the new policy of the service
+     * @throws IllegalArgumentException if the policy is null
+     */
+    void updatePolicy(RateLimitPolicy policy);
+}
@@ -0,0 +1,86 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code MeteredLocalRateLimitService} class records the decisions of the {@link LocalRateLimitService}
+ * of a policy, made in the calling thread. The reactive methods decide on the call as well and return
+ * the shared results, so a decision is recorded exactly once whichever method makes it.
+ */
+final class MeteredLocalRateLimitService extends MeteredRateLimitService implements LocalRateLimitService {
+    private final LocalRateLimitService delegate;
+    private final RateLimitMetrics metrics;
+
+    MeteredLocalRateLimitService(LocalRateLimitService delegate, RateLimitMetrics metrics, String policy,
+                                 MeterRegistry meterRegistry, int trackedKeys) {
+        super(delegate, metrics, policy, meterRegistry, trackedKeys);
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        return RateLimitService.decision(tryAcquire(rateLimitKey, 1));
+    }
+
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+        return RateLimitService.decision(tryAcquire(rateLimitKey, permits));
+    }
+
+    @Override
+    public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+        return RateLimitService.decision(tryAcquireAll(rateLimitKeys, permits));
+    }
+
+    @Override
+    public boolean tryAcquire(RateLimitKey rateLimitKey, int permits) {
+        long start = sampleStart();
+        boolean allowed = delegate.tryAcquire(rateLimitKey, permits);
+        record(rateLimitKey, allowed, start);
+        return allowed;
+    }
+
+    @Override
+    public long tryAcquireAndProbe(RateLimitKey rateLimitKey, int permits) {
+        long start = sampleStart();
+        long probe = delegate.tryAcquireAndProbe(rateLimitKey, permits);
+        record(rateLimitKey, ConsumptionProbe.isAllowed(probe), start);
+        return probe;
+    }
+
+    @Override
+    public long tryReserve(RateLimitKey rateLimitKey, int permits, long maxWaitNanos) {
+        long start = sampleStart();
+        long waitNanos = delegate.tryReserve(rateLimitKey, permits, maxWaitNanos);
+        record(rateLimitKey, waitNanos >= 0, start);
+        return waitNanos;
+    }
+
+    @Override
+    public void refund(RateLimitKey rateLimitKey, int permits) {
+        delegate.refund(rateLimitKey, permits);
+    }
+
+    @Override
+    public boolean tryAcquireAll(RateLimitKey[] rateLimitKeys, int permits) {
+        long start = sampleStart();
+        boolean allowed = delegate.tryAcquireAll(rateLimitKeys, permits);
+        record(null, allowed, start);
+        return allowed;
+    }
+
+    /**
+     * Creates a metered local service of the policy on the store of the delegate.
+     */
+    @Override
+    public LocalRateLimitService withPolicy(RateLimitPolicy policy) {
+        return metrics.bind(policy, delegate.withPolicy(policy));
+    }
+}
@@ -0,0 +1,146 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code MeteredRateLimitService} class records the decisions of the {@link RateLimitService} of a policy.
+ *
+ * <p>The decisions are counted by striped {@link LongAdder} counters, read by Micrometer only when
+ * the meters are published. The latency of only one decision out of {@value #SAMPLE_RATE} is timed,
+ * chosen by a thread local random number, so most decisions do not even read the clock.
+ * Rejected keys are tracked by {@link RejectedKeys}, which never blocks a rejected request.</p>
+ *
+ * <p>Decisions of several keys at once are counted, but none of their keys is tracked as rejected,
+ * as the key which has exceeded its limit is unknown.</p>
+ *
+ * <p>The decisions of a remote service are recorded when its {@code Mono} emits them, the services
+ * of local stores are metered by the {@link MeteredLocalRateLimitService} subclass.</p>
+ */
+class MeteredRateLimitService implements RateLimitService {
+    static final int SAMPLE_RATE = 64;
+    private static final int SAMPLE_MASK = SAMPLE_RATE - 1;
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final RateLimitService delegate;
+    private final RateLimitMetrics metrics;
+    private final String policy;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Timer latency;
+    private final RejectedKeys rejectedKeys;
+
+    MeteredRateLimitService(RateLimitService delegate, RateLimitMetrics metrics, String policy,
+                            MeterRegistry meterRegistry, int trackedKeys) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.policy = policy;
+        this.rejectedKeys = new RejectedKeys(trackedKeys);
+        FunctionCounter.builder("ratelimit.decisions", allowed, LongAdder::sum)
+                .description("Rate limit decisions")
+                .tags("policy", policy, "outcome", "allowed")
+                .register(meterRegistry);
+        FunctionCounter.builder("ratelimit.decisions", rejected, LongAdder::sum)
+                .description("Rate limit decisions")
+                .tags("policy", policy, "outcome", "rejected")
+                .register(meterRegistry);
+        this.latency = Timer.builder("ratelimit.decision.latency")
+                .description("Latency of sampled rate limit decisions, one out of " + SAMPLE_RATE)
+                .tag("policy", policy)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        if (delegate.size() >= 0) {
+            Gauge.builder("ratelimit.buckets", delegate, RateLimitService::size)
+                    .description("Buckets held by the rate limit service")
+                    .tag("policy", policy)
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.evictions", delegate, RateLimitService::evictions)
+                    .description("Buckets expired or evicted by the rate limit service")
+                    .tag("policy", policy)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+        return allowRequest(rateLimitKey, 1);
+    }
+
+    @Override
+    public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+        long start = sampleStart();
+        Mono<Boolean> decision = permits == 1
+                ? delegate.allowRequest(rateLimitKey)
+                : delegate.allowRequest(rateLimitKey, permits);
+        return decision.doOnNext(allowed -> record(rateLimitKey, allowed, start));
+    }
+
+    @Override
+    public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+        long start = sampleStart();
+        return delegate.allowAll(rateLimitKeys, permits).doOnNext(allowed -> record(null, allowed, start));
+    }
+
+    /**
+     * Creates a metered service of the policy on the store of the delegate.
+     */
+    @Override
+    public RateLimitService withPolicy(RateLimitPolicy policy) {
+        return metrics.bind(policy, delegate.withPolicy(policy));
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long evictions() {
+        return delegate.evictions();
+    }
+
+    String policy() {
+        return policy;
+    }
+
+    List<RejectedKey> topRejectedKeys(int limit) {
+        return rejectedKeys.top(limit);
+    }
+
+    static long sampleStart() {
+        return (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0 ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    void record(RateLimitKey rateLimitKey, boolean decision, long start) {
+        if (start != NOT_SAMPLED) {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (decision) {
+            allowed.increment();
+        } else {
+            rejected.increment();
+            if (rateLimitKey != null) {
+                rejectedKeys.record(rateLimitKey);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MeteredRateLimitService{" +
+                "policy=" + policy +
+                ", delegate=" + delegate +
+                '}';
+    }
+}
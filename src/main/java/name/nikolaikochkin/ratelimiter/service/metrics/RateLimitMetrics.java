@@ -0,0 +1,94 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@code RateLimitMetrics} class publishes the metrics of the rate limit decisions to Micrometer.
+ *
+ * <p>Every policy is metered by its own {@link MeteredRateLimitService} around the service of the policy:</p>
+ * <ul>
+ *     <li>{@code ratelimit.decisions} - the allowed and the rejected calls, tagged by {@code outcome};</li>
+ *     <li>{@code ratelimit.decision.latency} - the latency histogram of sampled decisions;</li>
+ *     <li>{@code ratelimit.buckets} - the live buckets of local stores;</li>
+ *     <li>{@code ratelimit.evictions} - the buckets expired or evicted by local stores.</li>
+ * </ul>
+ *
+ * <p>All meters are tagged by {@code policy}. The most rejected keys are not meters, as keys would
+ * explode the number of time series, they are read through {@link #topRejectedKeys()} instead.</p>
+ */
+@Service
+public class RateLimitMetrics {
+    private static final int TRACKED_KEYS_PER_TOP_KEY = 4;
+
+    private final MeterRegistry meterRegistry;
+    private final int topKeys;
+    private final List<MeteredRateLimitService> services = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a new {@code RateLimitMetrics}.
+     *
+     * @param meterRegistry the registry of the meters
+     * @param topKeys       the number of the most rejected keys reported per policy
+     * @throws IllegalArgumentException if topKeys is not positive
+     */
+    public RateLimitMetrics(MeterRegistry meterRegistry,
+                            @Value("${application.ratelimit.metrics.top-keys:10}") int topKeys) {
+        if (topKeys <= 0) {
+            throw new IllegalArgumentException("Top keys value should be positive");
+        }
+        this.meterRegistry = meterRegistry;
+        this.topKeys = topKeys;
+    }
+
+    /**
+     * Returns a service which records the decisions of the service of the policy.
+     *
+     * @param policy           the policy of the service
+     * @param rateLimitService the service of the policy
+     * @return the metered service
+     */
+    public RateLimitService bind(RateLimitPolicy policy, RateLimitService rateLimitService) {
+        if (rateLimitService instanceof LocalRateLimitService localRateLimitService) {
+            return bind(policy, localRateLimitService);
+        }
+        MeteredRateLimitService metered = new MeteredRateLimitService(
+                rateLimitService, this, policy.name(), meterRegistry, topKeys * TRACKED_KEYS_PER_TOP_KEY);
+        services.add(metered);
+        return metered;
+    }
+
+    /**
+     * Returns a local service which records the decisions of the local service of the policy.
+     *
+     * @param policy           the policy of the service
+     * @param rateLimitService the local service of the policy
+     * @return the metered local service
+     */
+    public LocalRateLimitService bind(RateLimitPolicy policy, LocalRateLimitService rateLimitService) {
+        MeteredLocalRateLimitService metered = new MeteredLocalRateLimitService(
+                rateLimitService, this, policy.name(), meterRegistry, topKeys * TRACKED_KEYS_PER_TOP_KEY);
+        services.add(metered);
+        return metered;
+    }
+
+    /**
+     * Returns the most rejected keys of every policy, the most rejected first.
+     */
+    public Map<String, List<RejectedKey>> topRejectedKeys() {
+        Map<String, List<RejectedKey>> topRejectedKeys = new LinkedHashMap<>();
+        for (MeteredRateLimitService service : services) {
+            topRejectedKeys.put(service.policy(), service.topRejectedKeys(topKeys));
+        }
+        return topRejectedKeys;
+    }
+}
@@ -0,0 +1,10 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+/**
+ * The {@code RejectedKey} record is a key among the most rejected ones of a policy.
+ *
+ * @param key      the key
+ * @param rejected the approximate number of rejections of the key, an upper bound
+ */
+public record RejectedKey(String key, long rejected) {
+}
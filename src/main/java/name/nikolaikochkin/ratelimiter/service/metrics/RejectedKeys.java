@@ -0,0 +1,91 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code RejectedKeys} class tracks the most rejected keys of a policy with the Space-Saving algorithm.
+ *
+ * <p>At most {@code capacity} keys are counted. A new key replaces the least rejected one and inherits its
+ * count, so the count of a key is an upper bound of its rejections, and any key rejected more often than
+ * {@code 1 / capacity} of all rejections is guaranteed to be tracked.</p>
+ *
+ * <p>A rejection is skipped rather than waited for if another thread is recording one, so a flood of
+ * rejections never contends on the lock. The counts are approximate under contention.</p>
+ */
+final class RejectedKeys {
+    private final int capacity;
+    private final Map<RateLimitKey, Counter> counters; // guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Constructs a new {@code RejectedKeys}.
+     *
+     * @param capacity the maximum number of tracked keys
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    RejectedKeys(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity value should be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Records a rejection of the key, unless another rejection is being recorded.
+     */
+    void record(RateLimitKey rateLimitKey) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Counter counter = counters.get(rateLimitKey);
+            if (counter == null) {
+                counter = counters.size() < capacity ? new Counter() : removeMin();
+                counters.put(rateLimitKey, counter);
+            }
+            counter.count++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the most rejected keys, the most rejected first.
+     *
+     * @param limit the maximum number of returned keys
+     */
+    List<RejectedKey> top(int limit) {
+        List<RejectedKey> top = new ArrayList<>();
+        lock.lock();
+        try {
+            counters.forEach((rateLimitKey, counter) -> top.add(new RejectedKey(rateLimitKey.toString(), counter.count)));
+        } finally {
+            lock.unlock();
+        }
+        top.sort(Comparator.comparingLong(RejectedKey::rejected).reversed());
+        return top.size() > limit ? List.copyOf(top.subList(0, limit)) : top;
+    }
+
+    private Counter removeMin() {
+        Map.Entry<RateLimitKey, Counter> min = null;
+        for (Map.Entry<RateLimitKey, Counter> entry : counters.entrySet()) {
+            if (min == null || entry.getValue().count < min.getValue().count) {
+                min = entry;
+            }
+        }
+        counters.remove(min.getKey());
+        return min.getValue();
+    }
+
+    private static final class Counter {
+        private long count;
+    }
+}
@@ -0,0 +1,27 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code RejectedKeysEndpoint} class is the Actuator endpoint {@code /actuator/rejectedkeys}
+ * of the most rejected keys of every policy.
+ *
+ * @see RateLimitMetrics
+ */
+@Component
+@Endpoint(id = "rejectedkeys")
+@RequiredArgsConstructor
+public class RejectedKeysEndpoint {
+    private final RateLimitMetrics rateLimitMetrics;
+
+    @ReadOperation
+    public Map<String, List<RejectedKey>> rejectedKeys() {
+        return rateLimitMetrics.topRejectedKeys();
+    }
+}
@@ -0,0 +1,66 @@
+package name.nikolaikochkin.ratelimiter.service.policy;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
+import org.springframework.util.Assert;
+
+/**
+ * The {@code RateLimitPolicy} record is a named, immutable rate limit configuration,
+ * resolved once at startup by {@link RateLimitPolicyService}.
+ *
+ * <p>The policy is also the {@link RateLimiterFactory} of its limiters: all of them share
+ * the same {@link Bandwidth} instance and hold only their own mutable state.</p>
+ *
+ * @param name      the name of the policy, referenced by {@code RateLimitAsync#policy()}
+ * @param algorithm the algorithm of the limiters
+ * @param bandwidth the burst and the rate of the limiters
+ * @param cost      the number of permits consumed by a single call
+ */
+public record RateLimitPolicy(String name, RateLimitAlgorithm algorithm, Bandwidth bandwidth, int cost)
+        implements RateLimiterFactory {
+    /**
+     * The name of the policy configured by {@code application.ratelimit.permits} and {@code period}.
+     */
+    public static final String DEFAULT = "default";
+
+    /**
+     * Constructs a new {@code RateLimitPolicy}.
+     *
+     * @throws IllegalStateException if any of the values is null or blank, or cost is not positive
+     *                               or exceeds the capacity of the bandwidth
+     */
+    public RateLimitPolicy {
+        Assert.state(name != null && !name.isBlank(), "Policy name must not be blank");
+        Assert.state(algorithm != null, "Algorithm of policy " + name + " must not be null");
+        Assert.state(bandwidth != null, "Bandwidth of policy " + name + " must not be null");
+        Assert.state(cost > 0 && cost <= bandwidth.capacity(), "Cost of policy " + name + " must be positive and not exceed the burst");
+    }
+
+    /**
+     * Creates a new {@link RateLimiter} of the policy algorithm sharing the policy bandwidth.
+     *
+     * @return a new {@link RateLimiter} with all permits available
+     */
+    @Override
+    public RateLimiter createRateLimiter() {
+        return algorithm.createRateLimiter(bandwidth, clock());
+    }
+
+    @Override
+    public RateLimiter createRateLimiter(long availablePermits) {
+        return algorithm.createRateLimiter(bandwidth, clock(), availablePermits);
+    }
+
+    /**
+     * Returns the factory of the limiters of the policy which read the time from the specified clock.
+     *
+     * @param clock the clock of the limiters
+     * @return the policy itself for the system clock, otherwise a new {@link RateLimiterFactory}
+     */
+    public RateLimiterFactory withClock(NanoClock clock) {
+        return clock == NanoClock.SYSTEM ? this : RateLimiterFactory.of(algorithm, bandwidth, clock);
+    }
+}
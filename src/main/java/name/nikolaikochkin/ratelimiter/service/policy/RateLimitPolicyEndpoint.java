@@ -0,0 +1,99 @@
+package name.nikolaikochkin.ratelimiter.service.policy;
+
+import lombok.RequiredArgsConstructor;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.key.model.ClassMethodNameRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.BucketState;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * The {@code RateLimitPolicyEndpoint} class is the Actuator endpoint {@code /actuator/ratelimitpolicies}
+ * which reads and updates the rate limit policies at runtime and inspects the buckets of the keys.
+ *
+ * <p>The key of a bucket is either an IP address, the key of the web filter, or
+ * {@code fully.qualified.ClassName#methodName}, the key of {@code ClassMethodNameKeyProvider}.</p>
+ *
+ * <p>The write operation can switch the rate limiting off, so the endpoint is not exposed over HTTP by default.
+ * It should be exposed on a management port which the clients cannot reach, with {@code management.server.port}
+ * and {@code management.endpoints.web.exposure.include}.</p>
+ *
+ * @see RateLimitPolicyService
+ */
+@Component
+@Endpoint(id = "ratelimitpolicies")
+@RequiredArgsConstructor
+public class RateLimitPolicyEndpoint {
+    private final RateLimitPolicyService rateLimitPolicyService;
+
+    @ReadOperation
+    public Map<String, RateLimitPolicy> policies() {
+        Map<String, RateLimitPolicy> policies = new TreeMap<>();
+        rateLimitPolicyService.getPolicies().forEach(policy -> policies.put(policy.name(), policy));
+        return policies;
+    }
+
+    @ReadOperation
+    public RateLimitPolicy policy(@Selector String name) {
+        return invoke(() -> rateLimitPolicyService.getPolicy(name));
+    }
+
+    @ReadOperation
+    public BucketState bucket(@Selector String name, @Selector String key) {
+        return invoke(() -> rateLimitPolicyService.inspect(name, parseKey(key)));
+    }
+
+    /**
+     * Updates the bandwidth or the algorithm of the policy, the omitted values keep their current settings.
+     *
+     * @param name      the name of the policy
+     * @param permits   the number of permits replenished per period
+     * @param period    the period, such as {@code PT1M} or {@code 30s}
+     * @param burst     the maximum number of permits which can be consumed at once
+     * @param algorithm the algorithm of the limiters, such as {@code sliding-log}
+     * @return the updated policy
+     */
+    @WriteOperation
+    public RateLimitPolicy update(@Selector String name,
+                                  @Nullable Long permits,
+                                  @Nullable String period,
+                                  @Nullable Long burst,
+                                  @Nullable String algorithm) {
+        return invoke(() -> rateLimitPolicyService.updatePolicy(name,
+                permits,
+                period == null ? null : DurationStyle.detectAndParse(period),
+                burst,
+                algorithm == null ? null : RateLimitAlgorithm.of(algorithm, false)));
+    }
+
+    private static RateLimitKey parseKey(String key) {
+        int separator = key.lastIndexOf('#');
+        if (separator < 0) {
+            return new RemoteHostAddressRateLimitKey(key);
+        }
+        return new ClassMethodNameRateLimitKey(key.substring(0, separator), key.substring(separator + 1));
+    }
+
+    /**
+     * Reports the invalid arguments of an operation as a bad request rather than a server error.
+     */
+    private static <T> T invoke(Supplier<T> operation) {
+        try {
+            return operation.get();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package name.nikolaikochkin.ratelimiter.service.policy;
+
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The {@code RateLimitPolicyProperties} record binds the named policies
+ * {@code application.ratelimit.policies.<name>.*}.
+ *
+ * <p>Every value of a policy is optional: permits, period and algorithm default to the ones of the
+ * default policy, the burst defaults to the permits of the policy and the cost to a single permit.</p>
+ *
+ * @param policies the policies by their names
+ */
+@ConfigurationProperties(prefix = "application.ratelimit")
+public record RateLimitPolicyProperties(Map<String, Policy> policies) {
+
+    /**
+     * The configuration of one policy.
+     *
+     * @param permits   the number of permits replenished per period
+     * @param period    the time during which {@code permits} permits are replenished
+     * @param burst     the maximum number of permits which can be consumed at once
+     * @param algorithm the algorithm of the limiters, such as {@code sliding-log}
+     * @param cost      the number of permits consumed by a single call
+     */
+    public record Policy(Long permits, Duration period, Long burst, RateLimitAlgorithm algorithm, Integer cost) {
+    }
+}
@@ -0,0 +1,272 @@
+package name.nikolaikochkin.ratelimiter.service.policy;
+
+import lombok.extern.slf4j.Slf4j;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.BucketState;
+import name.nikolaikochkin.ratelimiter.service.limiter.InspectableRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.UpdatableRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.metrics.RateLimitMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The {@code RateLimitPolicyService} class resolves the named {@link RateLimitPolicy} instances at startup
+ * and holds the {@link RateLimitService} of every policy.
+ *
+ * <p>The default policy is the one configured by {@code application.ratelimit.permits}, {@code period},
+ * {@code algorithm} and {@code lock-free}, and it is served by the configured {@link RateLimitService} bean
+ * itself. Every named policy gets its own service of the same store, created by
+ * {@link RateLimitService#withPolicy(RateLimitPolicy)}, so the buckets of different policies never mix,
+ * even for the same key.</p>
+ *
+ * <p>The service of every policy is metered by {@link RateLimitMetrics}, unless the metrics are absent.
+ * The unmetered service of the store is kept as well, for the operations which are not decisions.</p>
+ *
+ * <p>The bandwidth and the algorithm of a policy can be updated at runtime by
+ * {@link #updatePolicy(String, Long, Duration, Long, RateLimitAlgorithm)}, if the store is an
+ * {@link UpdatableRateLimitService}, and its buckets can be inspected if the store is an
+ * {@link InspectableRateLimitService}.
+ * The buckets of the policy are carried over to the new values lazily by the store, and the cost of the policy
+ * stays as configured. The rate limit plans of the annotated methods keep the costs compiled at startup.</p>
+ *
+ * <p>All lookups are reads of immutable maps, an update replaces the map of policies.</p>
+ *
+ * @see RateLimitPolicy
+ * @see RateLimitPolicyProperties
+ */
+@Slf4j
+@Service
+public class RateLimitPolicyService {
+    private volatile RateLimitPolicy defaultPolicy;
+    private final RateLimitService defaultRateLimitService;
+    private volatile Map<String, RateLimitPolicy> policies;
+    private final Map<String, RateLimitService> rateLimitServices;
+    private final Map<String, RateLimitService> storeServices;
+
+    /**
+     * Constructs a new {@code RateLimitPolicyService} of the resolved policies without metrics.
+     *
+     * @param rateLimitService the service of the default policy, which also creates the services of the others
+     * @param defaultPolicy    the default policy
+     * @param policies         the named policies
+     * @throws IllegalStateException if a policy name is repeated or takes the name of the default policy
+     */
+    public RateLimitPolicyService(RateLimitService rateLimitService,
+                                  RateLimitPolicy defaultPolicy,
+                                  Collection<RateLimitPolicy> policies) {
+        this(rateLimitService, null, defaultPolicy, policies);
+    }
+
+    /**
+     * Constructs a new {@code RateLimitPolicyService} of the resolved policies.
+     *
+     * @param rateLimitService the service of the default policy, which also creates the services of the others
+     * @param metrics          the metrics which record the decisions of every policy, or {@code null}
+     * @param defaultPolicy    the default policy
+     * @param policies         the named policies
+     * @throws IllegalStateException if a policy name is repeated or takes the name of the default policy
+     */
+    public RateLimitPolicyService(RateLimitService rateLimitService,
+                                  RateLimitMetrics metrics,
+                                  RateLimitPolicy defaultPolicy,
+                                  Collection<RateLimitPolicy> policies) {
+        Assert.notNull(rateLimitService, "Rate limit service must not be null");
+        Assert.notNull(defaultPolicy, "Default policy must not be null");
+        Map<String, RateLimitPolicy> policyMap = new HashMap<>();
+        Map<String, RateLimitService> serviceMap = new HashMap<>();
+        Map<String, RateLimitService> storeMap = new HashMap<>();
+        RateLimitService defaultService = metered(metrics, defaultPolicy, rateLimitService);
+        policyMap.put(defaultPolicy.name(), defaultPolicy);
+        serviceMap.put(defaultPolicy.name(), defaultService);
+        storeMap.put(defaultPolicy.name(), rateLimitService);
+        for (RateLimitPolicy policy : policies) {
+            Assert.state(policyMap.putIfAbsent(policy.name(), policy) == null, "Duplicate rate limit policy: " + policy.name());
+            RateLimitService storeService = rateLimitService.withPolicy(policy);
+            serviceMap.put(policy.name(), metered(metrics, policy, storeService));
+            storeMap.put(policy.name(), storeService);
+            log.info("Rate limit policy: {}", policy);
+        }
+        this.defaultPolicy = defaultPolicy;
+        this.defaultRateLimitService = defaultService;
+        this.policies = Map.copyOf(policyMap);
+        this.rateLimitServices = Map.copyOf(serviceMap);
+        this.storeServices = Map.copyOf(storeMap);
+    }
+
+    /**
+     * Constructs a new {@code RateLimitPolicyService} from the configuration.
+     *
+     * @param rateLimitService the configured {@link RateLimitService}
+     * @param metrics          the metrics which record the decisions of every policy
+     * @param properties       the named policies
+     * @param permits          the permits of the default policy
+     * @param period           the period of the default policy
+     * @param algorithm        the algorithm of the default policy
+     * @param lockFree         whether the default token bucket is lock-free
+     * @throws IllegalStateException if a policy is invalid
+     */
+    @Autowired
+    public RateLimitPolicyService(RateLimitService rateLimitService,
+                                  RateLimitMetrics metrics,
+                                  RateLimitPolicyProperties properties,
+                                  @Value("${application.ratelimit.permits}") long permits,
+                                  @Value("${application.ratelimit.period}") Duration period,
+                                  @Value("${application.ratelimit.algorithm:token-bucket}") String algorithm,
+                                  @Value("${application.ratelimit.lock-free:false}") boolean lockFree) {
+        this(rateLimitService,
+                metrics,
+                policy(RateLimitPolicy.DEFAULT, permits, period, permits, RateLimitAlgorithm.of(algorithm, lockFree), 1),
+                resolve(properties, permits, period, RateLimitAlgorithm.of(algorithm, lockFree)));
+    }
+
+    /**
+     * Returns the policy of the name, the default policy for an empty name.
+     *
+     * @param name the name of the policy
+     * @throws IllegalStateException if there is no policy of the name
+     */
+    public RateLimitPolicy getPolicy(String name) {
+        if (name == null || name.isEmpty()) {
+            return defaultPolicy;
+        }
+        RateLimitPolicy policy = policies.get(name);
+        Assert.state(policy != null, () -> "Unknown rate limit policy: " + name);
+        return policy;
+    }
+
+    /**
+     * Returns the {@link RateLimitService} of the policy, the default one for an empty name.
+     *
+     * @param name the name of the policy
+     * @throws IllegalStateException if there is no policy of the name
+     */
+    public RateLimitService getRateLimitService(String name) {
+        if (name == null || name.isEmpty()) {
+            return defaultRateLimitService;
+        }
+        RateLimitService rateLimitService = rateLimitServices.get(name);
+        Assert.state(rateLimitService != null, () -> "Unknown rate limit policy: " + name);
+        return rateLimitService;
+    }
+
+    /**
+     * Returns all policies, including the default one.
+     */
+    public Collection<RateLimitPolicy> getPolicies() {
+        return policies.values();
+    }
+
+    /**
+     * Updates the bandwidth or the algorithm of the policy. Omitted values keep their current settings;
+     * the burst defaults to the new permits if they are updated.
+     *
+     * @param name      the name of the policy, the default policy for an empty name
+     * @param permits   the new number of permits replenished per period, or {@code null}
+     * @param period    the new period, or {@code null}; updated together with the permits
+     * @param burst     the new maximum number of permits which can be consumed at once, or {@code null}
+     * @param algorithm the new algorithm of the limiters, or {@code null}
+     * @return the updated policy
+     * @throws IllegalStateException if there is no policy of the name, only one of the permits and the period
+     *                               is specified, the new values are invalid, or the store does not support
+     *                               updates of policies
+     */
+    public synchronized RateLimitPolicy updatePolicy(String name, Long permits, Duration period, Long burst,
+                                                     RateLimitAlgorithm algorithm) {
+        RateLimitPolicy current = getPolicy(name);
+        UpdatableRateLimitService storeService = storeService(current.name(), UpdatableRateLimitService.class);
+        Assert.state((permits == null) == (period == null),
+                () -> "Permits and period of policy " + current.name() + " must be updated together");
+        RateLimitPolicy updated;
+        if (permits == null) {
+            long capacity = Objects.requireNonNullElse(burst, current.bandwidth().capacity());
+            Assert.state(capacity > 0, () -> "Burst value of policy " + current.name() + " must be positive");
+            updated = new RateLimitPolicy(current.name(),
+                    Objects.requireNonNullElse(algorithm, current.algorithm()),
+                    new Bandwidth(capacity, current.bandwidth().nanosPerPermit()),
+                    current.cost());
+        } else {
+            updated = policy(current.name(),
+                    permits,
+                    period,
+                    Objects.requireNonNullElse(burst, permits),
+                    Objects.requireNonNullElse(algorithm, current.algorithm()),
+                    current.cost());
+        }
+        storeService.updatePolicy(updated);
+        Map<String, RateLimitPolicy> policyMap = new HashMap<>(policies);
+        policyMap.put(updated.name(), updated);
+        policies = Map.copyOf(policyMap);
+        if (current == defaultPolicy) {
+            defaultPolicy = updated;
+        }
+        log.info("Rate limit policy updated: {}", updated);
+        return updated;
+    }
+
+    /**
+     * Returns the state of the bucket of the key under the policy, without consuming any permits.
+     *
+     * @param name         the name of the policy, the default policy for an empty name
+     * @param rateLimitKey the key whose bucket is inspected
+     * @throws IllegalStateException if there is no policy of the name or the store does not hold the buckets locally
+     */
+    public BucketState inspect(String name, RateLimitKey rateLimitKey) {
+        return storeService(getPolicy(name).name(), InspectableRateLimitService.class).inspect(rateLimitKey);
+    }
+
+    /**
+     * Returns the unmetered service of the store of the policy, if it supports the operations of the type.
+     */
+    private <T extends RateLimitService> T storeService(String name, Class<T> type) {
+        RateLimitService storeService = storeServices.get(name);
+        Assert.state(type.isInstance(storeService),
+                () -> storeService.getClass().getSimpleName() + " does not support " + type.getSimpleName() + " operations");
+        return type.cast(storeService);
+    }
+
+    private static RateLimitService metered(RateLimitMetrics metrics, RateLimitPolicy policy, RateLimitService rateLimitService) {
+        return metrics == null ? rateLimitService : metrics.bind(policy, rateLimitService);
+    }
+
+    private static List<RateLimitPolicy> resolve(RateLimitPolicyProperties properties,
+                                                 long defaultPermits,
+                                                 Duration defaultPeriod,
+                                                 RateLimitAlgorithm defaultAlgorithm) {
+        List<RateLimitPolicy> resolved = new ArrayList<>();
+        if (properties == null || properties.policies() == null) {
+            return resolved;
+        }
+        properties.policies().forEach((name, policy) -> {
+            long permits = Objects.requireNonNullElse(policy.permits(), defaultPermits);
+            resolved.add(policy(name,
+                    permits,
+                    Objects.requireNonNullElse(policy.period(), defaultPeriod),
+                    Objects.requireNonNullElse(policy.burst(), permits),
+                    Objects.requireNonNullElse(policy.algorithm(), defaultAlgorithm),
+                    Objects.requireNonNullElse(policy.cost(), 1)));
+        });
+        return resolved;
+    }
+
+    private static RateLimitPolicy policy(String name, long permits, Duration period, long burst,
+                                          RateLimitAlgorithm algorithm, int cost) {
+        Assert.state(permits > 0, () -> "Permits value of policy " + name + " must be positive");
+        Assert.state(burst > 0, () -> "Burst value of policy " + name + " must be positive");
+        Assert.notNull(period, () -> "Period of policy " + name + " must not be null");
+        Assert.state(period.toNanos() >= permits, () -> "Period of policy " + name + " must not be shorter than permits nanoseconds");
+        return new RateLimitPolicy(name, algorithm, Bandwidth.of(permits, period, burst), cost);
+    }
+}
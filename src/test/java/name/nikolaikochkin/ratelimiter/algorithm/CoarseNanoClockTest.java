@@ -0,0 +1,38 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoarseNanoClockTest {
+    private static final Duration RESOLUTION = Duration.ofMillis(1);
+
+    @Test
+    void followSystemTimer() throws InterruptedException {
+        try (CoarseNanoClock clock = new CoarseNanoClock(RESOLUTION)) {
+            long start = clock.nanoTime();
+            assertTrue(start <= System.nanoTime());
+            Thread.sleep(RESOLUTION.toMillis() * 20);
+            assertTrue(clock.nanoTime() > start);
+            assertTrue(clock.nanoTime() <= System.nanoTime());
+        }
+    }
+
+    @Test
+    void stopAfterClose() throws InterruptedException {
+        CoarseNanoClock clock = new CoarseNanoClock(RESOLUTION);
+        clock.close();
+        Thread.sleep(RESOLUTION.toMillis() * 5);
+        long stopped = clock.nanoTime();
+        Thread.sleep(RESOLUTION.toMillis() * 5);
+        assertEquals(stopped, clock.nanoTime());
+    }
+
+    @Test
+    void resolutionNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new CoarseNanoClock(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new CoarseNanoClock(null));
+    }
+}
@@ -0,0 +1,49 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionProbeTest {
+
+    @Test
+    void encodeAllowed() {
+        long probe = ConsumptionProbe.allowed(7, Duration.ofMillis(250).toNanos());
+        assertTrue(ConsumptionProbe.isAllowed(probe));
+        assertTrue(ConsumptionProbe.isKnown(probe));
+        assertEquals(7, ConsumptionProbe.remainingPermits(probe));
+        assertEquals(Duration.ofMillis(250).toNanos(), ConsumptionProbe.nanosToRefill(probe));
+    }
+
+    @Test
+    void encodeRejected() {
+        long probe = ConsumptionProbe.rejected(0, 1);
+        assertFalse(ConsumptionProbe.isAllowed(probe));
+        assertTrue(ConsumptionProbe.isKnown(probe));
+        assertEquals(0, ConsumptionProbe.remainingPermits(probe));
+        assertEquals(Duration.ofMillis(1).toNanos(), ConsumptionProbe.nanosToRefill(probe));
+    }
+
+    @Test
+    void saturateLargeValues() {
+        long probe = ConsumptionProbe.rejected(Long.MAX_VALUE, Long.MAX_VALUE);
+        assertFalse(ConsumptionProbe.isAllowed(probe));
+        assertTrue(ConsumptionProbe.isKnown(probe));
+        assertEquals(ConsumptionProbe.MAX_REMAINING_PERMITS, ConsumptionProbe.remainingPermits(probe));
+        assertTrue(ConsumptionProbe.nanosToRefill(probe) > Duration.ofDays(49).toNanos());
+        assertEquals(0, ConsumptionProbe.nanosToRefill(ConsumptionProbe.allowed(-1, -1)));
+    }
+
+    @Test
+    void encodeUnknownState() {
+        assertTrue(ConsumptionProbe.isAllowed(ConsumptionProbe.of(true)));
+        assertFalse(ConsumptionProbe.isKnown(ConsumptionProbe.of(true)));
+        assertFalse(ConsumptionProbe.isAllowed(ConsumptionProbe.of(false)));
+        assertFalse(ConsumptionProbe.isKnown(ConsumptionProbe.of(false)));
+        assertEquals("rejected", ConsumptionProbe.toString(ConsumptionProbe.REJECTED));
+        assertEquals("allowed(remaining=2, refill=PT0.5S)",
+                ConsumptionProbe.toString(ConsumptionProbe.allowed(2, Duration.ofMillis(500).toNanos())));
+    }
+}
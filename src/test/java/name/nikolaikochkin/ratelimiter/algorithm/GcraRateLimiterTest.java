@@ -0,0 +1,167 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcraRateLimiterTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+    private static final long EMISSION_INTERVAL_MILLIS = PERIOD.toMillis() / PERMITS;
+
+    private VirtualNanoClock clock;
+    private GcraRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualNanoClock();
+        rateLimiter = new GcraRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+    }
+
+    @Test
+    void tryConsumeOne() {
+        assertTrue(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeMany() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @Test
+    void tryConsumeOverLimit() {
+        assertFalse(rateLimiter.tryConsume(PERMITS + 1));
+    }
+
+    @Test
+    void tryConsumeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(-1));
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.nanosUntilConforming(-1));
+    }
+
+    @Test
+    void tryConsumeRefill() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.isFull());
+        clock.advance(PERIOD);
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @Test
+    void nanosUntilConforming() {
+        assertEquals(0, rateLimiter.nanosUntilConforming(PERMITS));
+        assertEquals(Long.MAX_VALUE, rateLimiter.nanosUntilConforming(PERMITS + 1));
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        long nanos = rateLimiter.nanosUntilConforming(1);
+        assertTrue(nanos > 0);
+        assertTrue(nanos <= TimeUnit.MILLISECONDS.toNanos(EMISSION_INTERVAL_MILLIS));
+        assertTrue(rateLimiter.nanosUntilConforming(PERMITS) > TimeUnit.MILLISECONDS.toNanos(PERIOD.toMillis() - EMISSION_INTERVAL_MILLIS));
+    }
+
+    @Test
+    void tryConsumeConcurrent() throws InterruptedException {
+        final int numberOfThreads = PERMITS * 2;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final AtomicInteger successfulConsumptions = new AtomicInteger();
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            executorService.execute(() -> {
+                if (rateLimiter.tryConsume(1)) {
+                    successfulConsumptions.incrementAndGet();
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(PERMITS, successfulConsumptions.get());
+    }
+
+    @Test
+    void equivalentBurstToTokenBucket() {
+        RateLimiter tokenBucket = new TokenBucketRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+        assertEquals(countAllowed(tokenBucket, PERMITS * 2), countAllowed(rateLimiter, PERMITS * 2));
+    }
+
+    @Test
+    void equivalentRefillToTokenBucket() {
+        RateLimiter tokenBucket = new TokenBucketRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+        assertTrue(tokenBucket.tryConsume(PERMITS));
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        clock.advance(Duration.ofMillis(EMISSION_INTERVAL_MILLIS * 5 + EMISSION_INTERVAL_MILLIS / 2));
+        assertEquals(countAllowed(tokenBucket, PERMITS), countAllowed(rateLimiter, PERMITS), 1);
+    }
+
+    @Test
+    void equivalentRandomTrafficToTokenBucket() {
+        RateLimiter tokenBucket = new TokenBucketRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+        Random random = new Random(42);
+        int tokenBucketAllowed = 0;
+        int gcraAllowed = 0;
+        for (int i = 0; i < 50; i++) {
+            clock.advance(Duration.ofMillis(random.nextInt((int) EMISSION_INTERVAL_MILLIS * 2)));
+            int requests = random.nextInt(4);
+            tokenBucketAllowed += countAllowed(tokenBucket, requests);
+            gcraAllowed += countAllowed(rateLimiter, requests);
+        }
+        assertEquals(tokenBucketAllowed, gcraAllowed, 2);
+    }
+
+    private static int countAllowed(RateLimiter rateLimiter, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (rateLimiter.tryConsume()) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    @Test
+    void refundUpToCapacity() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        rateLimiter.refund(2);
+        assertTrue(rateLimiter.tryConsume(2));
+        assertFalse(rateLimiter.tryConsume(1));
+        rateLimiter.refund(PERMITS * 2);
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryReserveWithinMaxWait() {
+        long nanosPerPermit = PERIOD.toNanos() / PERMITS;
+        assertEquals(0, rateLimiter.tryReserve(PERMITS, 0));
+        long first = rateLimiter.tryReserve(1, 2 * nanosPerPermit);
+        assertTrue(first > 0 && first <= nanosPerPermit);
+        long second = rateLimiter.tryReserve(1, 2 * nanosPerPermit);
+        assertTrue(second > first && second <= 2 * nanosPerPermit);
+        assertEquals(RateLimiter.NOT_RESERVED, rateLimiter.tryReserve(1, 2 * nanosPerPermit));
+        assertFalse(rateLimiter.tryConsume(1));
+        assertFalse(rateLimiter.isFull());
+    }
+
+    @Test
+    void availablePermitsAndNextPermit() {
+        assertEquals(PERMITS, rateLimiter.availablePermits());
+        assertEquals(0, rateLimiter.nanosToNextPermit());
+        assertTrue(rateLimiter.tryConsume(PERMITS - 1));
+        assertEquals(1, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryConsume(1));
+        assertEquals(0, rateLimiter.availablePermits());
+        long nanosToNextPermit = rateLimiter.nanosToNextPermit();
+        assertTrue(nanosToNextPermit > 0 && nanosToNextPermit <= PERIOD.toNanos() / PERMITS);
+    }
+}
@@ -0,0 +1,37 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitAlgorithmTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void createWithAvailablePermits(RateLimitAlgorithm algorithm) {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        RateLimiter rateLimiter = algorithm.createRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock, 5);
+        assertEquals(5, rateLimiter.availablePermits());
+        assertFalse(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(5));
+        assertFalse(rateLimiter.tryConsume(1));
+        clock.advance(PERIOD.multipliedBy(2));
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void createWithAvailablePermitsAboveCapacity(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = algorithm.createRateLimiter(Bandwidth.of(PERMITS, PERIOD), new VirtualNanoClock(), PERMITS * 2);
+        assertTrue(rateLimiter.isFull());
+        assertEquals(PERMITS, rateLimiter.availablePermits());
+        assertThrows(IllegalArgumentException.class,
+                () -> algorithm.createRateLimiter(Bandwidth.of(PERMITS, PERIOD), new VirtualNanoClock(), -1));
+    }
+}
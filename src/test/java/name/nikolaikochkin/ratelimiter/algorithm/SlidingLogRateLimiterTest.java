@@ -0,0 +1,134 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingLogRateLimiterTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    private VirtualNanoClock clock;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualNanoClock();
+        rateLimiter = new SlidingLogRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+    }
+
+    @Test
+    void tryConsumeOne() {
+        assertTrue(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeManyInCycle() {
+        for (int i = 0; i < PERMITS; i++) {
+            assertTrue(rateLimiter.tryConsume(1));
+        }
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeOverLimit() {
+        assertFalse(rateLimiter.tryConsume(PERMITS + 1));
+    }
+
+    @Test
+    void tryConsumeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(-1));
+    }
+
+    @Test
+    void tryConsumeSlidingWindow() {
+        assertTrue(rateLimiter.tryConsume(PERMITS / 2));
+        clock.advance(PERIOD.dividedBy(2));
+        assertTrue(rateLimiter.tryConsume(PERMITS / 2));
+        assertFalse(rateLimiter.tryConsume(1));
+        clock.advance(PERIOD.dividedBy(2).plusMillis(50));
+        // Only the first half has left the window
+        assertTrue(rateLimiter.tryConsume(PERMITS / 2));
+        assertFalse(rateLimiter.tryConsume(1));
+        assertFalse(rateLimiter.isFull());
+    }
+
+    @Test
+    void tryConsumeConcurrent() throws InterruptedException {
+        final int numberOfThreads = PERMITS * 2;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final AtomicInteger successfulConsumptions = new AtomicInteger();
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            executorService.execute(() -> {
+                if (rateLimiter.tryConsume(1)) {
+                    successfulConsumptions.incrementAndGet();
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(PERMITS, successfulConsumptions.get());
+    }
+
+    @Test
+    void refundUpToCapacity() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        rateLimiter.refund(2);
+        assertTrue(rateLimiter.tryConsume(2));
+        assertFalse(rateLimiter.tryConsume(1));
+        rateLimiter.refund(PERMITS * 2);
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void availablePermitsAndNextPermit() {
+        assertEquals(PERMITS, rateLimiter.availablePermits());
+        assertEquals(0, rateLimiter.nanosToNextPermit());
+        assertTrue(rateLimiter.tryConsume(PERMITS - 1));
+        assertEquals(1, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryConsume(1));
+        assertEquals(0, rateLimiter.availablePermits());
+        long nanosToNextPermit = rateLimiter.nanosToNextPermit();
+        assertTrue(nanosToNextPermit > 0 && nanosToNextPermit <= PERIOD.toNanos());
+    }
+
+    @Test
+    void keepOrderOfTimestampsWhenLogGrows() {
+        assertTrue(rateLimiter.tryConsume(6));
+        clock.advance(Duration.ofMillis(400));
+        assertTrue(rateLimiter.tryConsume(2));
+        clock.advance(Duration.ofMillis(600));
+        // The first six have left the window, the next ones wrap around the ring before it grows
+        assertTrue(rateLimiter.tryConsume(6));
+        assertTrue(rateLimiter.tryConsume(1));
+        assertEquals(PERMITS - 9, rateLimiter.availablePermits());
+        assertEquals(Duration.ofMillis(400).toNanos(), rateLimiter.nanosToNextPermit());
+        clock.advance(Duration.ofMillis(400));
+        assertEquals(PERMITS - 7, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryConsume(PERMITS - 7));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeAndProbe() {
+        long allowed = rateLimiter.tryConsumeAndProbe(PERMITS - 1);
+        assertTrue(ConsumptionProbe.isAllowed(allowed));
+        assertEquals(1, ConsumptionProbe.remainingPermits(allowed));
+
+        long rejected = rateLimiter.tryConsumeAndProbe(2);
+        assertFalse(ConsumptionProbe.isAllowed(rejected));
+        assertEquals(1, ConsumptionProbe.remainingPermits(rejected));
+        assertTrue(ConsumptionProbe.nanosToRefill(rejected) > 0 && ConsumptionProbe.nanosToRefill(rejected) <= PERIOD.toNanos());
+    }
+}
@@ -0,0 +1,108 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterRateLimiterTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    private VirtualNanoClock clock;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualNanoClock();
+        rateLimiter = new SlidingWindowCounterRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+    }
+
+    @Test
+    void tryConsumeOne() {
+        assertTrue(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeMany() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @Test
+    void tryConsumeOverLimit() {
+        assertFalse(rateLimiter.tryConsume(PERMITS + 1));
+    }
+
+    @Test
+    void tryConsumeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(-1));
+    }
+
+    @Test
+    void tryConsumeAtWindowEdge() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(1));
+        clock.advance(PERIOD.plus(PERIOD.dividedBy(4)));
+        // Most of the previous window is still covered by the sliding window, so there is no new burst
+        assertFalse(rateLimiter.tryConsume(PERMITS));
+        assertTrue(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void tryConsumeAfterTwoWindows() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.isFull());
+        clock.advance(PERIOD.multipliedBy(2));
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @Test
+    void tryConsumeConcurrent() throws InterruptedException {
+        final int numberOfThreads = PERMITS * 2;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final AtomicInteger successfulConsumptions = new AtomicInteger();
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            executorService.execute(() -> {
+                if (rateLimiter.tryConsume(1)) {
+                    successfulConsumptions.incrementAndGet();
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(PERMITS, successfulConsumptions.get());
+    }
+
+    @Test
+    void refundUpToCapacity() {
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        rateLimiter.refund(2);
+        assertTrue(rateLimiter.tryConsume(2));
+        assertFalse(rateLimiter.tryConsume(1));
+        rateLimiter.refund(PERMITS * 2);
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @Test
+    void availablePermitsAndNextPermit() {
+        assertEquals(PERMITS, rateLimiter.availablePermits());
+        assertEquals(0, rateLimiter.nanosToNextPermit());
+        assertTrue(rateLimiter.tryConsume(PERMITS - 1));
+        assertEquals(1, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryConsume(1));
+        assertEquals(0, rateLimiter.availablePermits());
+        long nanosToNextPermit = rateLimiter.nanosToNextPermit();
+        assertTrue(nanosToNextPermit > 0 && nanosToNextPermit <= PERIOD.toNanos());
+    }
+}
@@ -1,8 +1,13 @@
 package name.nikolaikochkin.ratelimiter.algorithm;
 
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.time.Duration;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -16,52 +21,72 @@ class TokenBucketRateLimiterTest {
     private static final int PERMITS = 20;
     private static final Duration PERIOD = Duration.ofSeconds(1);
 
-    private RateLimiter rateLimiter;
+    private VirtualNanoClock clock;
 
+    /**
+     * Runs the test against both the synchronized and the lock-free token bucket.
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @ParameterizedTest
+    @EnumSource(value = RateLimitAlgorithm.class, names = {"TOKEN_BUCKET", "LOCK_FREE_TOKEN_BUCKET"})
+    private @interface TokenBucketTest {
+    }
 
     @BeforeEach
     void setUp() {
-        rateLimiter = new TokenBucketRateLimiter(PERMITS, PERIOD);
+        clock = new VirtualNanoClock();
+    }
+
+    private RateLimiter rateLimiter(RateLimitAlgorithm algorithm) {
+        return algorithm.createRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
     }
 
-    @Test
-    void tryConsumeOne() {
+    @TokenBucketTest
+    void tryConsumeOne(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         assertTrue(rateLimiter.tryConsume(1));
     }
 
-    @Test
-    void tryConsumeMany() {
+    @TokenBucketTest
+    void tryConsumeMany(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         assertTrue(rateLimiter.tryConsume(PERMITS));
     }
 
-    @Test
-    void tryConsumeManyInCycle() {
+    @TokenBucketTest
+    void tryConsumeManyInCycle(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         for (int i = 0; i < PERMITS; i++) {
             assertTrue(rateLimiter.tryConsume(1));
         }
     }
 
-    @Test
-    void tryConsumeOverLimit() {
+    @TokenBucketTest
+    void tryConsumeOverLimit(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         assertFalse(rateLimiter.tryConsume(PERMITS + 1));
     }
 
-    @Test
-    void tryConsumeNegative() {
+    @TokenBucketTest
+    void tryConsumeNegative(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsume(-1));
     }
 
-    @Test
-    void tryConsumeRefill() throws InterruptedException {
+    @TokenBucketTest
+    void tryConsumeRefill(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         assertTrue(rateLimiter.tryConsume(PERMITS));
         assertFalse(rateLimiter.tryConsume(PERMITS));
-        Thread.sleep(PERIOD.toMillis());
+        clock.advance(PERIOD);
         assertTrue(rateLimiter.tryConsume(PERMITS));
         assertFalse(rateLimiter.tryConsume(PERMITS));
     }
 
-    @Test
-    void tryConsumeConcurrent() throws InterruptedException {
+    @TokenBucketTest
+    void tryConsumeConcurrent(RateLimitAlgorithm algorithm) throws InterruptedException {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         final int numberOfThreads = PERMITS * 2;
         final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
         final AtomicInteger successfulConsumptions = new AtomicInteger();
@@ -79,8 +104,9 @@ class TokenBucketRateLimiterTest {
         assertEquals(PERMITS, successfulConsumptions.get());
     }
 
-    @Test
-    void tryConsumeConcurrentRefill() throws InterruptedException {
+    @TokenBucketTest
+    void tryConsumeConcurrentRefill(RateLimitAlgorithm algorithm) throws InterruptedException {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
         final ExecutorService executorService = Executors.newFixedThreadPool(PERMITS);
         final AtomicInteger successfulConsumptions = new AtomicInteger();
         final CountDownLatch latch = new CountDownLatch(PERMITS);
@@ -95,7 +121,7 @@ class TokenBucketRateLimiterTest {
 
         // Wait for tokens to refill
         latch.await();
-        Thread.sleep(PERIOD.toMillis());
+        clock.advance(PERIOD);
 
         // Attempt to consume tokens again
         for (int i = 0; i < PERMITS; i++) {
@@ -110,4 +136,76 @@ class TokenBucketRateLimiterTest {
         assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
         assertEquals(PERMITS, successfulConsumptions.get());
     }
-}
\ No newline at end of file
+
+    @TokenBucketTest
+    void refundUpToCapacity(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        rateLimiter.refund(2);
+        assertTrue(rateLimiter.tryConsume(2));
+        assertFalse(rateLimiter.tryConsume(1));
+        rateLimiter.refund(PERMITS * 2);
+        assertTrue(rateLimiter.isFull());
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+
+    @TokenBucketTest
+    void burstOfSharedBandwidth(RateLimitAlgorithm algorithm) {
+        Bandwidth bandwidth = Bandwidth.of(1, PERIOD, PERMITS);
+        RateLimiter first = algorithm.createRateLimiter(bandwidth);
+        RateLimiter second = algorithm.createRateLimiter(bandwidth);
+        assertTrue(first.tryConsume(PERMITS));
+        assertFalse(first.tryConsume(1));
+        assertTrue(second.tryConsume(PERMITS));
+        assertEquals(PERIOD.toNanos(), bandwidth.nanosPerPermit());
+    }
+
+    @TokenBucketTest
+    void tryReserveWithinMaxWait(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
+        long nanosPerPermit = PERIOD.toNanos() / PERMITS;
+        assertEquals(0, rateLimiter.tryReserve(PERMITS, 0));
+        long first = rateLimiter.tryReserve(1, 2 * nanosPerPermit);
+        assertTrue(first > 0 && first <= nanosPerPermit);
+        long second = rateLimiter.tryReserve(1, 2 * nanosPerPermit);
+        assertTrue(second > first && second <= 2 * nanosPerPermit);
+        assertEquals(RateLimiter.NOT_RESERVED, rateLimiter.tryReserve(1, 2 * nanosPerPermit));
+        assertFalse(rateLimiter.tryConsume(1));
+        assertFalse(rateLimiter.isFull());
+    }
+
+    @TokenBucketTest
+    void availablePermitsAndNextPermit(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
+        assertEquals(PERMITS, rateLimiter.availablePermits());
+        assertEquals(0, rateLimiter.nanosToNextPermit());
+        assertTrue(rateLimiter.tryConsume(PERMITS - 1));
+        assertEquals(1, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryConsume(1));
+        assertEquals(0, rateLimiter.availablePermits());
+        long nanosToNextPermit = rateLimiter.nanosToNextPermit();
+        assertTrue(nanosToNextPermit > 0 && nanosToNextPermit <= PERIOD.toNanos() / PERMITS);
+    }
+
+    @TokenBucketTest
+    void tryConsumeAndProbe(RateLimitAlgorithm algorithm) {
+        RateLimiter rateLimiter = rateLimiter(algorithm);
+        long nanosPerPermit = PERIOD.toNanos() / PERMITS;
+        long allowed = rateLimiter.tryConsumeAndProbe(PERMITS);
+        assertTrue(ConsumptionProbe.isAllowed(allowed));
+        assertTrue(ConsumptionProbe.isKnown(allowed));
+        assertEquals(0, ConsumptionProbe.remainingPermits(allowed));
+        assertTrue(ConsumptionProbe.nanosToRefill(allowed) > 0 && ConsumptionProbe.nanosToRefill(allowed) <= nanosPerPermit);
+
+        long rejected = rateLimiter.tryConsumeAndProbe(PERMITS);
+        assertFalse(ConsumptionProbe.isAllowed(rejected));
+        assertTrue(ConsumptionProbe.remainingPermits(rejected) < PERMITS);
+        assertTrue(ConsumptionProbe.nanosToRefill(rejected) > 0 && ConsumptionProbe.nanosToRefill(rejected) <= PERIOD.toNanos());
+
+        long never = rateLimiter.tryConsumeAndProbe(PERMITS + 1);
+        assertFalse(ConsumptionProbe.isAllowed(never));
+        assertTrue(ConsumptionProbe.nanosToRefill(never) > Duration.ofDays(1).toNanos());
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryConsumeAndProbe(-1));
+    }
+}
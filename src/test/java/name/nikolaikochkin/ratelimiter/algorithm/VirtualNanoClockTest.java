@@ -0,0 +1,40 @@
+package name.nikolaikochkin.ratelimiter.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualNanoClockTest {
+
+    @Test
+    void advance() {
+        VirtualNanoClock clock = new VirtualNanoClock(100);
+        assertEquals(100, clock.nanoTime());
+        assertEquals(150, clock.advance(50));
+        assertEquals(150 + Duration.ofMillis(1).toNanos(), clock.advance(Duration.ofMillis(1)));
+        assertEquals(150 + Duration.ofMillis(1).toNanos(), clock.nanoTime());
+    }
+
+    @Test
+    void advanceNegative() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        assertThrows(IllegalArgumentException.class, () -> clock.advance(-1));
+        assertThrows(IllegalArgumentException.class, () -> clock.advance(Duration.ofNanos(-1)));
+        assertThrows(IllegalArgumentException.class, () -> clock.advance(null));
+        assertEquals(0, clock.nanoTime());
+    }
+
+    @Test
+    void replenishRateLimiter() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        RateLimiter rateLimiter = new TokenBucketRateLimiter(Bandwidth.of(10, Duration.ofSeconds(1)), clock);
+        assertTrue(rateLimiter.tryConsume(10));
+        clock.advance(Duration.ofMillis(50));
+        assertFalse(rateLimiter.tryConsume(1));
+        clock.advance(Duration.ofMillis(60));
+        assertTrue(rateLimiter.tryConsume(1));
+        assertFalse(rateLimiter.tryConsume(1));
+    }
+}
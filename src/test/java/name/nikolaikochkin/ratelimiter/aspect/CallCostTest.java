@@ -0,0 +1,53 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.Test;
+import reactor.util.context.Context;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CallCostTest {
+    private static final int UNIT_COST = 2;
+
+    @SuppressWarnings("unused")
+    void batch(List<String> items, Map<String, String> attributes, byte[] payload, int count, String name) {
+    }
+
+    @Test
+    void costProportionalToArgumentSize() throws NoSuchMethodException {
+        Method method = getClass().getDeclaredMethod("batch", List.class, Map.class, byte[].class, int.class, String.class);
+        ProceedingJoinPoint joinPoint = joinPoint(List.of("a", "b", "c"), Map.of("a", "b"), new byte[5], 7, "name");
+        assertEquals(3 * UNIT_COST, CallCost.ofArgument(method, "items", UNIT_COST).of(joinPoint, Context.empty()));
+        assertEquals(UNIT_COST, CallCost.ofArgument(method, "attributes", UNIT_COST).of(joinPoint, Context.empty()));
+        assertEquals(5 * UNIT_COST, CallCost.ofArgument(method, "payload", UNIT_COST).of(joinPoint, Context.empty()));
+        assertEquals(7 * UNIT_COST, CallCost.ofArgument(method, "count", UNIT_COST).of(joinPoint, Context.empty()));
+    }
+
+    @Test
+    void costAtLeastOneUnit() throws NoSuchMethodException {
+        Method method = getClass().getDeclaredMethod("batch", List.class, Map.class, byte[].class, int.class, String.class);
+        ProceedingJoinPoint joinPoint = joinPoint(List.of(), null, new byte[0], -1, "name");
+        assertEquals(UNIT_COST, CallCost.ofArgument(method, "items", UNIT_COST).of(joinPoint, Context.empty()));
+        assertEquals(UNIT_COST, CallCost.ofArgument(method, "attributes", UNIT_COST).of(joinPoint, Context.empty()));
+        assertEquals(UNIT_COST, CallCost.ofArgument(method, "count", UNIT_COST).of(joinPoint, Context.empty()));
+    }
+
+    @Test
+    void rejectArgumentWithoutSize() throws NoSuchMethodException {
+        Method method = getClass().getDeclaredMethod("batch", List.class, Map.class, byte[].class, int.class, String.class);
+        assertThrows(IllegalStateException.class, () -> CallCost.ofArgument(method, "name", UNIT_COST));
+        assertThrows(IllegalStateException.class, () -> CallCost.ofArgument(method, "unknown", UNIT_COST));
+    }
+
+    private static ProceedingJoinPoint joinPoint(Object... args) {
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getArgs()).thenReturn(args);
+        return joinPoint;
+    }
+}
@@ -0,0 +1,235 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.algorithm.VirtualNanoClock;
+import name.nikolaikochkin.ratelimiter.exception.RateLimitExceededException;
+import name.nikolaikochkin.ratelimiter.service.cost.RateLimitCostService;
+import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.RateLimitKeyService;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.provider.ClassMethodNameKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RateLimitKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.key.provider.SynchronousRateLimitKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyProperties;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicyService;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitAspectTest {
+    private static final int PERMITS = 2;
+    private static final Duration PERIOD = Duration.ofSeconds(2);
+
+    private VirtualNanoClock clock;
+    private InMemoryRateLimitService rateLimitService;
+    private RateLimitPolicyService rateLimitPolicyService;
+    private CountingKeyService rateLimitKeyService;
+    private Target target;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualNanoClock();
+        rateLimitService = new InMemoryRateLimitService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD, false, clock));
+        rateLimitPolicyService = new RateLimitPolicyService(rateLimitService, null, new RateLimitPolicyProperties(Map.of()),
+                PERMITS, PERIOD, "token-bucket", false);
+        rateLimitKeyService = new CountingKeyService(List.of(
+                new ClassMethodNameKeyProvider(), new ArgumentKeyProvider(), new SynchronousArgumentKeyProvider()));
+        RateLimitAspect aspect = new RateLimitAspect(rateLimitPolicyService, rateLimitKeyService, new RateLimitCostService(List.of()));
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new Target());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(aspect);
+        target = proxyFactory.getProxy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimitService.close();
+    }
+
+    @Test
+    void compilePlanOncePerMethod() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.synchronous("1.1.1." + i)).expectNext("synchronous").verifyComplete();
+        }
+        assertEquals(1, rateLimitKeyService.compiledPlans.get());
+        StepVerifier.create(target.reactive("1.1.1.1")).expectNext("reactive").verifyComplete();
+        assertEquals(2, rateLimitKeyService.compiledPlans.get());
+    }
+
+    @Test
+    void limitSameKeyOnSynchronousAndReactivePaths() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.synchronous("1.1.1.1")).expectNext("synchronous").verifyComplete();
+        }
+        StepVerifier.create(target.reactive("1.1.1.1")).verifyError(RateLimitExceededException.class);
+        StepVerifier.create(target.reactive("2.2.2.2")).expectNext("reactive").verifyComplete();
+        StepVerifier.create(target.synchronous("2.2.2.2")).expectNext("synchronous").verifyComplete();
+        StepVerifier.create(target.synchronous("2.2.2.2")).verifyError(RateLimitExceededException.class);
+    }
+
+    @Test
+    void limitAllKeysTogether() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.allKeys("1.1.1.1")).expectNext("all").verifyComplete();
+        }
+        StepVerifier.create(target.allKeys("2.2.2.2")).verifyError(RateLimitExceededException.class);
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.synchronous("2.2.2.2")).expectNext("synchronous").verifyComplete();
+        }
+    }
+
+    @Test
+    void limitAllKeysResolvedReactively() {
+        StepVerifier.create(target.allKeysReactive("1.1.1.1")).expectNext("all").verifyComplete();
+        StepVerifier.create(target.allKeysReactive("2.2.2.2")).expectNext("all").verifyComplete();
+        StepVerifier.create(target.allKeysReactive("3.3.3.3")).verifyError(RateLimitExceededException.class);
+        assertTrue(rateLimitService.tryAcquire(new RemoteHostAddressRateLimitKey("3.3.3.3"), PERMITS));
+    }
+
+    @Test
+    void consumeCostOfCall() {
+        StepVerifier.create(target.expensive("1.1.1.1")).expectNext("expensive").verifyComplete();
+        StepVerifier.create(target.expensive("1.1.1.1")).verifyError(RateLimitExceededException.class);
+        assertFalse(rateLimitService.tryAcquire(new RemoteHostAddressRateLimitKey("1.1.1.1"), 1));
+    }
+
+    @Test
+    void delayCallByReservedWait() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.delayed("1.1.1.1")).expectNext("delayed").verifyComplete();
+        }
+        StepVerifier.withVirtualTime(() -> target.delayed("1.1.1.1"))
+                .expectSubscription()
+                .expectNoEvent(PERIOD.dividedBy(PERMITS).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("delayed")
+                .verifyComplete();
+    }
+
+    @Test
+    void rejectDelayedCallsAboveMaxPending() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.delayed("1.1.1.1")).expectNext("delayed").verifyComplete();
+        }
+        Disposable pending = target.delayed("1.1.1.1").subscribe();
+        StepVerifier.create(target.delayed("1.1.1.1")).verifyError(RateLimitExceededException.class);
+        pending.dispose();
+    }
+
+    @Test
+    void refundPermitsOfCancelledDelayedCall() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(target.delayed("1.1.1.1")).expectNext("delayed").verifyComplete();
+        }
+        target.delayed("1.1.1.1").subscribe().dispose();
+        clock.advance(PERIOD.dividedBy(PERMITS));
+        assertTrue(rateLimitService.tryAcquire(new RemoteHostAddressRateLimitKey("1.1.1.1"), 1));
+    }
+
+    @Test
+    void rejectCallsAndElementsAboveUpdatedBurst() {
+        rateLimitPolicyService.updatePolicy(RateLimitPolicy.DEFAULT, null, null, 1L, null);
+        StepVerifier.create(target.expensiveDelayed("1.1.1.1")).verifyError(RateLimitExceededException.class);
+        StepVerifier.create(target.paced("2.2.2.2")).verifyError(IllegalArgumentException.class);
+    }
+
+    /**
+     * The key of the first argument of a call, resolved reactively.
+     */
+    static class ArgumentKeyProvider implements RateLimitKeyProvider {
+        @Override
+        public Mono<RateLimitKey> getRateLimitKey(ProceedingJoinPoint joinPoint) {
+            return Mono.fromCallable(() -> new RemoteHostAddressRateLimitKey((String) joinPoint.getArgs()[0]));
+        }
+    }
+
+    /**
+     * The key of the first argument of a call, resolved in place.
+     */
+    static class SynchronousArgumentKeyProvider implements SynchronousRateLimitKeyProvider {
+        @Override
+        public Mono<RateLimitKey> getRateLimitKey(ProceedingJoinPoint joinPoint) {
+            return Mono.fromCallable(() -> resolveRateLimitKey(joinPoint, null));
+        }
+
+        @Override
+        public RateLimitKey resolveRateLimitKey(ProceedingJoinPoint joinPoint, ContextView contextView) {
+            return new RemoteHostAddressRateLimitKey((String) joinPoint.getArgs()[0]);
+        }
+    }
+
+    /**
+     * Counts the plans compiled by the aspect, each of them resolves the providers once.
+     */
+    static class CountingKeyService extends RateLimitKeyService {
+        private final AtomicInteger compiledPlans = new AtomicInteger();
+
+        CountingKeyService(List<RateLimitKeyProvider> providers) {
+            super(providers);
+        }
+
+        @Override
+        public RateLimitKeyProvider[] getRateLimitKeyProviders(Class<? extends RateLimitKeyProvider>[] classes) {
+            compiledPlans.incrementAndGet();
+            return super.getRateLimitKeyProviders(classes);
+        }
+    }
+
+    static class Target {
+        @RateLimitAsync(SynchronousArgumentKeyProvider.class)
+        public Mono<String> synchronous(String address) {
+            return Mono.just("synchronous");
+        }
+
+        @RateLimitAsync(ArgumentKeyProvider.class)
+        public Mono<String> reactive(String address) {
+            return Mono.just("reactive");
+        }
+
+        @RateLimitAsync(value = {SynchronousArgumentKeyProvider.class, ClassMethodNameKeyProvider.class}, mode = KeyMode.ALL)
+        public Mono<String> allKeys(String address) {
+            return Mono.just("all");
+        }
+
+        @RateLimitAsync(value = {ArgumentKeyProvider.class, ClassMethodNameKeyProvider.class}, mode = KeyMode.ALL)
+        public Mono<String> allKeysReactive(String address) {
+            return Mono.just("all");
+        }
+
+        @RateLimitAsync(value = SynchronousArgumentKeyProvider.class, onExceed = OnExceed.DELAY, maxDelay = "2s", maxPending = 1)
+        public Mono<String> delayed(String address) {
+            return Mono.just("delayed");
+        }
+
+        @RateLimitAsync(value = SynchronousArgumentKeyProvider.class, onExceed = OnExceed.DELAY, cost = PERMITS)
+        public Mono<String> expensiveDelayed(String address) {
+            return Mono.just("expensive");
+        }
+
+        @RateLimitAsync(value = SynchronousArgumentKeyProvider.class, elementCost = PERMITS)
+        public Flux<String> paced(String address) {
+            return Flux.just("element");
+        }
+
+        @RateLimitAsync(value = SynchronousArgumentKeyProvider.class, cost = PERMITS)
+        public Mono<String> expensive(String address) {
+            return Mono.just("expensive");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package name.nikolaikochkin.ratelimiter.aspect;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReservationsTest {
+    private static final long MAX_DELAY_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private record Key(String s) implements RateLimitKey {
+    }
+
+    @Test
+    void boundPendingCallsPerKey() {
+        Reservations reservations = new Reservations(MAX_DELAY_NANOS, 2);
+        Key key = new Key("1.1.1.1");
+        assertTrue(reservations.tryEnter(key));
+        assertTrue(reservations.tryEnter(key));
+        assertFalse(reservations.tryEnter(key));
+        assertTrue(reservations.tryEnter(new Key("2.2.2.2")));
+        assertEquals(2, reservations.pending(key));
+
+        reservations.leave(key);
+        assertTrue(reservations.tryEnter(key));
+        reservations.leave(key);
+        reservations.leave(key);
+        assertEquals(0, reservations.pending(key));
+    }
+
+    @Test
+    void rejectInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new Reservations(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Reservations(MAX_DELAY_NANOS, 0));
+    }
+}
@@ -0,0 +1,148 @@
+package name.nikolaikochkin.ratelimiter.filter;
+
+import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.provider.RemoteHostAddressKeyProvider;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.RateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitWebFilterTest {
+    private static final int PERMITS = 3;
+    private static final Duration PERIOD = Duration.ofMinutes(1);
+
+    private RateLimitWebFilter webFilter;
+    private AtomicInteger dispatched;
+    private WebFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        webFilter = new RateLimitWebFilter(
+                new InMemoryRateLimitService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD)),
+                new RemoteHostAddressKeyProvider(),
+                new RequestPathMatcher(List.of("/api/limit/**")));
+        dispatched = new AtomicInteger();
+        chain = exchange -> Mono.fromRunnable(dispatched::incrementAndGet);
+    }
+
+    @Test
+    void rejectWithTooManyRequestsAfterLimitExceeded() {
+        for (int i = 0; i < PERMITS; i++) {
+            MockServerWebExchange exchange = exchange("/api/limit/controller", "1.1.1.1");
+            StepVerifier.create(webFilter.filter(exchange, chain)).verifyComplete();
+            assertNull(exchange.getResponse().getStatusCode());
+            assertEquals(String.valueOf(PERMITS - 1 - i), exchange.getResponse().getHeaders().getFirst(RateLimitHeaders.REMAINING));
+        }
+        MockServerWebExchange exchange = exchange("/api/limit/controller", "1.1.1.1");
+        StepVerifier.create(webFilter.filter(exchange, chain)).verifyComplete();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+        assertEquals(PERMITS, dispatched.get());
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertEquals("0", headers.getFirst(RateLimitHeaders.REMAINING));
+        long retryAfter = Long.parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        assertTrue(retryAfter > 0 && retryAfter <= PERIOD.toSeconds() / PERMITS);
+        assertEquals(headers.getFirst(HttpHeaders.RETRY_AFTER), headers.getFirst(RateLimitHeaders.RESET));
+    }
+
+    @Test
+    void limitClientsSeparately() {
+        for (int i = 0; i < PERMITS; i++) {
+            StepVerifier.create(webFilter.filter(exchange("/api/limit/controller", "1.1.1.1"), chain)).verifyComplete();
+        }
+        MockServerWebExchange exchange = exchange("/api/limit/controller", "2.2.2.2");
+        StepVerifier.create(webFilter.filter(exchange, chain)).verifyComplete();
+        assertNull(exchange.getResponse().getStatusCode());
+        assertEquals(PERMITS + 1, dispatched.get());
+    }
+
+    @Test
+    void skipNotMatchingPaths() {
+        for (int i = 0; i < PERMITS * 2; i++) {
+            StepVerifier.create(webFilter.filter(exchange("/api/unlimited", "1.1.1.1"), chain)).verifyComplete();
+        }
+        assertEquals(PERMITS * 2, dispatched.get());
+    }
+
+    @Test
+    void rejectUnknownClientWithBadRequest() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/limit/controller"));
+        StepVerifier.create(webFilter.filter(exchange, chain)).verifyComplete();
+        assertEquals(HttpStatus.BAD_REQUEST, exchange.getResponse().getStatusCode());
+        assertEquals(0, dispatched.get());
+    }
+
+    @Test
+    void runAtConfiguredOrder() {
+        assertEquals(Ordered.HIGHEST_PRECEDENCE, webFilter.getOrder());
+        RateLimitWebFilter orderedFilter = new RateLimitWebFilter(
+                new InMemoryRateLimitService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD)),
+                new RemoteHostAddressKeyProvider(),
+                new RequestPathMatcher(List.of("/api/limit/**")),
+                10);
+        assertEquals(10, orderedFilter.getOrder());
+    }
+
+    @Test
+    void estimateRetryAfterOfRemoteRejection() {
+        RateLimitWebFilter remoteFilter = new RateLimitWebFilter(
+                new DenyingRemote(),
+                new RemoteHostAddressKeyProvider(),
+                new RequestPathMatcher(List.of("/api/limit/**")),
+                Ordered.HIGHEST_PRECEDENCE,
+                () -> Duration.ofMillis(1500).toNanos());
+        MockServerWebExchange exchange = exchange("/api/limit/controller", "1.1.1.1");
+        StepVerifier.create(remoteFilter.filter(exchange, chain)).verifyComplete();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+        assertEquals("2", exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertNull(exchange.getResponse().getHeaders().getFirst(RateLimitHeaders.REMAINING));
+        assertEquals(0, dispatched.get());
+    }
+
+    private static MockServerWebExchange exchange(String path, String hostAddress) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path)
+                .remoteAddress(new InetSocketAddress(hostAddress, 40000)));
+    }
+
+    /**
+     * A remote store which denies every request.
+     */
+    private static final class DenyingRemote implements RateLimitService {
+        @Override
+        public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+            return DENIED;
+        }
+
+        @Override
+        public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+            return DENIED;
+        }
+
+        @Override
+        public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+            return DENIED;
+        }
+
+        @Override
+        public RateLimitService withPolicy(RateLimitPolicy policy) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package name.nikolaikochkin.ratelimiter.operator;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.SlidingLogRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.TokenBucketRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.VirtualNanoClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitOperatorsTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+    private static final Duration MAX_WAIT = Duration.ofMillis(100);
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new TokenBucketRateLimiter(PERMITS, PERIOD);
+    }
+
+    @Test
+    void passElementsWithinBurst() {
+        StepVerifier.create(Flux.range(0, PERMITS).transform(RateLimitOperators.throttle(rateLimiter, MAX_WAIT)))
+                .expectNextCount(PERMITS)
+                .verifyComplete();
+        assertFalse(rateLimiter.tryConsume());
+    }
+
+    @Test
+    void paceElementsBeyondBurst() {
+        Duration elapsed = StepVerifier.create(Flux.range(0, PERMITS + 2)
+                        .transform(RateLimitOperators.throttle(rateLimiter, MAX_WAIT)))
+                .expectNextCount(PERMITS + 2)
+                .verifyComplete();
+        assertTrue(elapsed.toMillis() >= 80, "Elapsed: " + elapsed);
+    }
+
+    @Test
+    void consumeWeightOfElements() {
+        StepVerifier.create(Flux.just(PERMITS / 2, 0, PERMITS / 2)
+                        .transform(RateLimitOperators.throttle(rateLimiter, Integer::intValue, MAX_WAIT)))
+                .expectNext(PERMITS / 2, 0, PERMITS / 2)
+                .verifyComplete();
+        assertFalse(rateLimiter.tryConsume());
+    }
+
+    @Test
+    void pollLimiterWhichCannotReserve() {
+        RateLimiter slidingLog = new SlidingLogRateLimiter(2, Duration.ofMillis(200));
+        Duration elapsed = StepVerifier.create(Flux.range(0, 3)
+                        .transform(RateLimitOperators.throttle(slidingLog, Duration.ofMillis(50))))
+                .expectNext(0, 1, 2)
+                .verifyComplete();
+        assertTrue(elapsed.toMillis() >= 150, "Elapsed: " + elapsed);
+    }
+
+    @Test
+    void requestUpstreamOnlyOnDemand() {
+        AtomicLong requested = new AtomicLong();
+        Flux<Integer> throttled = Flux.range(0, 100)
+                .doOnRequest(requested::addAndGet)
+                .transform(RateLimitOperators.throttle(rateLimiter, MAX_WAIT));
+        StepVerifier.create(throttled, 0)
+                .thenRequest(3)
+                .expectNext(0, 1, 2)
+                .thenCancel()
+                .verify();
+        assertTrue(requested.get() <= 4, "Requested: " + requested);
+    }
+
+    @Test
+    void refundReservedPermitsOnCancel() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        RateLimiter rateLimiter = new TokenBucketRateLimiter(Bandwidth.of(PERMITS, PERIOD), clock);
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+        StepVerifier.create(Flux.just(2).transform(RateLimitOperators.throttle(rateLimiter, Integer::intValue, PERIOD)))
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+        clock.advance(PERIOD.dividedBy(PERMITS / 2));
+        assertTrue(rateLimiter.tryConsume(2));
+    }
+
+    @Test
+    void failElementAboveCapacity() {
+        StepVerifier.create(Flux.just(PERMITS + 1).transform(RateLimitOperators.throttle(rateLimiter, Integer::intValue, MAX_WAIT)))
+                .expectError(IllegalArgumentException.class)
+                .verify(Duration.ofSeconds(1));
+        assertTrue(rateLimiter.tryConsume(PERMITS));
+    }
+
+    @Test
+    void rejectNonPositiveMaxWait() {
+        assertThrows(IllegalArgumentException.class, () -> RateLimitOperators.throttle(rateLimiter, Duration.ZERO));
+    }
+}
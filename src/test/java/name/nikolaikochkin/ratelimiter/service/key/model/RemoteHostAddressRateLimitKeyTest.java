@@ -0,0 +1,47 @@
+package name.nikolaikochkin.ratelimiter.service.key.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteHostAddressRateLimitKeyTest {
+    @Test
+    void equalKeysOfLiteralAndAddress() throws UnknownHostException {
+        RemoteHostAddressRateLimitKey key = new RemoteHostAddressRateLimitKey("10.0.0.1");
+        RemoteHostAddressRateLimitKey other = RemoteHostAddressRateLimitKey.of(InetAddress.getByName("10.0.0.1"));
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+        assertEquals(key.hash64(), other.hash64());
+        assertEquals(key, new RemoteHostAddressRateLimitKey("::ffff:10.0.0.1"));
+    }
+
+    @Test
+    void keepHostAddressNotation() throws UnknownHostException {
+        assertEquals("10.0.0.1", new RemoteHostAddressRateLimitKey("10.0.0.1").hostAddress());
+        assertEquals("RemoteHostAddressRateLimitKey[hostAddress=255.255.255.255]",
+                new RemoteHostAddressRateLimitKey("255.255.255.255").toString());
+        assertEquals(InetAddress.getByName("2001:db8::1").getHostAddress(),
+                new RemoteHostAddressRateLimitKey("2001:db8::1").hostAddress());
+    }
+
+    @Test
+    void rejectNotAddressLiterals() {
+        for (String value : new String[]{"", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "localhost"}) {
+            assertThrows(IllegalArgumentException.class, () -> new RemoteHostAddressRateLimitKey(value), value);
+        }
+    }
+
+    @Test
+    void distinctHashesOfIpv4Addresses() {
+        Set<Long> hashes = new HashSet<>();
+        for (int i = 0; i < 1 << 16; i++) {
+            hashes.add(new RemoteHostAddressRateLimitKey("10." + (i >>> 8) + "." + (i & 0xff) + ".1").hash64());
+        }
+        assertEquals(1 << 16, hashes.size());
+    }
+}
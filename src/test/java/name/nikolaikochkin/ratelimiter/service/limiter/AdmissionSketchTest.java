@@ -0,0 +1,78 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionSketchTest {
+
+    @Test
+    void addAndEstimate() {
+        AdmissionSketch sketch = new AdmissionSketch(1024);
+        assertEquals(2, sketch.add(1, 2));
+        assertEquals(5, sketch.add(1, 3));
+        assertEquals(5, sketch.estimate(1));
+        assertEquals(0, sketch.estimate(2));
+    }
+
+    @Test
+    void halveCountersOnDecay() {
+        AdmissionSketch sketch = new AdmissionSketch(1024);
+        sketch.add(1, 5);
+        sketch.decay();
+        assertEquals(2, sketch.estimate(1));
+        sketch.decay();
+        sketch.decay();
+        assertEquals(0, sketch.estimate(1));
+    }
+
+    @Test
+    void removePermitsNotBelowZero() {
+        AdmissionSketch sketch = new AdmissionSketch(1024);
+        sketch.add(1, 5);
+        sketch.remove(1, 3);
+        assertEquals(2, sketch.estimate(1));
+        sketch.remove(1, 3);
+        assertEquals(0, sketch.estimate(1));
+    }
+
+    @Test
+    void neverUnderestimate() {
+        AdmissionSketch sketch = new AdmissionSketch(16);
+        Map<Long, Integer> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long hash = random.nextInt(1000) * 0x9E3779B97F4A7C15L;
+            int permits = random.nextInt(3);
+            sketch.add(hash, permits);
+            counts.merge(hash, permits, Integer::sum);
+        }
+        counts.forEach((hash, count) -> assertTrue(sketch.estimate(hash) >= count));
+    }
+
+    @Test
+    void addConcurrent() throws InterruptedException {
+        AdmissionSketch sketch = new AdmissionSketch(1024);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executorService.execute(() -> sketch.add(7, 1));
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1000, sketch.estimate(7));
+    }
+
+    @Test
+    void roundWidthUpToPowerOfTwo() {
+        assertEquals(1024, new AdmissionSketch(1000).width());
+        assertEquals(1, new AdmissionSketch(1).width());
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionSketch(0));
+    }
+}
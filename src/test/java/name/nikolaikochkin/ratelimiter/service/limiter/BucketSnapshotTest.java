@@ -0,0 +1,66 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketSnapshotTest {
+    private static final Bandwidth BANDWIDTH = Bandwidth.of(10, Duration.ofSeconds(10));
+    private static final long NOW_MILLIS = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndRead() throws IOException {
+        Path path = directory.resolve("default.snapshot");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 100)) {
+            for (long fingerprint = 1; fingerprint <= 100; fingerprint++) {
+                assertTrue(writer.putIfAbsent(fingerprint, fingerprint % 10));
+            }
+            assertTrue(writer.putIfAbsent(1, 9));
+            assertEquals(100, writer.commit(NOW_MILLIS));
+        }
+        assertFalse(Files.exists(directory.resolve("default.snapshot.tmp")));
+
+        BucketSnapshot snapshot = BucketSnapshot.open(path);
+        assertNotNull(snapshot);
+        assertEquals(100, snapshot.count());
+        assertEquals(1, snapshot.availablePermits(1, BANDWIDTH, NOW_MILLIS));
+        assertEquals(5, snapshot.availablePermits(25, BANDWIDTH, NOW_MILLIS));
+        assertEquals(-1, snapshot.availablePermits(101, BANDWIDTH, NOW_MILLIS));
+    }
+
+    @Test
+    void replenishElapsedTime() throws IOException {
+        Path path = directory.resolve("default.snapshot");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+            writer.putIfAbsent(42, 0);
+            writer.putIfAbsent(43, 8);
+            writer.commit(NOW_MILLIS);
+        }
+        BucketSnapshot snapshot = BucketSnapshot.open(path);
+        assertNotNull(snapshot);
+        assertEquals(3, snapshot.availablePermits(42, BANDWIDTH, NOW_MILLIS + 3_500));
+        assertEquals(0, snapshot.availablePermits(42, BANDWIDTH, NOW_MILLIS - 1_000));
+        assertFalse(snapshot.isExhausted(BANDWIDTH, NOW_MILLIS + 9_999));
+        assertEquals(10, snapshot.availablePermits(42, BANDWIDTH, NOW_MILLIS + 10_000));
+        assertTrue(snapshot.isExhausted(BANDWIDTH, NOW_MILLIS + 10_000));
+        assertEquals(5, snapshot.availablePermits(43, Bandwidth.of(5, Duration.ofSeconds(10)), NOW_MILLIS));
+    }
+
+    @Test
+    void ignoreMissingAndInvalidFiles() throws IOException {
+        Path path = directory.resolve("default.snapshot");
+        assertNull(BucketSnapshot.open(path));
+        Files.writeString(path, "not a snapshot of the buckets");
+        assertNull(BucketSnapshot.open(path));
+    }
+}
@@ -0,0 +1,200 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.TokenBucketRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.VirtualNanoClock;
+import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringBucketStoreTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofMillis(100);
+    private static final Duration EXPIRE_AFTER_IDLE = Duration.ofMillis(200);
+    private static final RateLimiterFactory FACTORY = () -> new TokenBucketRateLimiter(PERMITS, PERIOD);
+
+    private static final ExpiringBucketStore.BucketOperation TRY_CONSUME =
+            (rateLimiter, permits, argument) -> rateLimiter.tryConsume(permits) ? 1 : 0;
+    private static final ExpiringBucketStore.BucketOperation AVAILABLE_PERMITS =
+            (rateLimiter, permits, argument) -> rateLimiter.availablePermits();
+
+    private record Key(String s) implements RateLimitKey {
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sameBucketForSameKey() {
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 10);
+        assertSame(store.getOrCreate(new Key("1.1.1.1"), FACTORY), store.getOrCreate(new Key("1.1.1.1"), FACTORY));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void applyWithConsumedPermits() {
+        RateLimiterFactory factory = RateLimiterFactory.of(RateLimitAlgorithm.TOKEN_BUCKET,
+                Bandwidth.of(PERMITS, PERIOD), new VirtualNanoClock());
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 10);
+        assertFalse(store.hasBucket(new Key("1.1.1.1"), factory));
+        assertEquals(0, store.size());
+        assertEquals(2, store.apply(new Key("1.1.1.1"), factory, PERMITS - 2, AVAILABLE_PERMITS, 0, 0));
+        assertTrue(store.hasBucket(new Key("1.1.1.1"), factory));
+        assertEquals(2, store.apply(new Key("1.1.1.1"), factory, PERMITS, AVAILABLE_PERMITS, 0, 0));
+    }
+
+    @Test
+    void neverLoseConsumptionOfMigratedBucket() throws InterruptedException {
+        int permits = 10_000;
+        RateLimiterFactory first = () -> new TokenBucketRateLimiter(permits, Duration.ofHours(1));
+        RateLimiterFactory second = () -> new TokenBucketRateLimiter(permits, Duration.ofHours(1));
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 10);
+        Key key = new Key("1.1.1.1");
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            RateLimiterFactory factory = i % 2 == 0 ? first : second;
+            executorService.execute(() -> {
+                for (int j = 0; j < permits; j++) {
+                    if (store.apply(key, factory, 0, TRY_CONSUME, 1, 0) != 0) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        // Every migration carries the permits over, so the consumptions of the detached limiters must be repeated
+        assertTrue(allowed.get() <= permits, "Allowed above the limit: " + allowed.get());
+    }
+
+    @Test
+    void expireIdleFullBuckets() throws InterruptedException {
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 100);
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(new Key("1.1.1." + i), FACTORY).tryConsume(PERMITS);
+        }
+        assertEquals(10, store.size());
+
+        Thread.sleep(EXPIRE_AFTER_IDLE.toMillis() * 2);
+
+        // Insertions amortize the expiry of the idle buckets
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(new Key("2.2.2." + i), FACTORY);
+        }
+        assertTrue(store.size() < 20);
+    }
+
+    @Test
+    void expireIdleFullBucketsByClockOfLimiters() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        RateLimiterFactory factory = RateLimiterFactory.of(RateLimitAlgorithm.TOKEN_BUCKET, Bandwidth.of(PERMITS, PERIOD), clock);
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 100);
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(new Key("1.1.1." + i), factory).tryConsume(PERMITS);
+        }
+        clock.advance(EXPIRE_AFTER_IDLE.multipliedBy(2));
+
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(new Key("2.2.2." + i), factory);
+        }
+        assertTrue(store.size() < 20);
+    }
+
+    @Test
+    void keepNotFullBuckets() throws InterruptedException {
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 100);
+        RateLimiter rateLimiter = new TokenBucketRateLimiter(PERMITS, Duration.ofMinutes(1));
+        RateLimiterFactory factory = () -> rateLimiter;
+        RateLimiter stored = store.getOrCreate(new Key("1.1.1.1"), factory);
+        assertTrue(stored.tryConsume(PERMITS));
+
+        Thread.sleep(EXPIRE_AFTER_IDLE.toMillis() * 2);
+
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(new Key("2.2.2." + i), FACTORY);
+        }
+        assertSame(rateLimiter, store.getOrCreate(new Key("1.1.1.1"), factory));
+        assertFalse(rateLimiter.tryConsume());
+    }
+
+    @Test
+    void migrateBucketToNewFactoryOnAccess() {
+        ExpiringBucketStore store = new ExpiringBucketStore(Duration.ofMinutes(1), 10);
+        Key key = new Key("1.1.1.1");
+        RateLimiterFactory factory = () -> new TokenBucketRateLimiter(PERMITS, Duration.ofMinutes(1));
+        RateLimiter rateLimiter = store.getOrCreate(key, factory);
+        assertTrue(rateLimiter.tryConsume(PERMITS - 5));
+
+        RateLimiterFactory larger = () -> new TokenBucketRateLimiter(PERMITS * 2, Duration.ofMinutes(1));
+        RateLimiter peeked = store.peek(key, larger);
+        assertNotSame(rateLimiter, peeked);
+        assertEquals(PERMITS * 2, peeked.bandwidth().capacity());
+        assertEquals(5, peeked.availablePermits());
+        assertSame(rateLimiter, store.getOrCreate(key, factory));
+
+        RateLimiter migrated = store.getOrCreate(key, larger);
+        assertNotSame(rateLimiter, migrated);
+        assertEquals(5, migrated.availablePermits());
+        assertSame(migrated, store.getOrCreate(key, larger));
+        assertEquals(1, store.size());
+
+        RateLimiterFactory smaller = () -> new TokenBucketRateLimiter(2, Duration.ofMinutes(1));
+        assertEquals(2, store.getOrCreate(key, smaller).availablePermits());
+        assertNull(store.peek(new Key("2.2.2.2"), smaller));
+    }
+
+    @Test
+    void evictAboveMaxBuckets() {
+        final int maxBuckets = 10;
+        ExpiringBucketStore store = new ExpiringBucketStore(Duration.ofMinutes(1), maxBuckets);
+        for (int i = 0; i < maxBuckets * 10; i++) {
+            assertNotNull(store.getOrCreate(new Key("1.1.1." + i), FACTORY));
+            assertTrue(store.size() <= maxBuckets);
+        }
+    }
+
+    @Test
+    void invalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new ExpiringBucketStore(Duration.ZERO, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 0));
+    }
+
+    @Test
+    void restoreFromSnapshotByClockOfLimiters() throws IOException {
+        Key key = new Key("1.1.1.1");
+        Path path = directory.resolve("default.snapshot");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+            writer.putIfAbsent(key.hash64(), 5);
+            writer.commit(System.currentTimeMillis());
+        }
+        VirtualNanoClock clock = new VirtualNanoClock();
+        RateLimiterFactory factory = RateLimiterFactory.of(RateLimitAlgorithm.TOKEN_BUCKET,
+                Bandwidth.of(PERMITS, Duration.ofHours(1)), clock);
+        ExpiringBucketStore store = new ExpiringBucketStore(EXPIRE_AFTER_IDLE, 10);
+        store.restoreFrom(BucketSnapshot.open(path), clock);
+
+        assertEquals(5, store.peek(key, factory).availablePermits());
+        assertNull(store.peek(new Key("2.2.2.2"), factory));
+
+        clock.advance(Duration.ofHours(1));
+        assertEquals(PERMITS, store.peek(key, factory).availablePermits());
+        assertTrue(store.hasBucket(key, factory), "Peek must not drop the snapshot");
+
+        store.getOrCreate(new Key("2.2.2.2"), factory);
+        assertFalse(store.hasBucket(key, factory));
+    }
+}
@@ -0,0 +1,168 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.KeyHashing;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GossipRateLimitServiceTest {
+    private static final int PERMITS = 10;
+    private static final Duration PERIOD = Duration.ofMinutes(1);
+    private static final Duration INTERVAL = Duration.ofHours(1);
+    private static final int MAX_KEYS_PER_ROUND = 2;
+
+    private InetSocketAddress firstAddress;
+    private GossipRateLimitService first;
+    private GossipRateLimitService second;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        firstAddress = freeAddress();
+        InetSocketAddress secondAddress = freeAddress();
+        first = node(firstAddress, secondAddress);
+        second = node(secondAddress, firstAddress);
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void shareConsumptionBetweenNodes() {
+        RateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        assertTrue(first.tryAcquire(key, 6));
+        first.gossip();
+        awaitReceived(second, 6);
+
+        assertEquals(PERMITS - 6, second.inspect(key).availablePermits());
+        assertFalse(second.tryAcquire(key, PERMITS - 5));
+        assertTrue(second.tryAcquire(key, PERMITS - 6));
+        second.gossip();
+        awaitReceived(first, PERMITS - 6);
+
+        assertEquals(0, first.inspect(key).availablePermits());
+        assertFalse(first.tryAcquire(key, 1));
+        assertEquals(0, first.statistics().droppedPackets());
+    }
+
+    @Test
+    void sendOnlyChangedKeysWithinBudget() {
+        for (int i = 0; i < MAX_KEYS_PER_ROUND + 1; i++) {
+            assertTrue(first.tryAcquire(new RemoteHostAddressRateLimitKey("1.1.1." + i), 1));
+        }
+        first.gossip();
+        assertEquals(1, first.statistics().sentPackets());
+        assertEquals(MAX_KEYS_PER_ROUND, first.statistics().sentPermits());
+
+        first.gossip();
+        assertEquals(2, first.statistics().sentPackets());
+        assertEquals(MAX_KEYS_PER_ROUND + 1, first.statistics().sentPermits());
+
+        first.gossip();
+        assertEquals(2, first.statistics().sentPackets());
+        awaitReceived(second, MAX_KEYS_PER_ROUND + 1);
+        for (int i = 0; i < MAX_KEYS_PER_ROUND + 1; i++) {
+            assertEquals(PERMITS - 1, second.inspect(new RemoteHostAddressRateLimitKey("1.1.1." + i)).availablePermits());
+        }
+    }
+
+    @Test
+    void mergeDeltasOfKeyBetweenRounds() {
+        RateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        assertTrue(first.tryAcquire(key, 2));
+        assertTrue(first.tryAcquireAll(new RateLimitKey[]{key}, 3));
+        first.gossip();
+        assertEquals(1, first.statistics().sentPackets());
+        awaitReceived(second, 5);
+        assertEquals(PERMITS - 5, second.inspect(key).availablePermits());
+    }
+
+    @Test
+    void separateDeltasOfPolicies() {
+        RateLimitPolicy policy = new RateLimitPolicy("search", RateLimitAlgorithm.TOKEN_BUCKET,
+                Bandwidth.of(PERMITS, PERIOD), 1);
+        GossipRateLimitService firstSearch = first.withPolicy(policy);
+        GossipRateLimitService secondSearch = second.withPolicy(policy);
+        RateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+
+        assertTrue(firstSearch.tryAcquire(key, PERMITS));
+        first.gossip();
+        awaitReceived(secondSearch, PERMITS);
+
+        assertFalse(secondSearch.tryAcquire(key, 1));
+        assertTrue(second.tryAcquire(key, PERMITS));
+        assertEquals(0, second.statistics().receivedPermits());
+        assertThrows(IllegalStateException.class, () -> first.withPolicy(policy));
+    }
+
+    @Test
+    void dropPacketsOfUnknownSenders() throws IOException {
+        RateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        byte[] packet = ByteBuffer.allocate(34)
+                .putInt(0x524C4732).putLong(1).putLong(KeyHashing.hash(RateLimitPolicy.DEFAULT)).putShort((short) 1)
+                .putLong(key.hash64()).putInt(PERMITS)
+                .array();
+        try (DatagramSocket stranger = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            stranger.send(new DatagramPacket(packet, packet.length, firstAddress));
+        }
+        await(() -> {
+            first.gossip();
+            return first.statistics().droppedPackets() > 0;
+        });
+        assertEquals(1, first.statistics().droppedPackets());
+        assertEquals(0, first.statistics().receivedPackets());
+        assertEquals(PERMITS, first.inspect(key).availablePermits());
+    }
+
+    private static GossipRateLimitService node(InetSocketAddress address, InetSocketAddress peer) {
+        return new GossipRateLimitService(
+                new InMemoryRateLimitService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD, true)),
+                address, List.of(peer), INTERVAL, MAX_KEYS_PER_ROUND);
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (DatagramSocket socket = new DatagramSocket(0, loopback)) {
+            return new InetSocketAddress(loopback, socket.getLocalPort());
+        }
+    }
+
+    /**
+     * Runs the gossip rounds of the node until the expected permits of the peer arrive over the loopback.
+     */
+    private static void awaitReceived(GossipRateLimitService node, long permits) {
+        await(() -> {
+            node.gossip();
+            return node.statistics().receivedPermits() >= permits;
+        });
+        assertEquals(permits, node.statistics().receivedPermits());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for gossip");
+            Thread.onSpinWait();
+        }
+    }
+}
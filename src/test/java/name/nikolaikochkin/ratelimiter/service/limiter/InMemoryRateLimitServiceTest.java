@@ -1,13 +1,19 @@
 package name.nikolaikochkin.ratelimiter.service.limiter;
 
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.algorithm.VirtualNanoClock;
 import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
 import name.nikolaikochkin.ratelimiter.service.factory.RateLimiterFactory;
 import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -105,4 +111,208 @@ class InMemoryRateLimitServiceTest {
         assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
         assertEquals(PERMITS, allowedRequests.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    void allowManyClientsAcrossShards() {
+        final int clients = 1_000;
+        final InMemoryRateLimitService shardedService = new InMemoryRateLimitService(FACTORY, Duration.ofMinutes(1), clients * 2, 8);
+        int allowedRequests = 0;
+        for (int i = 0; i < clients; i++) {
+            for (int j = 0; j <= PERMITS; j++) {
+                if (Boolean.TRUE.equals(shardedService.allowRequest(new Key("1.1." + i)).block())) {
+                    allowedRequests++;
+                }
+            }
+        }
+        assertEquals(clients * PERMITS, allowedRequests);
+        assertEquals(clients, shardedService.size());
+    }
+
+    @Test
+    void acquirePermitsSynchronously() {
+        assertTrue(rateLimitService.tryAcquire(new Key("1.1.1.1"), PERMITS - 1));
+        assertFalse(rateLimitService.tryAcquire(new Key("1.1.1.1"), 2));
+        assertTrue(rateLimitService.tryAcquire(new Key("1.1.1.1"), 1));
+        assertSame(RateLimitService.DENIED, rateLimitService.allowRequest(new Key("1.1.1.1")));
+        assertSame(RateLimitService.ALLOWED, rateLimitService.allowRequest(new Key("2.2.2.2")));
+    }
+
+    @Test
+    void refundUnusedPermits() {
+        assertTrue(rateLimitService.tryAcquire(new Key("1.1.1.1"), PERMITS));
+        rateLimitService.refund(new Key("1.1.1.1"), PERMITS / 2);
+        assertTrue(rateLimitService.tryAcquire(new Key("1.1.1.1"), PERMITS / 2));
+        assertFalse(rateLimitService.tryAcquire(new Key("1.1.1.1"), 1));
+    }
+
+    @Test
+    void acquireAllKeysOrNone() {
+        RateLimitKey[] first = {new Key("1.1.1.1"), new Key("method")};
+        RateLimitKey[] second = {new Key("2.2.2.2"), new Key("method")};
+        assertTrue(rateLimitService.tryAcquireAll(first, PERMITS / 2));
+        assertTrue(rateLimitService.tryAcquireAll(second, PERMITS / 2));
+        assertFalse(rateLimitService.tryAcquireAll(first, 1));
+        assertTrue(rateLimitService.tryAcquire(new Key("1.1.1.1"), PERMITS / 2));
+        StepVerifier.create(rateLimitService.allowAll(second, 1))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void inspectWithoutConsuming() {
+        Key key = new Key("1.1.1.1");
+        assertEquals(new BucketState(PERMITS, PERMITS, 0), rateLimitService.inspect(key));
+        assertEquals(0, rateLimitService.size());
+
+        assertTrue(rateLimitService.tryAcquire(key, PERMITS));
+        BucketState state = rateLimitService.inspect(key);
+        assertEquals(0, state.availablePermits());
+        assertEquals(PERMITS, state.capacity());
+        assertTrue(state.nanosToNextPermit() > 0 && state.nanosToNextPermit() <= PERIOD.toNanos() / PERMITS);
+    }
+
+    @Test
+    void carryOverBucketsToUpdatedPolicy() {
+        Key key = new Key("1.1.1.1");
+        RateLimitPolicy policy = new RateLimitPolicy(RateLimitPolicy.DEFAULT, RateLimitAlgorithm.TOKEN_BUCKET,
+                Bandwidth.of(PERMITS, Duration.ofMinutes(1)), 1);
+        rateLimitService.updatePolicy(policy);
+        assertTrue(rateLimitService.tryAcquire(key, PERMITS - 2));
+
+        rateLimitService.updatePolicy(new RateLimitPolicy(RateLimitPolicy.DEFAULT, RateLimitAlgorithm.SLIDING_LOG,
+                Bandwidth.of(PERMITS * 2, Duration.ofMinutes(1)), 1));
+        assertEquals(2, rateLimitService.inspect(key).availablePermits());
+        assertEquals(PERMITS * 2, rateLimitService.inspect(key).capacity());
+        assertTrue(rateLimitService.tryAcquire(key, 2));
+        assertFalse(rateLimitService.tryAcquire(key, 1));
+        assertEquals(1, rateLimitService.size());
+        assertEquals(new BucketState(PERMITS * 2, PERMITS * 2, 0), rateLimitService.inspect(new Key("2.2.2.2")));
+    }
+
+    @Test
+    void restoreBucketsFromSnapshot(@TempDir Path directory) {
+        RateLimiterFactory factory = new TokenBucketRateLimiterFactory(PERMITS, Duration.ofMinutes(1));
+        Key key = new Key("1.1.1.1");
+        InMemoryRateLimitService before = new InMemoryRateLimitService(factory, Duration.ofMinutes(10), 1000, 2,
+                directory, RateLimitPolicy.DEFAULT, Duration.ofMinutes(1));
+        assertTrue(before.tryAcquire(key, PERMITS - 2));
+        assertTrue(before.tryAcquire(new Key("2.2.2.2"), 0));
+        assertEquals(1, before.writeSnapshot());
+        before.close();
+
+        InMemoryRateLimitService after = new InMemoryRateLimitService(factory, Duration.ofMinutes(10), 1000, 4,
+                directory, RateLimitPolicy.DEFAULT, Duration.ofMinutes(1));
+        assertEquals(2, after.inspect(key).availablePermits());
+        assertEquals(0, after.size());
+        assertTrue(after.tryAcquire(key, 2));
+        assertFalse(after.tryAcquire(key, 1));
+        assertTrue(after.tryAcquire(new Key("2.2.2.2"), PERMITS));
+        after.close();
+    }
+
+    @Test
+    void admitColdKeysWithoutBuckets() {
+        InMemoryRateLimitService admissionService = admissionService();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(admissionService.tryAcquire(new Key("1.1.1." + i), 1));
+        }
+        assertTrue(admissionService.tryAcquireAll(new RateLimitKey[]{new Key("2.2.2.2"), new Key("method")}, 1));
+        assertEquals(0, admissionService.size());
+        assertEquals(PERMITS - 1, admissionService.inspect(new Key("2.2.2.2")).availablePermits());
+        admissionService.close();
+    }
+
+    @Test
+    void takeBackAdmittedPermitsOfRejectedRequest() {
+        InMemoryRateLimitService admissionService = admissionService();
+        for (int i = 0; i < PERMITS * 2; i++) {
+            admissionService.tryAcquire(new Key("method"), 1);
+        }
+        assertFalse(admissionService.tryAcquireAll(new RateLimitKey[]{new Key("2.2.2.2"), new Key("method")}, 1));
+        assertEquals(PERMITS, admissionService.inspect(new Key("2.2.2.2")).availablePermits());
+        admissionService.close();
+    }
+
+    @Test
+    void rejectFewerBucketsThanShards() {
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryRateLimitService(FACTORY, Duration.ofMinutes(1), 1, 2));
+    }
+
+    @Test
+    void createBucketAboveAdmissionThreshold() {
+        InMemoryRateLimitService admissionService = admissionService();
+        Key key = new Key("1.1.1.1");
+        for (int i = 0; i < PERMITS / 4; i++) {
+            assertTrue(admissionService.tryAcquire(key, 1));
+        }
+        assertEquals(0, admissionService.size());
+
+        int allowed = 0;
+        for (int i = 0; i < PERMITS; i++) {
+            if (admissionService.tryAcquire(key, 1)) {
+                allowed++;
+            }
+        }
+        // the new bucket is charged half the threshold more, which a decay could have hidden
+        assertEquals(PERMITS - PERMITS / 4 - (PERMITS / 4 + 1) / 2, allowed);
+        assertEquals(1, admissionService.size());
+        assertEquals(0, admissionService.inspect(key).availablePermits());
+        admissionService.close();
+    }
+
+    @Test
+    void limitColdKeyAcrossAdmissionDecay() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        InMemoryRateLimitService admissionService =
+                admissionService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD, false, clock), 1024);
+        Key key = new Key("1.1.1.1");
+        for (int i = 0; i < PERMITS / 4; i++) {
+            assertTrue(admissionService.tryAcquire(key, 1));
+        }
+        clock.advance(PERIOD);
+
+        int allowed = 0;
+        for (int i = 0; i < PERMITS; i++) {
+            if (admissionService.tryAcquire(key, 1)) {
+                allowed++;
+            }
+        }
+        assertEquals(PERMITS - PERMITS / 4, allowed);
+        assertEquals(1, admissionService.size());
+        admissionService.close();
+    }
+
+    @Test
+    void neverRejectFirstRequestOfInflatedKey() {
+        InMemoryRateLimitService admissionService =
+                admissionService(new TokenBucketRateLimiterFactory(PERMITS, Duration.ofMinutes(1)), 1);
+        for (int i = 0; i < PERMITS * 2; i++) {
+            admissionService.tryAcquire(new Key("1.1.1." + i), 1);
+        }
+        assertTrue(admissionService.tryAcquire(new Key("2.2.2.2"), 1));
+        assertTrue(admissionService.tryAcquire(new Key("3.3.3.3"), PERMITS));
+        admissionService.close();
+    }
+
+    @Test
+    void refundColdKeyToAdmissionSketch() {
+        InMemoryRateLimitService admissionService = admissionService();
+        Key key = new Key("1.1.1.1");
+        for (int i = 0; i < PERMITS / 4; i++) {
+            assertTrue(admissionService.tryAcquire(key, 1));
+        }
+        admissionService.refund(key, PERMITS / 4);
+        assertEquals(0, admissionService.size());
+        assertEquals(PERMITS, admissionService.inspect(key).availablePermits());
+        admissionService.close();
+    }
+
+    private static InMemoryRateLimitService admissionService() {
+        return admissionService(new TokenBucketRateLimiterFactory(PERMITS, Duration.ofMinutes(1)), 1024);
+    }
+
+    private static InMemoryRateLimitService admissionService(RateLimiterFactory rateLimiterFactory, int admissionWidth) {
+        return new InMemoryRateLimitService(rateLimiterFactory,
+                Duration.ofMinutes(10), 1000, 2, null, RateLimitPolicy.DEFAULT, Duration.ZERO, admissionWidth);
+    }
+}
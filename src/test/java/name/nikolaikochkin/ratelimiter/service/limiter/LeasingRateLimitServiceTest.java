@@ -0,0 +1,164 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeasingRateLimitServiceTest {
+    private static final int PERMITS = 100;
+    private static final int MAX_BATCH = 16;
+    private static final Duration LEASE_DURATION = Duration.ofMillis(200);
+
+    private CountingRemote remote;
+    private LeasingRateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        remote = new CountingRemote(PERMITS);
+        rateLimitService = new LeasingRateLimitService(remote, LEASE_DURATION, MAX_BATCH);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimitService.close();
+    }
+
+    @Test
+    void allowClientSingleRequest() {
+        StepVerifier.create(rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void denyClientRequestAfterLimitExceeded() {
+        Flux<Boolean> flux = Flux.range(0, PERMITS * 2)
+                .concatMap(i -> rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .filter(Boolean::booleanValue);
+
+        StepVerifier.create(flux)
+                .expectNextCount(PERMITS)
+                .verifyComplete();
+    }
+
+    @Test
+    void leaseBatchesOfPermits() {
+        for (int i = 0; i < PERMITS; i++) {
+            assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        }
+        LeasingRateLimitService.Statistics statistics = rateLimitService.statistics();
+        assertEquals(PERMITS, statistics.servedPermits());
+        assertTrue(statistics.remoteCalls() < PERMITS / 4, "Remote calls: " + statistics.remoteCalls());
+        assertTrue(statistics.outstandingPermits() <= MAX_BATCH);
+    }
+
+    @Test
+    void returnUnusedPermitsAfterLeaseExpired() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block();
+        }
+        long outstanding = rateLimitService.statistics().outstandingPermits();
+        assertTrue(outstanding > 0);
+        Thread.sleep(LEASE_DURATION.toMillis() * 3);
+        assertEquals(0, rateLimitService.statistics().outstandingPermits());
+        assertEquals(PERMITS - 20, remote.available.get());
+    }
+
+    @Test
+    void neverGrantPermitsIntoSweptLease() throws InterruptedException {
+        Duration leaseDuration = Duration.ofMillis(5);
+        CountingRemote sharedRemote = new CountingRemote(Long.MAX_VALUE / 2);
+        LeasingRateLimitService service = new LeasingRateLimitService(sharedRemote, leaseDuration, MAX_BATCH);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            RateLimitKey rateLimitKey = new RemoteHostAddressRateLimitKey("1.1.1." + thread % 2);
+            executorService.execute(() -> {
+                for (int i = 0; i < 200; i++) {
+                    service.allowRequest(rateLimitKey).block();
+                    // Let the lease go idle, so that the sweep drops it while other requests still use it
+                    LockSupport.parkNanos(leaseDuration.toNanos() * (i % 3));
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        Thread.sleep(leaseDuration.toMillis() * 20);
+        service.close();
+        LeasingRateLimitService.Statistics statistics = service.statistics();
+        assertEquals(0, statistics.outstandingPermits());
+        assertEquals(Long.MAX_VALUE / 2 - statistics.servedPermits(), sharedRemote.available.get());
+    }
+
+    /**
+     * A remote store with a fixed number of permits shared by all keys.
+     */
+    private static final class CountingRemote implements LeasableRateLimitService {
+        private final AtomicLong available;
+
+        private CountingRemote(long permits) {
+            this.available = new AtomicLong(permits);
+        }
+
+        @Override
+        public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey) {
+            return allowRequest(rateLimitKey, 1);
+        }
+
+        @Override
+        public Mono<Boolean> allowRequest(RateLimitKey rateLimitKey, int permits) {
+            return Mono.fromCallable(() -> {
+                long current;
+                do {
+                    current = available.get();
+                    if (current < permits) {
+                        return false;
+                    }
+                } while (!available.compareAndSet(current, current - permits));
+                return true;
+            });
+        }
+
+        @Override
+        public Mono<Boolean> allowAll(RateLimitKey[] rateLimitKeys, int permits) {
+            return allowRequest(rateLimitKeys[0], permits);
+        }
+
+        @Override
+        public Mono<Long> reserve(RateLimitKey rateLimitKey, long maxPermits) {
+            return Mono.fromCallable(() -> {
+                long current;
+                long reserved;
+                do {
+                    current = available.get();
+                    reserved = Math.min(current, maxPermits);
+                } while (!available.compareAndSet(current, current - reserved));
+                return reserved;
+            });
+        }
+
+        @Override
+        public Mono<Void> release(RateLimitKey rateLimitKey, long permits) {
+            return Mono.fromRunnable(() -> available.addAndGet(permits));
+        }
+
+        @Override
+        public LeasableRateLimitService withPolicy(RateLimitPolicy policy) {
+            return this;
+        }
+    }
+}
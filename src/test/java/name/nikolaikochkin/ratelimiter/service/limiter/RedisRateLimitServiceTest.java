@@ -0,0 +1,144 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.ClassMethodNameRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisRateLimitServiceTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private RedisRateLimitService rateLimitService;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+        rateLimitService = new RedisRateLimitService(redisTemplate, PERMITS, PERIOD, "test:", false);
+    }
+
+    @Test
+    void allowClientSingleRequest() {
+        StepVerifier.create(rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void denyClientRequestAfterLimitExceeded() {
+        Flux<Boolean> flux = Flux.range(0, PERMITS * 2)
+                .flatMap(i -> rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .filter(Boolean::booleanValue);
+
+        StepVerifier.create(flux)
+                .expectNextCount(PERMITS)
+                .verifyComplete();
+    }
+
+    @Test
+    void refillAfterPeriod() throws InterruptedException {
+        for (int i = 0; i < PERMITS; i++) {
+            assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        }
+        assertEquals(Boolean.FALSE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        Thread.sleep(PERIOD.toMillis());
+        assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+    }
+
+    @Test
+    void shareLimitBetweenReplicas() {
+        RedisRateLimitService replica = new RedisRateLimitService(redisTemplate, PERMITS, PERIOD, "test:", false);
+        Flux<Boolean> flux = Flux.range(0, PERMITS * 2)
+                .flatMap(i -> (i % 2 == 0 ? rateLimitService : replica).allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .filter(Boolean::booleanValue);
+
+        StepVerifier.create(flux)
+                .expectNextCount(PERMITS)
+                .verifyComplete();
+    }
+
+    @Test
+    void expireFullBuckets() throws InterruptedException {
+        rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block();
+        assertEquals(Boolean.TRUE, redisTemplate.hasKey("test:" + new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        Thread.sleep(PERIOD.toMillis() / PERMITS * 2);
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey("test:" + new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+    }
+
+    @Test
+    void wrapPrefixIntoHashTag() {
+        RedisRateLimitService rateLimitService = new RedisRateLimitService(redisTemplate, PERMITS, PERIOD, "test:", true);
+        RateLimitKey[] rateLimitKeys = {new RemoteHostAddressRateLimitKey("1.1.1.1"), new ClassMethodNameRateLimitKey("Service", "method")};
+        assertEquals(Boolean.TRUE, rateLimitService.allowAll(rateLimitKeys, 1).block());
+        assertEquals(Boolean.TRUE, redisTemplate.hasKey("{test:}" + rateLimitKeys[0]).block());
+        assertEquals(Boolean.TRUE, redisTemplate.hasKey("{test:}" + rateLimitKeys[1]).block());
+    }
+
+    @Test
+    void reserveUpToAvailablePermits() {
+        RemoteHostAddressRateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        assertEquals(PERMITS / 2, rateLimitService.reserve(key, PERMITS / 2).block());
+        assertEquals(PERMITS / 2, rateLimitService.reserve(key, PERMITS).block());
+        assertEquals(0L, rateLimitService.reserve(key, PERMITS).block());
+        assertEquals(Boolean.FALSE, rateLimitService.allowRequest(key).block());
+    }
+
+    @Test
+    void releaseReservedPermits() {
+        RemoteHostAddressRateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        assertEquals(PERMITS, rateLimitService.reserve(key, PERMITS).block());
+        rateLimitService.release(key, 5).block();
+        assertEquals(5L, rateLimitService.reserve(key, PERMITS).block());
+    }
+
+    @Test
+    void allowAllKeysOrNone() {
+        RedisRateLimitService rateLimitService = new RedisRateLimitService(redisTemplate, PERMITS, Duration.ofMinutes(1), "test:", false);
+        RateLimitKey[] first = {new RemoteHostAddressRateLimitKey("1.1.1.1"), new ClassMethodNameRateLimitKey("Service", "method")};
+        RateLimitKey[] second = {new RemoteHostAddressRateLimitKey("2.2.2.2"), new ClassMethodNameRateLimitKey("Service", "method")};
+        for (int i = 0; i < PERMITS / 2; i++) {
+            assertEquals(Boolean.TRUE, rateLimitService.allowAll(first, 1).block());
+            assertEquals(Boolean.TRUE, rateLimitService.allowAll(second, 1).block());
+        }
+        assertEquals(Boolean.FALSE, rateLimitService.allowAll(first, 1).block());
+        assertEquals(PERMITS / 2, rateLimitService.reserve(new RemoteHostAddressRateLimitKey("1.1.1.1"), PERMITS).block());
+    }
+}
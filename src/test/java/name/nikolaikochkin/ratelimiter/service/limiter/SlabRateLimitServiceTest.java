@@ -0,0 +1,148 @@
+package name.nikolaikochkin.ratelimiter.service.limiter;
+
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.ConsumptionProbe;
+import name.nikolaikochkin.ratelimiter.algorithm.NanoClock;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.algorithm.VirtualNanoClock;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.key.model.RemoteHostAddressRateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlabRateLimitServiceTest {
+    private static final int PERMITS = 20;
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+
+    private SlabRateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        rateLimitService = new SlabRateLimitService(PERMITS, PERIOD, 4, 16, NanoClock.SYSTEM);
+    }
+
+    @Test
+    void allowClientSingleRequest() {
+        StepVerifier.create(rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void denyClientRequestAfterLimitExceeded() {
+        Flux<Boolean> flux = Flux.range(0, PERMITS)
+                .flatMap(i -> rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .filter(Boolean::booleanValue);
+
+        StepVerifier.create(flux)
+                .expectNextCount(PERMITS)
+                .verifyComplete();
+        StepVerifier.create(rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void refillAfterPeriod() throws InterruptedException {
+        for (int i = 0; i < PERMITS; i++) {
+            assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        }
+        assertEquals(Boolean.FALSE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+        Thread.sleep(PERIOD.toMillis());
+        assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("1.1.1.1")).block());
+    }
+
+    @Test
+    void refillByInjectedClock() {
+        VirtualNanoClock clock = new VirtualNanoClock();
+        SlabRateLimitService rateLimitService = new SlabRateLimitService(PERMITS, PERIOD, 4, 16, clock);
+        RateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        assertTrue(rateLimitService.tryAcquire(key, PERMITS));
+        assertFalse(rateLimitService.tryAcquire(key, 1));
+
+        clock.advance(PERIOD.dividedBy(PERMITS));
+        assertTrue(rateLimitService.tryAcquire(key, 1));
+        assertFalse(rateLimitService.tryAcquire(key, 1));
+
+        SlabRateLimitService policyService = rateLimitService.withPolicy(new RateLimitPolicy("search",
+                RateLimitAlgorithm.TOKEN_BUCKET, Bandwidth.of(1, PERIOD), 1));
+        assertTrue(policyService.tryAcquire(key, 1));
+        assertFalse(policyService.tryAcquire(key, 1));
+        clock.advance(PERIOD);
+        assertTrue(policyService.tryAcquire(key, 1));
+    }
+
+    @Test
+    void keepStateOfManyKeysAcrossRebuilds() {
+        final int keys = 10_000;
+        final SlabRateLimitService rateLimitService = new SlabRateLimitService(1, Duration.ofMinutes(1), 4, 16, NanoClock.SYSTEM);
+        for (int i = 0; i < keys; i++) {
+            assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("10.0." + (i >>> 8) + "." + (i & 0xff))).block());
+        }
+        assertEquals(keys, rateLimitService.size());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(Boolean.FALSE, rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("10.0." + (i >>> 8) + "." + (i & 0xff))).block(),
+                    () -> "Key should be limited");
+        }
+    }
+
+    @Test
+    void dropFullBucketsOnRebuild() throws InterruptedException {
+        final int keys = 1_000;
+        for (int i = 0; i < keys; i++) {
+            rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("10.0." + (i >>> 8) + "." + (i & 0xff))).block();
+        }
+        Thread.sleep(PERIOD.toMillis());
+        for (int i = 0; i < keys; i++) {
+            rateLimitService.allowRequest(new RemoteHostAddressRateLimitKey("10.1." + (i >>> 8) + "." + (i & 0xff))).block();
+        }
+        assertTrue(rateLimitService.size() < keys * 2);
+    }
+
+    @Test
+    void allowMultipleClientMultipleRequestsConcurrent() throws InterruptedException {
+        final int numberOfThreads = 10;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final AtomicInteger allowedRequests = new AtomicInteger();
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            final RemoteHostAddressRateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1." + i);
+            executorService.execute(() -> {
+                for (int j = 0; j < PERMITS * 2; j++) {
+                    if (Boolean.TRUE.equals(rateLimitService.allowRequest(key).block())) {
+                        allowedRequests.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(numberOfThreads * PERMITS, allowedRequests.get());
+    }
+
+    @Test
+    void probeStateOfBucket() {
+        RemoteHostAddressRateLimitKey key = new RemoteHostAddressRateLimitKey("1.1.1.1");
+        long allowed = rateLimitService.tryAcquireAndProbe(key, PERMITS - 1);
+        assertTrue(ConsumptionProbe.isAllowed(allowed));
+        assertEquals(1, ConsumptionProbe.remainingPermits(allowed));
+        assertTrue(ConsumptionProbe.nanosToRefill(allowed) <= PERIOD.toNanos() / PERMITS);
+
+        long rejected = rateLimitService.tryAcquireAndProbe(key, PERMITS);
+        assertFalse(ConsumptionProbe.isAllowed(rejected));
+        assertTrue(ConsumptionProbe.nanosToRefill(rejected) > 0 && ConsumptionProbe.nanosToRefill(rejected) <= PERIOD.toNanos());
+        assertFalse(ConsumptionProbe.isAllowed(rateLimitService.tryAcquireAndProbe(key, PERMITS + 1)));
+    }
+}
@@ -0,0 +1,80 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import name.nikolaikochkin.ratelimiter.algorithm.Bandwidth;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.policy.RateLimitPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitMetricsTest {
+    private static final int PERMITS = 3;
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(RateLimitPolicy.DEFAULT,
+            RateLimitAlgorithm.TOKEN_BUCKET, Bandwidth.of(PERMITS, Duration.ofMinutes(1)), 1);
+
+    private record Key(String s) implements RateLimitKey {
+    }
+
+    private MeterRegistry meterRegistry;
+    private RateLimitMetrics metrics;
+    private LocalRateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new RateLimitMetrics(meterRegistry, 1);
+        rateLimitService = metrics.bind(POLICY, new InMemoryRateLimitService(POLICY));
+    }
+
+    @Test
+    void countDecisionsOfPolicy() {
+        for (int i = 0; i < PERMITS + 2; i++) {
+            rateLimitService.tryAcquire(new Key("1.1.1.1"), 1);
+        }
+        assertEquals(Boolean.TRUE, rateLimitService.allowRequest(new Key("2.2.2.2")).block());
+        assertEquals(PERMITS + 1, decisions("allowed"));
+        assertEquals(2, decisions("rejected"));
+        assertEquals(2, meterRegistry.get("ratelimit.buckets").tag("policy", RateLimitPolicy.DEFAULT).gauge().value());
+        assertEquals(0, meterRegistry.get("ratelimit.evictions").tag("policy", RateLimitPolicy.DEFAULT).functionCounter().count());
+        assertNotNull(meterRegistry.get("ratelimit.decision.latency").tag("policy", RateLimitPolicy.DEFAULT).timer());
+    }
+
+    @Test
+    void reportMostRejectedKeys() {
+        for (int i = 0; i < PERMITS + 3; i++) {
+            rateLimitService.tryAcquire(new Key("1.1.1.1"), 1);
+        }
+        for (int i = 0; i < PERMITS + 1; i++) {
+            rateLimitService.tryAcquire(new Key("2.2.2.2"), 1);
+        }
+        assertEquals(List.of(new RejectedKey(new Key("1.1.1.1").toString(), 3)),
+                metrics.topRejectedKeys().get(RateLimitPolicy.DEFAULT));
+    }
+
+    @Test
+    void meterServicesOfOtherPolicies() {
+        RateLimitPolicy search = new RateLimitPolicy("search", RateLimitAlgorithm.GCRA, POLICY.bandwidth(), 1);
+        LocalRateLimitService searchService = rateLimitService.withPolicy(search);
+        assertTrue(searchService.tryAcquire(new Key("1.1.1.1"), PERMITS));
+        assertFalse(searchService.tryAcquire(new Key("1.1.1.1"), 1));
+        assertEquals(1, meterRegistry.get("ratelimit.decisions").tags("policy", "search", "outcome", "rejected")
+                .functionCounter().count());
+        assertEquals(0, decisions("rejected"));
+    }
+
+    private double decisions(String outcome) {
+        return meterRegistry.get("ratelimit.decisions")
+                .tags("policy", RateLimitPolicy.DEFAULT, "outcome", outcome)
+                .functionCounter()
+                .count();
+    }
+}
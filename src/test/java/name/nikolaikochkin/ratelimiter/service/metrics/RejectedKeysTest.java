@@ -0,0 +1,46 @@
+package name.nikolaikochkin.ratelimiter.service.metrics;
+
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RejectedKeysTest {
+    private record Key(String s) implements RateLimitKey {
+    }
+
+    @Test
+    void trackMostRejectedKeys() {
+        RejectedKeys rejectedKeys = new RejectedKeys(2);
+        record(rejectedKeys, "1.1.1.1", 5);
+        record(rejectedKeys, "2.2.2.2", 3);
+        record(rejectedKeys, "3.3.3.3", 1);
+        List<RejectedKey> top = rejectedKeys.top(2);
+        assertEquals(2, top.size());
+        assertEquals(new RejectedKey(new Key("1.1.1.1").toString(), 5), top.get(0));
+        assertEquals(new RejectedKey(new Key("3.3.3.3").toString(), 4), top.get(1));
+    }
+
+    @Test
+    void keepFrequentKeyAmongRareOnes() {
+        RejectedKeys rejectedKeys = new RejectedKeys(4);
+        for (int i = 0; i < 100; i++) {
+            record(rejectedKeys, "1.1.1.1", 1);
+            record(rejectedKeys, "10.0.0." + i, 1);
+        }
+        assertEquals(new Key("1.1.1.1").toString(), rejectedKeys.top(1).get(0).key());
+    }
+
+    @Test
+    void rejectInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RejectedKeys(0));
+    }
+
+    private static void record(RejectedKeys rejectedKeys, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            rejectedKeys.record(new Key(key));
+        }
+    }
+}
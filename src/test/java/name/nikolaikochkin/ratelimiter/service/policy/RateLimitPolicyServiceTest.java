@@ -0,0 +1,132 @@
+package name.nikolaikochkin.ratelimiter.service.policy;
+
+import name.nikolaikochkin.ratelimiter.algorithm.GcraRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.LockFreeTokenBucketRateLimiter;
+import name.nikolaikochkin.ratelimiter.algorithm.RateLimitAlgorithm;
+import name.nikolaikochkin.ratelimiter.service.factory.TokenBucketRateLimiterFactory;
+import name.nikolaikochkin.ratelimiter.service.key.model.RateLimitKey;
+import name.nikolaikochkin.ratelimiter.service.limiter.InMemoryRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.LocalRateLimitService;
+import name.nikolaikochkin.ratelimiter.service.limiter.SlabRateLimitService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitPolicyServiceTest {
+    private static final int PERMITS = 3;
+    private static final Duration PERIOD = Duration.ofMinutes(1);
+
+    private record Key(String s) implements RateLimitKey {
+    }
+
+    private InMemoryRateLimitService defaultService;
+    private RateLimitPolicyService policyService;
+
+    @BeforeEach
+    void setUp() {
+        defaultService = new InMemoryRateLimitService(new TokenBucketRateLimiterFactory(PERMITS, PERIOD, true));
+        RateLimitPolicyProperties properties = new RateLimitPolicyProperties(Map.of(
+                "search", new RateLimitPolicyProperties.Policy(10L, Duration.ofSeconds(1), 20L, RateLimitAlgorithm.GCRA, 2),
+                "report", new RateLimitPolicyProperties.Policy(null, null, null, null, 3)));
+        policyService = new RateLimitPolicyService(defaultService, null, properties, PERMITS, PERIOD, "token-bucket", true);
+    }
+
+    @Test
+    void resolveDefaultPolicy() {
+        RateLimitPolicy policy = policyService.getPolicy("");
+        assertEquals(RateLimitPolicy.DEFAULT, policy.name());
+        assertEquals(RateLimitAlgorithm.LOCK_FREE_TOKEN_BUCKET, policy.algorithm());
+        assertEquals(PERMITS, policy.bandwidth().capacity());
+        assertEquals(1, policy.cost());
+        assertSame(defaultService, policyService.getRateLimitService(""));
+        assertSame(policy, policyService.getPolicy(RateLimitPolicy.DEFAULT));
+    }
+
+    @Test
+    void resolveNamedPolicies() {
+        RateLimitPolicy search = policyService.getPolicy("search");
+        assertEquals(RateLimitAlgorithm.GCRA, search.algorithm());
+        assertEquals(20, search.bandwidth().capacity());
+        assertEquals(Duration.ofMillis(100).toNanos(), search.bandwidth().nanosPerPermit());
+        assertEquals(2, search.cost());
+        assertInstanceOf(GcraRateLimiter.class, search.createRateLimiter());
+
+        RateLimitPolicy report = policyService.getPolicy("report");
+        assertEquals(RateLimitAlgorithm.LOCK_FREE_TOKEN_BUCKET, report.algorithm());
+        assertEquals(PERMITS, report.bandwidth().capacity());
+        assertEquals(3, report.cost());
+        assertInstanceOf(LockFreeTokenBucketRateLimiter.class, report.createRateLimiter());
+        assertEquals(3, policyService.getPolicies().size());
+    }
+
+    @Test
+    void separateBucketsOfPolicies() {
+        Key key = new Key("1.1.1.1");
+        LocalRateLimitService reportService = (LocalRateLimitService) policyService.getRateLimitService("report");
+        assertNotSame(defaultService, reportService);
+        assertTrue(reportService.tryAcquire(key, PERMITS));
+        assertFalse(reportService.tryAcquire(key, 1));
+        assertTrue(defaultService.tryAcquire(key, PERMITS));
+    }
+
+    @Test
+    void rejectUnknownPolicy() {
+        assertThrows(IllegalStateException.class, () -> policyService.getPolicy("unknown"));
+        assertThrows(IllegalStateException.class, () -> policyService.getRateLimitService("unknown"));
+    }
+
+    @Test
+    void rejectInvalidPolicy() {
+        RateLimitPolicyProperties costOverBurst = new RateLimitPolicyProperties(Map.of(
+                "invalid", new RateLimitPolicyProperties.Policy(null, null, null, null, PERMITS + 1)));
+        assertThrows(IllegalStateException.class,
+                () -> new RateLimitPolicyService(defaultService, null, costOverBurst, PERMITS, PERIOD, "token-bucket", true));
+
+        RateLimitPolicyProperties shadowsDefault = new RateLimitPolicyProperties(Map.of(
+                RateLimitPolicy.DEFAULT, new RateLimitPolicyProperties.Policy(null, null, null, null, null)));
+        assertThrows(IllegalStateException.class,
+                () -> new RateLimitPolicyService(defaultService, null, shadowsDefault, PERMITS, PERIOD, "token-bucket", true));
+    }
+
+    @Test
+    void updatePolicyAtRuntime() {
+        Key key = new Key("1.1.1.1");
+        LocalRateLimitService searchService = (LocalRateLimitService) policyService.getRateLimitService("search");
+        assertTrue(searchService.tryAcquire(key, 20));
+        assertEquals(0, policyService.inspect("search", key).availablePermits());
+
+        RateLimitPolicy updated = policyService.updatePolicy("search", 30L, Duration.ofMinutes(1), null, RateLimitAlgorithm.SLIDING_LOG);
+        assertEquals(RateLimitAlgorithm.SLIDING_LOG, updated.algorithm());
+        assertEquals(30, updated.bandwidth().capacity());
+        assertEquals(2, updated.cost());
+        assertSame(updated, policyService.getPolicy("search"));
+        assertSame(searchService, policyService.getRateLimitService("search"));
+        assertEquals(30, policyService.inspect("search", key).capacity());
+
+        RateLimitPolicy defaultPolicy = policyService.updatePolicy("", null, null, 10L, null);
+        assertEquals(10, defaultPolicy.bandwidth().capacity());
+        assertEquals(PERIOD.toNanos() / PERMITS, defaultPolicy.bandwidth().nanosPerPermit());
+        assertSame(defaultPolicy, policyService.getPolicy(""));
+        assertEquals(10, defaultService.inspect(key).capacity());
+    }
+
+    @Test
+    void rejectInvalidUpdate() {
+        assertThrows(IllegalStateException.class, () -> policyService.updatePolicy("unknown", null, null, 10L, null));
+        assertThrows(IllegalStateException.class, () -> policyService.updatePolicy("search", 10L, null, null, null));
+        assertThrows(IllegalStateException.class, () -> policyService.updatePolicy("report", null, null, 2L, null));
+        assertEquals(PERMITS, policyService.getPolicy("report").bandwidth().capacity());
+    }
+
+    @Test
+    void rejectUpdateOfStoreWithoutLocalBuckets() {
+        RateLimitPolicyService slabPolicyService = new RateLimitPolicyService(new SlabRateLimitService(PERMITS, PERIOD),
+                null, new RateLimitPolicyProperties(Map.of()), PERMITS, PERIOD, "token-bucket", true);
+        assertThrows(IllegalStateException.class, () -> slabPolicyService.updatePolicy("", null, null, 10L, null));
+        assertThrows(IllegalStateException.class, () -> slabPolicyService.inspect("", new Key("1.1.1.1")));
+    }
+}